@@ -36,6 +36,15 @@ INSERT INTO reservation_system.customers (firstName,lastName,email,password) VAL
 
 -- CREATE TABLES
 --
+-- single seats of a reservation; a seat of a playtime can only be sold once
+CREATE TABLE reservation_system.`seat_reservations` (
+  `datePlaytimeId` int(11) NOT NULL,
+  `seat` int(11) NOT NULL,
+  `reservationId` int(11) NOT NULL,
+  PRIMARY KEY (`datePlaytimeId`, `seat`),
+  KEY `seat_reservations_reservation` (`datePlaytimeId`, `reservationId`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 create table 'price'
 (
     'id'        int auto_increment,
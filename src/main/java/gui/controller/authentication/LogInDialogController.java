@@ -42,15 +42,19 @@ public class LogInDialogController extends Controller {
         // check if given user entered email and password
         if (email.isEmpty() || password.isEmpty()) {
             errorMessageLabel.setText("All text fields must be filled out!");
-        } else if (!restClient.validClientCredentials(email, password)) {
-            // check if given user credentials are correct
-            errorMessageLabel.setText("Invalid user data.");
         } else {
-            // create user and pass to RestClient (split up necessary because of
-            // authorization)
+            // create user and pass to RestClient, then log in: this checks the
+            // credentials and replaces them with a session token for all further
+            // requests
             User user = new User(email, password);
             restClient.setUser(user);
-            JsonObject clientInfo = restClient.getUserInfoByMail(email);
+            JsonObject clientInfo = restClient.logIn();
+            if (clientInfo == null) {
+                // given user credentials are not correct
+                restClient.setUser(null);
+                errorMessageLabel.setText("Invalid user data.");
+                return;
+            }
             user.setIdAndName(clientInfo.get("id").getAsInt(), clientInfo.get("firstName").getAsString(),
                     clientInfo.get("lastName").getAsString());
 
@@ -27,12 +27,12 @@ public class LogOutToolBarController extends Controller {
     /**
      * Is called when the user clicks the log out button. <br>
      * <br>
-     * Resets the logged in user to <code>null</code>, loads the other toolbar and a
-     * scene showing a message for the successful log out.
+     * Ends the session and resets the logged in user to <code>null</code>, loads
+     * the other toolbar and a scene showing a message for the successful log out.
      */
     @FXML
     public void onLogOutButtonClicked() {
-        restClient.setUser(null);
+        restClient.logOut();
         sceneNavigator.loadToolBar(sceneNavigator.LOG_IN_BAR);
 
         List<String> data = new ArrayList<>();
@@ -75,7 +75,7 @@ public class SignUpDialogController extends Controller implements Initializable
             // authorization)
             User user = new User(firstname, lastname, email, password);
             restClient.setUser(user);
-            JsonObject clientInfo = restClient.getUserInfoByMail(email);
+            JsonObject clientInfo = restClient.logIn();
             user.setId(clientInfo.get("id").getAsInt());
 
             // load main window and set panel to successful sign up panel
@@ -45,6 +45,8 @@ public class MainWindowController extends Controller implements Initializable {
         /*
          * TODO: retrieve all items from database (via REST client and server)
          * CinemaCase: List<JsonObject> cinemaList = restClient.requestCinemas();
+         * Request only the fields the list view shows, i.e. "id" and "name" (query
+         * parameter fields, see RestClient.requestEndpoint(int, String, String...)).
          */
         List<JsonObject> itemsList = new ArrayList<>();
         initializeCinemaListView(itemsList);
@@ -1,12 +1,14 @@
 package gui.controller.information;
 
 import gui.controller.Controller;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
+import rest_client.AvailabilitySubscription;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -29,6 +31,10 @@ public class ReservationPanelController extends Controller {
     private int datePlaytimeId;
     // ------------------------------------------------------
 
+    // live updates of the free seats of the shown playtime; only one reservation panel is shown at a time
+    private static AvailabilitySubscription availabilitySubscription;
+    private AvailabilitySubscription ownSubscription;
+
     // ------------------ FXML components ------------------
     /*
      * TODO: adjust the names of the following attributes and add more labels or
@@ -142,6 +148,9 @@ public class ReservationPanelController extends Controller {
      * if user modifies a reservation in which case the end number of the range must
      * be checked. If user creates a new reservations, checks if amount of free
      * seats is smaller than 10 and sets the end number of the range to this amount.
+     * <br>
+     * Afterwards, the menu is updated whenever the server reports that the amount
+     * of free seats changed, e.g. because other users reserved seats meanwhile.
      */
     private void setUpSeatSelection(int selectedSeats) {
         /*
@@ -152,7 +161,45 @@ public class ReservationPanelController extends Controller {
          * selected playtime of the movie.
          */
         int freeSeats = 10;
+        updateSeatSelection(freeSeats, selectedSeats);
+
+        if (availabilitySubscription != null) {
+            availabilitySubscription.close();
+        }
+        ownSubscription = restClient.subscribeToAvailability(datePlaytimeId,
+                seats -> Platform.runLater(() -> onFreeSeatsChanged(seats)));
+        availabilitySubscription = ownSubscription;
+    }
+
+    /**
+     * Is called on the JavaFX thread when the server reports a new amount of free
+     * seats. Ends the subscription if this panel is not shown anymore.
+     *
+     * @param freeSeats the amount of free seats
+     */
+    private void onFreeSeatsChanged(int freeSeats) {
+        if (seatAmountChoiceBox.getScene() == null) {
+            ownSubscription.close();
+            // a newer panel has its own subscription, which must stay open
+            if (availabilitySubscription == ownSubscription) {
+                availabilitySubscription = null;
+            }
+            return;
+        }
+        Integer selected = seatAmountChoiceBox.getValue();
+        updateSeatSelection(freeSeats, selected == null ? 1 : selected);
+    }
 
+    /**
+     * Fills the drop down menu with the amounts of seats the user can choose from,
+     * see <code>{@link #setUpSeatSelection(int)}</code>. The selected amount is
+     * kept if it is still available, otherwise the largest available amount is
+     * selected.
+     *
+     * @param freeSeats     the amount of free seats
+     * @param selectedSeats the amount of seats to select
+     */
+    private void updateSeatSelection(int freeSeats, int selectedSeats) {
         // check if user is modifying a reservation (oldReservedSeatAmount != 0) and
         // only less than 10 seats are available
         int seatMax = 10;
@@ -166,10 +213,13 @@ public class ReservationPanelController extends Controller {
 
         // initializes choice box with previously computed values
         int[] seatOptions = IntStream.rangeClosed(1, seatMax).toArray();
+        List<Integer> items = new ArrayList<>(seatOptions.length);
         for (int i : seatOptions) {
-            seatAmountChoiceBox.getItems().add(i);
+            items.add(i);
         }
-        seatAmountChoiceBox.setValue(selectedSeats);
+        seatAmountChoiceBox.getItems().setAll(items);
+        // sold out: nothing can be selected, so nothing can be reserved
+        seatAmountChoiceBox.setValue(seatMax < 1 ? null : Math.min(selectedSeats, seatMax));
     }
 
     /**
@@ -194,7 +244,11 @@ public class ReservationPanelController extends Controller {
          * reservation. In this case you need to make an adjustment here to retrieve the
          * respective value.
          */
-        // get new amount of seats to reserve
+        // get new amount of seats to reserve; there is none if the playtime sold out meanwhile
+        if (this.seatAmountChoiceBox.getValue() == null) {
+            noModificationLabel.setText("There are no free seats anymore.");
+            return;
+        }
         int seatAmount = this.seatAmountChoiceBox.getValue();
 
         List<String> controllerData = new ArrayList<>();
@@ -0,0 +1,246 @@
+package model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous version of the {@link DatabaseConnector} methods. Every method
+ * runs the corresponding blocking method on a dedicated, bounded executor and
+ * returns a <code>CompletableFuture</code> with its result, so that request
+ * threads can be released while waiting for the database, e.g. with
+ * <code>context.future(() -&gt; asyncConnector.executeSelectQuery(...).thenAccept(context::json))</code>.
+ * <br>
+ * <br>
+ * At most <code>threads</code> queries run at the same time, which should not
+ * be more than the maximum size of the connection pool. At most
+ * <code>queueCapacity</code> further queries wait for a free thread; any query
+ * beyond that is rejected immediately and its future completes exceptionally
+ * with a <code>RejectedExecutionException</code>, instead of piling up requests
+ * that would time out anyway. <br>
+ * <br>
+ * The queries can optionally run on virtual threads, if the Java runtime
+ * supports them. Otherwise, a fixed amount of platform threads is used.
+ */
+public class AsyncDatabaseConnector implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1_000;
+
+    private static final Logger logger = Logger.getLogger(AsyncDatabaseConnector.class.getName());
+
+    private final DatabaseConnector dbConnector;
+    private final ExecutorService executor;
+    // limits the parallel queries on virtual threads; null for platform threads
+    private final Semaphore concurrency;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Uses as many platform threads as the connection pool of the connector has
+     * connections at most.
+     *
+     * @param dbConnector the connector executing the queries
+     */
+    public AsyncDatabaseConnector(DatabaseConnector dbConnector) {
+        this(dbConnector, dbConnector.getConnectionPool() != null ? dbConnector.getConnectionPool().getMaxSize()
+                : ConnectionPool.DEFAULT_MAX_SIZE, DEFAULT_QUEUE_CAPACITY, false);
+    }
+
+    /**
+     * @param dbConnector    the connector executing the queries
+     * @param threads        the maximum amount of queries running at the same
+     *                       time
+     * @param queueCapacity  the maximum amount of queries waiting for a thread
+     * @param virtualThreads <code>true</code> to run the queries on virtual
+     *                       threads if they are supported; <code>false</code> to
+     *                       use platform threads
+     */
+    public AsyncDatabaseConnector(DatabaseConnector dbConnector, int threads, int queueCapacity,
+                                  boolean virtualThreads) {
+        if (threads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid executor configuration: threads=" + threads
+                    + ", queueCapacity=" + queueCapacity);
+        }
+        this.dbConnector = dbConnector;
+        this.maxPending = threads + queueCapacity;
+
+        ExecutorService virtualExecutor = virtualThreads ? createVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.concurrency = new Semaphore(threads, true);
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            // the queue is bounded by the pending counter, see submit()
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "db-async-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.concurrency = null;
+        }
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task. The
+     * executor is looked up by reflection, because virtual threads are only
+     * available from Java 21 on.
+     *
+     * @return the executor; <code>null</code> if virtual threads are not
+     * supported
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.log(Level.INFO, "Virtual threads are not supported, using platform threads instead");
+            return null;
+        }
+    }
+
+    /**
+     * @see DatabaseConnector#executeSelectQuery(String[], String[], String[], String, String[])
+     */
+    public CompletableFuture<List<Map<String, Object>>> executeSelectQuery(String[] selection, String[] tables,
+                                                                           String[] tableAlias, String condition,
+                                                                           String[] conditionArgs) {
+        return submit(() -> dbConnector.executeSelectQuery(selection, tables, tableAlias, condition,
+                conditionArgs));
+    }
+
+    /**
+     * @see DatabaseConnector#executeInsertQuery(String, String[], String[])
+     */
+    public CompletableFuture<Boolean> executeInsertQuery(String table, String[] columns, String[] values) {
+        return submit(() -> dbConnector.executeInsertQuery(table, columns, values));
+    }
+
+    /**
+     * @see DatabaseConnector#executeBatchInsertQuery(String, String[], List)
+     */
+    public CompletableFuture<List<Integer>> executeBatchInsertQuery(String table, String[] columns,
+                                                                    List<String[]> rows) {
+        return submit(() -> dbConnector.executeBatchInsertQuery(table, columns, rows));
+    }
+
+    /**
+     * @see DatabaseConnector#executeUpdateQuery(String, String[], String[], String, String[])
+     */
+    public CompletableFuture<Boolean> executeUpdateQuery(String table, String[] modification,
+                                                         String[] modificationArgs, String selection,
+                                                         String[] selectionArgs) {
+        return submit(() -> dbConnector.executeUpdateQuery(table, modification, modificationArgs, selection,
+                selectionArgs));
+    }
+
+    /**
+     * @see DatabaseConnector#executeDeleteQuery(String, String, String[])
+     */
+    public CompletableFuture<Boolean> executeDeleteQuery(String table, String selection, String[] selectionArgs) {
+        return submit(() -> dbConnector.executeDeleteQuery(table, selection, selectionArgs));
+    }
+
+    /**
+     * @see DatabaseConnector#executeInTransaction(int, TransactionCallback)
+     */
+    public <T> CompletableFuture<T> executeInTransaction(int isolationLevel, TransactionCallback<T> callback) {
+        return submit(() -> dbConnector.executeInTransaction(isolationLevel, callback));
+    }
+
+    /**
+     * Runs the given task on the executor, unless too many tasks are pending
+     * already.
+     *
+     * @param task the blocking database call
+     * @param <T>  the type of the result
+     * @return the future completed with the result of the task
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (pending.incrementAndGet() > maxPending) {
+            reject(future, new RejectedExecutionException("Too many pending database queries"));
+            return future;
+        }
+        try {
+            executor.execute(() -> run(task, future));
+        } catch (RejectedExecutionException e) {
+            reject(future, e);
+        }
+        return future;
+    }
+
+    private <T> void run(Supplier<T> task, CompletableFuture<T> future) {
+        boolean acquired = false;
+        try {
+            if (concurrency != null) {
+                concurrency.acquire();
+                acquired = true;
+            }
+            active.incrementAndGet();
+            try {
+                future.complete(task.get());
+            } finally {
+                active.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        } catch (RuntimeException | Error e) {
+            // otherwise the caller would wait forever, e.g. after an OutOfMemoryError
+            future.completeExceptionally(e);
+        } finally {
+            if (acquired) {
+                concurrency.release();
+            }
+            pending.decrementAndGet();
+        }
+    }
+
+    private void reject(CompletableFuture<?> future, RejectedExecutionException e) {
+        pending.decrementAndGet();
+        rejected.increment();
+        future.completeExceptionally(e);
+    }
+
+    /**
+     * Stops accepting queries. Already submitted queries are still executed. The
+     * underlying {@link DatabaseConnector} is not closed.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    // STATISTICS
+
+    /**
+     * @return the amount of queries waiting for a thread
+     */
+    public int getQueuedQueries() {
+        return Math.max(0, pending.get() - active.get());
+    }
+
+    public int getActiveQueries() {
+        return active.get();
+    }
+
+    public long getRejectedQueries() {
+        return rejected.sum();
+    }
+
+}
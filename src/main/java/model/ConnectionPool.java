@@ -0,0 +1,360 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of JDBC connections to the MariaDB database. <br>
+ * <br>
+ * At most <code>maxSize</code> connections are handed out at the same time.
+ * Threads requesting a connection while all of them are in use wait for at most
+ * the acquisition timeout. Idle connections are validated before they are
+ * handed out again, connections idle for longer than the idle timeout are closed
+ * (but never below <code>minSize</code>) and connections that are held for
+ * longer than the leak detection threshold are reported in the log. Every
+ * connection keeps its own cache of prepared statements.
+ */
+public class ConnectionPool {
+
+    public static final int DEFAULT_MIN_SIZE = 2;
+    public static final int DEFAULT_MAX_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 5_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1_000;
+    public static final long DEFAULT_LEAK_DETECTION_THRESHOLD_MILLIS = 30_000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+    // connections idle for a shorter time are handed out without a validation round trip
+    private static final long VALIDATION_INTERVAL_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 5_000;
+
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final ConnectionFactory connectionFactory;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakDetectionThresholdMillis;
+
+    private final Semaphore permits;
+    // used as a stack, so that the most recently used (warm) connection is reused first
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong detectedLeaks = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool with the default sizes and timeouts.
+     *
+     * @param url      the JDBC url of the database
+     * @param username the database user
+     * @param password the password of the database user
+     */
+    public ConnectionPool(String url, String username, String password) {
+        this(url, username, password, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS,
+                DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_LEAK_DETECTION_THRESHOLD_MILLIS);
+    }
+
+    /**
+     * Creates a pool. No connection is opened until {@link #fill()} or
+     * {@link #borrow()} is called.
+     *
+     * @param url                          the JDBC url of the database
+     * @param username                     the database user
+     * @param password                     the password of the database user
+     * @param minSize                      the amount of connections kept open
+     *                                     even if they are idle
+     * @param maxSize                      the maximum amount of open connections
+     * @param acquireTimeoutMillis         how long a thread waits for a free
+     *                                     connection before giving up
+     * @param idleTimeoutMillis            how long a connection may stay unused
+     *                                     before it is closed
+     * @param leakDetectionThresholdMillis how long a connection may be borrowed
+     *                                     before it is reported as a possible
+     *                                     leak; <code>0</code> disables leak
+     *                                     detection
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis, long leakDetectionThresholdMillis) {
+        this(() -> DriverManager.getConnection(url, username, password), minSize, maxSize, acquireTimeoutMillis,
+                idleTimeoutMillis, leakDetectionThresholdMillis);
+    }
+
+    /**
+     * Creates a pool that opens its connections with the given factory, e.g. to
+     * hand out fake connections in tests.
+     *
+     * @param connectionFactory            opens a new physical connection
+     * @param minSize                      the amount of connections kept open
+     *                                     even if they are idle
+     * @param maxSize                      the maximum amount of open connections
+     * @param acquireTimeoutMillis         how long a thread waits for a free
+     *                                     connection before giving up
+     * @param idleTimeoutMillis            how long a connection may stay unused
+     *                                     before it is closed
+     * @param leakDetectionThresholdMillis how long a connection may be borrowed
+     *                                     before it is reported as a possible
+     *                                     leak; <code>0</code> disables leak
+     *                                     detection
+     */
+    ConnectionPool(ConnectionFactory connectionFactory, int minSize, int maxSize, long acquireTimeoutMillis,
+                   long idleTimeoutMillis, long leakDetectionThresholdMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.connectionFactory = connectionFactory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::houseKeeping, HOUSEKEEPING_PERIOD_MILLIS,
+                HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens connections until the minimum pool size is reached.
+     *
+     * @throws SQLException if a connection cannot be opened
+     */
+    public synchronized void fill() throws SQLException {
+        while (!closed && totalConnections.get() < minSize) {
+            idle.offerLast(open());
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool. Waits for at most the acquisition
+     * timeout if all connections are in use. Every borrowed connection must be
+     * given back with {@link #release(PooledConnection)}.
+     *
+     * @return the borrowed connection
+     * @throws SQLException if no connection became available in time or a new
+     *                      connection cannot be opened
+     */
+    PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLTransientConnectionException("No database connection available after "
+                        + acquireTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection conn;
+            while ((conn = idle.pollFirst()) != null && !isUsable(conn)) {
+                discard(conn);
+            }
+            if (conn == null) {
+                conn = open();
+            }
+            conn.onBorrow(leakDetectionThresholdMillis > 0);
+            borrowed.add(conn);
+            return conn;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a borrowed connection back to the pool. Broken connections are closed
+     * instead of being reused. Releasing <code>null</code> or a connection twice
+     * has no effect.
+     *
+     * @param conn the connection to give back
+     */
+    void release(PooledConnection conn) {
+        if (conn == null || !borrowed.remove(conn)) {
+            return;
+        }
+        try {
+            if (closed || conn.isBroken()) {
+                discard(conn);
+            } else {
+                conn.onRelease();
+                idle.offerFirst(conn);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "SQL error when resetting pooled connection");
+            discard(conn);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Checks if the exception indicates that the connection itself is unusable
+     * (SQL state class 08), in which case it must not be returned to the pool.
+     *
+     * @param e the exception thrown while using the connection
+     * @return <code>true</code> if the connection is broken; <code>false</code>
+     * otherwise
+     */
+    static boolean isConnectionError(SQLException e) {
+        return e instanceof SQLNonTransientConnectionException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = connectionFactory.open();
+        PooledConnection conn = new PooledConnection(connection, new StatementCache(connection,
+                DEFAULT_STATEMENT_CACHE_SIZE, statementCacheHits, statementCacheMisses));
+        totalConnections.incrementAndGet();
+        return conn;
+    }
+
+    private void discard(PooledConnection conn) {
+        totalConnections.decrementAndGet();
+        conn.closeQuietly();
+    }
+
+    private boolean isUsable(PooledConnection conn) {
+        if (conn.isBroken()) {
+            return false;
+        }
+        if (System.currentTimeMillis() - conn.getLastUsedAt() < VALIDATION_INTERVAL_MILLIS) {
+            return true;
+        }
+        try {
+            return conn.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes connections idle for longer than the idle timeout, tops the pool up
+     * to its minimum size and reports connections that are borrowed for longer
+     * than the leak detection threshold.
+     */
+    private void houseKeeping() {
+        long now = System.currentTimeMillis();
+
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && totalConnections.get() > minSize) {
+            PooledConnection conn = it.next();
+            if (now - conn.getLastUsedAt() > idleTimeoutMillis && idle.remove(conn)) {
+                discard(conn);
+            }
+        }
+
+        try {
+            fill();
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "SQL error when filling connection pool");
+        }
+
+        if (leakDetectionThresholdMillis > 0) {
+            for (PooledConnection conn : borrowed) {
+                if (!conn.isLeakReported() && now - conn.getBorrowedAt() > leakDetectionThresholdMillis) {
+                    conn.setLeakReported(true);
+                    detectedLeaks.incrementAndGet();
+                    logger.log(Level.WARNING, "Possible connection leak: connection borrowed for more than "
+                            + leakDetectionThresholdMillis + " ms", conn.getBorrowTrace());
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the housekeeping thread. Borrowed
+     * connections are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            discard(conn);
+        }
+    }
+
+    // STATISTICS
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getActiveConnections() {
+        return borrowed.size();
+    }
+
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquireTimeouts() {
+        return acquireTimeouts.get();
+    }
+
+    public long getDetectedLeaks() {
+        return detectedLeaks.get();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    /**
+     * Opens the physical connections of a pool.
+     */
+    @FunctionalInterface
+    interface ConnectionFactory {
+
+        Connection open() throws SQLException;
+    }
+
+}
@@ -2,11 +2,16 @@ package model;
 
 import utils.Utils;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,16 +48,52 @@ public class DatabaseConnector {
      * public static final String DATE_PLAYTIMES = "date_playtimes"; <br>
      * public static final String RESERVATIONS = "reservations";
      */
+    // changes of these tables are pushed to clients as seat availability, see RestServer
+    public static final String DATE_PLAYTIMES = "date_playtimes";
+    public static final String RESERVATIONS = "reservations";
+    // single seats of the reservations, see SeatMapStore
+    public static final String SEAT_RESERVATIONS = "seat_reservations";
     // -------------------------------------------------------------------
     private static final Logger logger = Logger.getLogger(Utils.class.getName());
-    private Connection connection;
+    private static final int SQL_CACHE_SIZE = 1024;
+    public static final int DEFAULT_FETCH_SIZE = 100;
+    // key before all others, for the first page of a keyset pagination
+    public static final long FIRST_PAGE = Long.MIN_VALUE;
+    public static final int INSERT_BATCH_SIZE = 500;
+    public static final int MAX_TRANSACTION_ATTEMPTS = 3;
+    // MariaDB error codes of failures after which a transaction can simply be retried
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private ConnectionPool pool;
+    // assembled SQL text for every combination of statement parameters
+    private final Map<SqlKey, String> sqlCache = new ConcurrentHashMap<>();
+    // optional cache for the results of SELECT queries, see enableQueryCache
+    private volatile QueryCache queryCache;
+    private final QueryStatistics statistics = new QueryStatistics();
+    private final List<TableChangeListener> tableChangeListeners = new CopyOnWriteArrayList<>();
+    private final List<DatabaseTimingListener> timingListeners = new CopyOnWriteArrayList<>();
 
     public DatabaseConnector(String database) {
+        this(database, ConnectionPool.DEFAULT_MIN_SIZE, ConnectionPool.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Connects to the given database using a pool of connections, so that
+     * concurrent requests do not have to wait for each other.
+     *
+     * @param database       the name of the database
+     * @param minConnections the amount of connections kept open even if idle
+     * @param maxConnections the maximum amount of connections used in parallel
+     */
+    public DatabaseConnector(String database, int minConnections, int maxConnections) {
         try {
             // Register JDBC driver
             Class.forName(JDBC_DRIVER);
-            // open connection
-            connection = DriverManager.getConnection(DB_URL + database, USERNAME, PASSWORD);
+            // open connections
+            pool = new ConnectionPool(DB_URL + database, USERNAME, PASSWORD, minConnections, maxConnections,
+                    ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MILLIS, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS,
+                    ConnectionPool.DEFAULT_LEAK_DETECTION_THRESHOLD_MILLIS);
+            pool.fill();
         } catch (ClassNotFoundException e) {
             logger.log(Level.WARNING, "ClassNotFoundException in DatabaseConnector constructor");
         } catch (SQLInvalidAuthorizationSpecException e){
@@ -67,6 +108,86 @@ public class DatabaseConnector {
         }
     }
 
+    /**
+     * Uses the given pool instead of connecting to a database, e.g. one handing
+     * out fake connections in tests.
+     *
+     * @param pool the pool providing the connections
+     */
+    DatabaseConnector(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return the pool providing the connections of this connector, e.g. for
+     * reading its statistics
+     */
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * Enables caching of the results of
+     * {@link #executeSelectQuery(String[], String[], String[], String, String[])},
+     * e.g. for catalog data that is read far more often than it is changed.
+     * Cached results of a table are dropped whenever the table is changed through
+     * this connector. Enabling the cache again replaces the previous one.
+     *
+     * @param maxEntries the maximum amount of cached results
+     * @param ttlMillis  how long a result is cached at most
+     */
+    public void enableQueryCache(int maxEntries, long ttlMillis) {
+        queryCache = new QueryCache(maxEntries, ttlMillis);
+    }
+
+    public void disableQueryCache() {
+        queryCache = null;
+    }
+
+    /**
+     * @return the query cache, e.g. for reading its statistics;
+     * <code>null</code> if caching is disabled
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Registers a listener that is notified after every successful change of a
+     * table through this connector.
+     *
+     * @param listener the listener
+     */
+    public void addTableChangeListener(TableChangeListener listener) {
+        tableChangeListeners.add(listener);
+    }
+
+    public void removeTableChangeListener(TableChangeListener listener) {
+        tableChangeListeners.remove(listener);
+    }
+
+    /**
+     * Registers a listener that is notified how long every access to the
+     * database through this connector waited for a connection and used it.
+     *
+     * @param listener the listener
+     */
+    public void addTimingListener(DatabaseTimingListener listener) {
+        timingListeners.add(listener);
+    }
+
+    public void removeTimingListener(DatabaseTimingListener listener) {
+        timingListeners.remove(listener);
+    }
+
+    /**
+     * @return the timing statistics of all statements executed by this
+     * connector, also used to configure the slow query log
+     */
+    public QueryStatistics getQueryStatistics() {
+        return statistics;
+    }
+
     /**
      * Creates a SQL SELECT statement with the given parameters as follows:
      *
@@ -84,6 +205,8 @@ public class DatabaseConnector {
      * Next, executes the SQL statement and converts the result into a list of maps.
      * Each entry in the list corresponds to one table row. The keys of the map
      * correspond to column names and the values to the specific cell in the table.
+     * The returned list is a read-only {@link ResultTable}. If the query cache is
+     * enabled, it may be a result cached by an earlier call.
      *
      * @param selection    the array with column names; cannot be
      *                      <code>null</code>; can contain only "*" for selecting
@@ -101,25 +224,227 @@ public class DatabaseConnector {
      */
     public List<Map<String, Object>> executeSelectQuery(String[] selection, String[] tables, String[] tableAlias,
                                                         String condition, String[] conditionArgs) {
+        QueryCache cache = queryCache;
+        boolean measure = statistics.isEnabled();
+        String sql = null;
+        long stamp = 0;
+        if ((cache != null || measure) && selection != null && tables != null) {
+            sql = createSelectSql(selection, tables, tableAlias, condition, false);
+        }
+        if (cache != null && sql != null) {
+            List<Map<String, Object>> cached = cache.get(sql, conditionArgs);
+            if (cached != null) {
+                return cached;
+            }
+            stamp = cache.stamp();
+        }
+
         List<Map<String, Object>> map = null;
+        PooledConnection conn = null;
         try {
-            PreparedStatement stmt = createSelectStatement(selection, tables, tableAlias, condition, conditionArgs);
+            conn = borrow();
+            long start = System.nanoTime();
+            PreparedStatement stmt = createSelectStatement(conn, selection, tables, tableAlias, condition,
+                    conditionArgs);
             if (stmt != null) {
+                long prepared = System.nanoTime();
                 ResultSet result = stmt.executeQuery();
-                map = map(result);
+                long executed = System.nanoTime();
+                map = mapCompact(result);
+                if (measure && sql != null) {
+                    statistics.record(sql, prepared - start, executed - prepared, System.nanoTime() - executed,
+                            map.size(), QueryStatistics.estimateBytes(map));
+                }
+                if (cache != null && sql != null) {
+                    cache.put(sql, conditionArgs, tables, map, stamp);
+                }
             }
-            close(stmt);
         } catch (SQLException e) {
             logger.log(Level.FINE, "SQL error when executing select statement");
+            recordError(sql);
+            markIfBroken(conn, e);
+        } finally {
+            release(conn);
         }
         return map;
     }
 
+    /**
+     * Executes a SQL SELECT statement like shown in
+     * {@link #executeSelectQuery(String[], String[], String[], String, String[])},
+     * but does not load the complete result into memory. Instead, the rows are
+     * fetched in chunks of <code>fetchSize</code> rows while iterating over the
+     * returned cursor. <br>
+     * <br>
+     * The cursor keeps a database connection until it is closed, so it must
+     * always be closed after use.
+     *
+     * @param selection     the array with column names; cannot be
+     *                      <code>null</code>; can contain only "*" for selecting
+     *                      all columns
+     * @param tables        the array with database table names; cannot be
+     *                      <code>null</code>
+     * @param tableAlias    the array with table name aliases; can be
+     *                      <code>null</code> to omit aliases
+     * @param condition     the array with conditions; can be <code>null</code> to
+     *                      omit conditions
+     * @param conditionArgs the array with the corresponding values for the
+     *                      selection; can be <code>null</code> if no parameter
+     *                      values are needed
+     * @param fetchSize     the amount of rows fetched from the database at once,
+     *                      e.g. {@link #DEFAULT_FETCH_SIZE}
+     * @return the cursor over the result; <code>null</code> if the statement
+     * could not be executed
+     */
+    public QueryCursor openSelectCursor(String[] selection, String[] tables, String[] tableAlias, String condition,
+                                        String[] conditionArgs, int fetchSize) {
+        PooledConnection conn = null;
+        String sql = null;
+        try {
+            conn = borrow();
+            long start = System.nanoTime();
+            PreparedStatement stmt = createSelectStatement(conn, selection, tables, tableAlias, condition,
+                    conditionArgs);
+            if (stmt != null) {
+                sql = statistics.isEnabled() ? createSelectSql(selection, tables, tableAlias, condition, false)
+                        : null;
+                QueryCursor cursor = new QueryCursor(pool, conn, this::timed, stmt, fetchSize, statistics, sql, start);
+                // connection is now owned by the cursor
+                conn = null;
+                return cursor;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "SQL error when executing select statement");
+            recordError(sql);
+            markIfBroken(conn, e);
+        } finally {
+            release(conn);
+        }
+        return null;
+    }
+
+    /**
+     * Opens a cursor over one page of a SQL SELECT statement like shown in
+     * {@link #executeSelectQuery(String[], String[], String[], String, String[])},
+     * using keyset pagination:
+     *
+     * <br>
+     * <br>
+     * <b>SELECT</b> projection <br>
+     * <b>FROM</b> tables as tableAlias <br>
+     * <b>WHERE</b> (selection = selectionArgs) <b>AND</b> keyColumn &gt; afterKey <br>
+     * <b>ORDER BY</b> keyColumn <b>LIMIT</b> limit <br>
+     * <br>
+     * <p>
+     * The next page starts after the key of the last row of this page. Unlike
+     * with <b>OFFSET</b>, the database does not read and skip the rows of all
+     * previous pages, so every page costs the same if the key column is indexed,
+     * e.g. the primary key. See
+     * {@link #openSelectCursor(String[], String[], String[], String, String[], int)}
+     * for closing the cursor.
+     *
+     * @param selection     the array with column names; cannot be
+     *                      <code>null</code>; can contain only "*" for selecting
+     *                      all columns
+     * @param tables        the array with database table names; cannot be
+     *                      <code>null</code>
+     * @param tableAlias    the array with table name aliases; can be
+     *                      <code>null</code> to omit aliases
+     * @param condition     the array with conditions; can be <code>null</code> to
+     *                      omit conditions
+     * @param conditionArgs the array with the corresponding values for the
+     *                      selection; can be <code>null</code> if no parameter
+     *                      values are needed
+     * @param keyColumn     the unique integer column the rows are ordered by,
+     *                      e.g. <code>id</code>; cannot be <code>null</code>
+     * @param afterKey      the key of the last row of the previous page;
+     *                      {@link #FIRST_PAGE} for the first page
+     * @param limit         the maximum amount of rows of the page
+     * @return the cursor over the page; <code>null</code> if the statement could
+     * not be executed
+     */
+    public QueryCursor openSelectPageCursor(String[] selection, String[] tables, String[] tableAlias,
+                                            String condition, String[] conditionArgs, String keyColumn,
+                                            long afterKey, int limit) {
+        if (selection == null || tables == null || keyColumn == null) {
+            return null;
+        }
+        PooledConnection conn = null;
+        String sql = createPageSql(selection, tables, tableAlias, condition, keyColumn);
+        try {
+            conn = borrow();
+            long start = System.nanoTime();
+            PreparedStatement stmt = conn.prepareCached(sql);
+            int index = 1;
+            if (conditionArgs != null) {
+                for (String conditionArg : conditionArgs) {
+                    stmt.setString(index++, conditionArg);
+                }
+            }
+            stmt.setLong(index++, afterKey);
+            stmt.setInt(index, limit);
+            QueryCursor cursor = new QueryCursor(pool, conn, this::timed, stmt, Math.min(limit, DEFAULT_FETCH_SIZE),
+                    statistics.isEnabled() ? statistics : null, sql, start);
+            // connection is now owned by the cursor
+            conn = null;
+            return cursor;
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "SQL error when executing select statement");
+            recordError(sql);
+            markIfBroken(conn, e);
+        } finally {
+            release(conn);
+        }
+        return null;
+    }
+
+    /**
+     * Executes a SQL SELECT statement like shown in
+     * {@link #executeSelectQuery(String[], String[], String[], String, String[])}
+     * and passes each row to the callback as soon as it was read, see
+     * {@link #openSelectCursor(String[], String[], String[], String, String[], int)}.
+     *
+     * @param selection     the array with column names; cannot be
+     *                      <code>null</code>; can contain only "*" for selecting
+     *                      all columns
+     * @param tables        the array with database table names; cannot be
+     *                      <code>null</code>
+     * @param tableAlias    the array with table name aliases; can be
+     *                      <code>null</code> to omit aliases
+     * @param condition     the array with conditions; can be <code>null</code> to
+     *                      omit conditions
+     * @param conditionArgs the array with the corresponding values for the
+     *                      selection; can be <code>null</code> if no parameter
+     *                      values are needed
+     * @param fetchSize     the amount of rows fetched from the database at once
+     * @param callback      the callback receiving the rows
+     * @return the amount of rows passed to the callback; <code>-1</code> if the
+     * statement could not be executed or reading the result failed
+     * @throws IOException if the callback failed to process a row
+     */
+    public int streamSelectQuery(String[] selection, String[] tables, String[] tableAlias, String condition,
+                                 String[] conditionArgs, int fetchSize, RowCallback callback) throws IOException {
+        try (QueryCursor cursor = openSelectCursor(selection, tables, tableAlias, condition, conditionArgs,
+                fetchSize)) {
+            if (cursor == null) {
+                return -1;
+            }
+            while (cursor.hasNext()) {
+                callback.onRow(cursor.next());
+            }
+            return cursor.getRowCount();
+        } catch (IllegalStateException e) {
+            logger.log(Level.FINE, "SQL error when streaming select statement");
+            return -1;
+        }
+    }
+
     /**
      * Creates a SQL SELECT statement like shown in
      * {@link #executeSelectQuery(String[], String[], String[], String, String[])}
      * with the same parameters.
      *
+     * @param connection    the connection to prepare the statement on
      * @param selection    the array with column names; cannot be
      *                      <code>null</code>; can contain only "*" for selecting
      *                      all columns
@@ -134,34 +459,34 @@ public class DatabaseConnector {
      *                      values are needed
      * @return the created SQL statement as <code>PreparedStatement</code> object
      */
-    private PreparedStatement createSelectStatement(String[] selection, String[] tables, String[] tableAlias,
-                                                    String condition, String[] conditionArgs) {
+    private PreparedStatement createSelectStatement(PooledConnection connection, String[] selection, String[] tables,
+                                                    String[] tableAlias, String condition, String[] conditionArgs) {
+        return createSelectStatement(connection, selection, tables, tableAlias, condition, conditionArgs, false);
+    }
+
+    /**
+     * Creates a SQL SELECT statement like
+     * {@link #createSelectStatement(PooledConnection, String[], String[], String[], String, String[])},
+     * optionally locking the selected rows (<b>SELECT ... FOR UPDATE</b>) until the
+     * end of the current transaction.
+     *
+     * @param connection    the connection to prepare the statement on
+     * @param selection     the array with column names
+     * @param tables        the array with database table names
+     * @param tableAlias    the array with table name aliases; can be
+     *                      <code>null</code>
+     * @param condition     the condition; can be <code>null</code>
+     * @param conditionArgs the values for the condition; can be <code>null</code>
+     * @param forUpdate     <code>true</code> if the selected rows should be locked
+     * @return the created SQL statement as <code>PreparedStatement</code> object
+     */
+    PreparedStatement createSelectStatement(PooledConnection connection, String[] selection, String[] tables,
+                                            String[] tableAlias, String condition, String[] conditionArgs,
+                                            boolean forUpdate) {
         PreparedStatement stmt = null;
         if (selection != null && tables != null) {
             try {
-                StringBuilder sb = new StringBuilder();
-                sb.append("SELECT ");
-                sb.append(String.join(", ", selection));
-                sb.append(" FROM ");
-
-                // only if aliases for table given, concatenate them with table name
-                if (tableAlias != null) {
-                    String[] tmp = new String[tables.length];
-                    for (int i = 0; i < tables.length; i++) {
-                        tmp[i] = tables[i] + " as " + tableAlias[i];
-                    }
-                    sb.append(String.join(", ", tmp));
-                } else {
-                    sb.append(String.join(", ", tables));
-                }
-
-                // only if selection is available, append it
-                if (condition != null) {
-                    sb.append(" WHERE ");
-                    sb.append(condition);
-                }
-
-                stmt = connection.prepareStatement(sb.toString());
+                stmt = connection.prepareCached(createSelectSql(selection, tables, tableAlias, condition, forUpdate));
 
                 // only if parameters are given, substitute them
                 if (conditionArgs != null) {
@@ -178,6 +503,85 @@ public class DatabaseConnector {
         return stmt;
     }
 
+    /**
+     * Assembles the SQL text of a SELECT statement like shown in
+     * {@link #executeSelectQuery(String[], String[], String[], String, String[])}.
+     * The text is cached for every combination of parameters, so that it is only
+     * built once.
+     *
+     * @param selection  the array with column names
+     * @param tables     the array with database table names
+     * @param tableAlias the array with table name aliases; can be
+     *                   <code>null</code>
+     * @param condition  the condition; can be <code>null</code>
+     * @param forUpdate  <code>true</code> if the selected rows should be locked
+     * @return the normalized SQL text
+     */
+    private String createSelectSql(String[] selection, String[] tables, String[] tableAlias, String condition,
+                                   boolean forUpdate) {
+        SqlKey key = new SqlKey(forUpdate ? "SELECT FOR UPDATE" : "SELECT", selection, tables, tableAlias,
+                condition);
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("SELECT ");
+            sb.append(String.join(", ", selection));
+            sb.append(" FROM ");
+
+            // only if aliases for table given, concatenate them with table name
+            if (tableAlias != null) {
+                String[] tmp = new String[tables.length];
+                for (int i = 0; i < tables.length; i++) {
+                    tmp[i] = tables[i] + " as " + tableAlias[i];
+                }
+                sb.append(String.join(", ", tmp));
+            } else {
+                sb.append(String.join(", ", tables));
+            }
+
+            // only if selection is available, append it
+            if (condition != null) {
+                sb.append(" WHERE ");
+                sb.append(condition);
+            }
+            if (forUpdate) {
+                sb.append(" FOR UPDATE");
+            }
+            sql = cacheSql(key, sb);
+        }
+        return sql;
+    }
+
+    /**
+     * Assembles the SQL text of a page like shown in
+     * {@link #openSelectPageCursor(String[], String[], String[], String, String[], String, long, int)},
+     * with placeholders for the key and the limit after those of the condition.
+     *
+     * @param selection  the array with column names
+     * @param tables     the array with database table names
+     * @param tableAlias the array with table name aliases; can be
+     *                   <code>null</code>
+     * @param condition  the condition; can be <code>null</code>
+     * @param keyColumn  the column the rows are ordered by
+     * @return the normalized SQL text
+     */
+    private String createPageSql(String[] selection, String[] tables, String[] tableAlias, String condition,
+                                 String keyColumn) {
+        SqlKey key = new SqlKey("SELECT PAGE", selection, tables, tableAlias, condition, keyColumn);
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            StringBuilder sb = new StringBuilder(createSelectSql(selection, tables, tableAlias, null, false));
+            sb.append(" WHERE ");
+            // the condition may contain OR, so it is put in parentheses
+            if (condition != null) {
+                sb.append('(').append(condition).append(") AND ");
+            }
+            sb.append(keyColumn).append(" > ? ORDER BY ").append(keyColumn).append(" LIMIT ?");
+            sql = cacheSql(key, sb);
+        }
+        return sql;
+    }
+
     /**
      * Creates a SQL UPDATE statement with the given parameters as follows:
      *
@@ -211,17 +615,28 @@ public class DatabaseConnector {
      */
     public boolean executeUpdateQuery(String table, String[] modification, String[] modificationArgs, String selection,
                                       String[] selectionArgs) {
+        PooledConnection conn = null;
+        String sql = null;
         try {
-            PreparedStatement stmt = createUpdateStatement(table, modification, modificationArgs, selection,
-                    selectionArgs);
+            conn = borrow();
+            long start = System.nanoTime();
+            PreparedStatement stmt = createUpdateStatement(conn, table, modification,
+                    modificationArgs, selection, selectionArgs);
             if (stmt != null) {
-                stmt.executeUpdate();
+                sql = statistics.isEnabled() ? createUpdateSql(table, modification, selection) : null;
+                long prepared = System.nanoTime();
+                int rows = stmt.executeUpdate();
+                recordExecution(sql, start, prepared, rows);
+                tableChanged(table, TableChangeListener.Change.UPDATE);
             } else {
                 return false;
             }
-            close(stmt);
         } catch (SQLException e) {
+            recordError(sql);
+            markIfBroken(conn, e);
             return false;
+        } finally {
+            release(conn);
         }
         return true;
     }
@@ -231,6 +646,7 @@ public class DatabaseConnector {
      * {@link #executeUpdateQuery(String, String[], String[], String, String[])}
      * with the same parameters.
      *
+     * @param connection       the connection to prepare the statement on
      * @param table            the name of the table; cannot be <code>null</code>
      * @param modification     the array with columns that are changed; cannot be
      *                         <code>null</code>;
@@ -244,24 +660,12 @@ public class DatabaseConnector {
      *                         values are needed
      * @return the created SQL statement as <code>PreparedStatement</code> object
      */
-    private PreparedStatement createUpdateStatement(String table, String[] modification, String[] modificationArgs,
-                                                    String selection, String[] selectionArgs) {
+    PreparedStatement createUpdateStatement(PooledConnection connection, String table, String[] modification,
+                                            String[] modificationArgs, String selection, String[] selectionArgs) {
         PreparedStatement stmt = null;
         if (table != null && modification != null) {
             try {
-                StringBuilder sb = new StringBuilder();
-                sb.append("UPDATE ");
-                sb.append(table);
-                sb.append(" SET ");
-                sb.append(String.join(", ", modification));
-
-                // only if selection is available, append it
-                if (selection != null) {
-                    sb.append(" WHERE ");
-                    sb.append(selection);
-                }
-
-                stmt = connection.prepareStatement(sb.toString());
+                stmt = connection.prepareCached(createUpdateSql(table, modification, selection));
                 int index = 1;
                 if (modificationArgs != null) {
                     for (int i = 0; i < modificationArgs.length; i++) {
@@ -283,6 +687,35 @@ public class DatabaseConnector {
         return stmt;
     }
 
+    /**
+     * Assembles the (cached) SQL text of an UPDATE statement like shown in
+     * {@link #executeUpdateQuery(String, String[], String[], String, String[])}.
+     *
+     * @param table        the name of the table
+     * @param modification the array with columns that are changed
+     * @param selection    the condition; can be <code>null</code>
+     * @return the normalized SQL text
+     */
+    private String createUpdateSql(String table, String[] modification, String selection) {
+        SqlKey key = new SqlKey("UPDATE", table, modification, selection);
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("UPDATE ");
+            sb.append(table);
+            sb.append(" SET ");
+            sb.append(String.join(", ", modification));
+
+            // only if selection is available, append it
+            if (selection != null) {
+                sb.append(" WHERE ");
+                sb.append(selection);
+            }
+            sql = cacheSql(key, sb);
+        }
+        return sql;
+    }
+
     /**
      * Creates a SQL INSERT statement with the given parameters as follows:
      *
@@ -304,16 +737,27 @@ public class DatabaseConnector {
      * otherwise
      */
     public boolean executeInsertQuery(String table, String[] columns, String[] values) {
+        PooledConnection conn = null;
+        String sql = null;
         try {
-            PreparedStatement stmt = createInsertStatement(table, columns, values);
+            conn = borrow();
+            long start = System.nanoTime();
+            PreparedStatement stmt = createInsertStatement(conn, table, columns, values);
             if (stmt != null) {
-                stmt.executeUpdate();
+                sql = statistics.isEnabled() ? createInsertSql(table, columns) : null;
+                long prepared = System.nanoTime();
+                int rows = stmt.executeUpdate();
+                recordExecution(sql, start, prepared, rows);
+                tableChanged(table, TableChangeListener.Change.INSERT);
             } else {
                 return false;
             }
-            close(stmt);
         } catch (SQLException e) {
+            recordError(sql);
+            markIfBroken(conn, e);
             return false;
+        } finally {
+            release(conn);
         }
         return true;
     }
@@ -321,30 +765,46 @@ public class DatabaseConnector {
     /**
      * Creates a SQL INSERT statement like shown in
      * {@link #executeInsertQuery(String, String[], String[])} with the same
-     * parameters.
+     * parameters. The values are passed as statement parameters, so the SQL text
+     * is the same for every call with the same columns.
      *
-     * @param table   the name of the table; cannot be <code>null</code>
-     * @param columns the array containing the columns to insert values; cannot be
-     *                <code>null</code>
-     * @param values  the array with the values to insert; cannot be
-     *                <code>null</code>; must have the same length as columns
+     * @param connection the connection to prepare the statement on
+     * @param table      the name of the table; cannot be <code>null</code>
+     * @param columns    the array containing the columns to insert values; cannot
+     *                   be <code>null</code>
+     * @param values     the array with the values to insert; cannot be
+     *                   <code>null</code>; must have the same length as columns
      * @return the created SQL statement as <code>PreparedStatement</code> object
      */
-    private PreparedStatement createInsertStatement(String table, String[] columns, String[] values) {
+    private PreparedStatement createInsertStatement(PooledConnection connection, String table, String[] columns,
+                                                    String[] values) {
+        return createInsertStatement(connection, table, columns, values, false);
+    }
+
+    /**
+     * Creates a SQL INSERT statement like
+     * {@link #createInsertStatement(PooledConnection, String, String[], String[])},
+     * optionally returning the generated keys of the inserted row.
+     *
+     * @param connection          the connection to prepare the statement on
+     * @param table               the name of the table
+     * @param columns             the array containing the columns to insert values
+     * @param values              the array with the values to insert
+     * @param returnGeneratedKeys <code>true</code> if the statement should return
+     *                            the generated keys
+     * @return the created SQL statement as <code>PreparedStatement</code> object
+     */
+    PreparedStatement createInsertStatement(PooledConnection connection, String table, String[] columns,
+                                            String[] values, boolean returnGeneratedKeys) {
         PreparedStatement stmt = null;
         if (table != null && columns != null && values != null && columns.length == values.length) {
             try {
-                StringBuilder sb = new StringBuilder();
-                sb.append("INSERT INTO ");
-                sb.append(table).append(" (");
-                sb.append(String.join(", ", columns));
-                sb.append(") VALUES (");
+                String sql = createInsertSql(table, columns);
+                stmt = returnGeneratedKeys ? connection.prepareCachedReturningKeys(sql)
+                        : connection.prepareCached(sql);
                 for (int i = 0; i < values.length; i++) {
-                    values[i] = "\"" + values[i] + "\"";
+                    stmt.setString(i + 1, values[i]);
                 }
-                sb.append(String.join(", ", values)).append(")");
-
-                stmt = connection.prepareStatement(sb.toString());
             } catch (SQLException e) {
                 logger.log(Level.FINE, "SQL error when executing insert statement");
                 return null;
@@ -353,6 +813,99 @@ public class DatabaseConnector {
         return stmt;
     }
 
+    /**
+     * Inserts many rows into one table with as few round trips as possible. The
+     * rows are sent to the database in batches of {@link #INSERT_BATCH_SIZE} rows
+     * within one transaction, so either all rows are inserted or none. <br>
+     * <br>
+     * <b>INSERT INTO</b> table (columns)<br>
+     * <b>VALUES</b> (row 1), (row 2), ...<br>
+     *
+     * @param table   the name of the table; cannot be <code>null</code>
+     * @param columns the array containing the columns to insert values; cannot be
+     *                <code>null</code>
+     * @param rows    the list of rows to insert; each row must have the same
+     *                length as columns
+     * @return the generated ids of the inserted rows in the order of the rows;
+     * <code>null</code> if the insertion was not successful
+     */
+    public List<Integer> executeBatchInsertQuery(String table, String[] columns, List<String[]> rows) {
+        if (table == null || columns == null || rows == null) {
+            return null;
+        }
+        for (String[] row : rows) {
+            if (row == null || row.length != columns.length) {
+                return null;
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>(rows.size());
+        PooledConnection conn = null;
+        String sql = createInsertSql(table, columns);
+        try {
+            conn = borrow();
+            long begin = System.nanoTime();
+            conn.getConnection().setAutoCommit(false);
+            PreparedStatement stmt = conn.prepareCachedReturningKeys(sql);
+            long prepared = System.nanoTime();
+            for (int start = 0; start < rows.size(); start += INSERT_BATCH_SIZE) {
+                int end = Math.min(start + INSERT_BATCH_SIZE, rows.size());
+                for (String[] row : rows.subList(start, end)) {
+                    for (int i = 0; i < row.length; i++) {
+                        stmt.setString(i + 1, row[i]);
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getInt(1));
+                    }
+                }
+            }
+            conn.getConnection().commit();
+            if (statistics.isEnabled()) {
+                recordExecution(sql, begin, prepared, ids.size());
+            }
+            tableChanged(table, TableChangeListener.Change.INSERT);
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "SQL error when executing batch insert statement");
+            recordError(sql);
+            rollback(conn);
+            markIfBroken(conn, e);
+            return null;
+        } finally {
+            release(conn);
+        }
+        return ids;
+    }
+
+    /**
+     * Assembles the (cached) SQL text of an INSERT statement with one parameter
+     * per column.
+     *
+     * @param table   the name of the table
+     * @param columns the array containing the columns to insert values
+     * @return the normalized SQL text
+     */
+    private String createInsertSql(String table, String[] columns) {
+        SqlKey key = new SqlKey("INSERT", table, columns);
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("INSERT INTO ");
+            sb.append(table).append(" (");
+            sb.append(String.join(", ", columns));
+            sb.append(") VALUES (");
+            for (int i = 0; i < columns.length; i++) {
+                sb.append(i == 0 ? "?" : ", ?");
+            }
+            sb.append(")");
+            sql = cacheSql(key, sb);
+        }
+        return sql;
+    }
+
     /**
      * Creates a SQL DELETE statement with the given parameters as follows:
      *
@@ -380,16 +933,27 @@ public class DatabaseConnector {
      * otherwise
      */
     public boolean executeDeleteQuery(String table, String selection, String[] selectionArgs) {
+        PooledConnection conn = null;
+        String sql = null;
         try {
-            PreparedStatement stmt = createDeleteStatement(table, selection, selectionArgs);
+            conn = borrow();
+            long start = System.nanoTime();
+            PreparedStatement stmt = createDeleteStatement(conn, table, selection, selectionArgs);
             if (stmt != null) {
-                stmt.executeUpdate();
+                sql = statistics.isEnabled() ? createDeleteSql(table, selection) : null;
+                long prepared = System.nanoTime();
+                int rows = stmt.executeUpdate();
+                recordExecution(sql, start, prepared, rows);
+                tableChanged(table, TableChangeListener.Change.DELETE);
             } else {
                 return false;
             }
-            close(stmt);
         } catch (SQLException e) {
+            recordError(sql);
+            markIfBroken(conn, e);
             return false;
+        } finally {
+            release(conn);
         }
         return true;
     }
@@ -399,6 +963,7 @@ public class DatabaseConnector {
      * {@link #executeDeleteQuery(String, String, String[])} with the same
      * parameters.
      *
+     * @param connection    the connection to prepare the statement on
      * @param table         the name of the table to delete from; cannot be
      *                      <code>null</code>
      * @param selection     the array with conditions; can be <code>null</code> to
@@ -408,21 +973,12 @@ public class DatabaseConnector {
      *                      values are needed
      * @return the created SQL statement as <code>PreparedStatement</code> object
      */
-    private PreparedStatement createDeleteStatement(String table, String selection, String[] selectionArgs) {
+    PreparedStatement createDeleteStatement(PooledConnection connection, String table, String selection,
+                                            String[] selectionArgs) {
         PreparedStatement stmt = null;
         if (table != null) {
             try {
-                StringBuilder sb = new StringBuilder();
-                sb.append("DELETE FROM ");
-                sb.append(table);
-
-                // only if selection is available, append it
-                if (selection != null) {
-                    sb.append(" WHERE ");
-                    sb.append(selection);
-                }
-
-                stmt = connection.prepareStatement(sb.toString());
+                stmt = connection.prepareCached(createDeleteSql(table, selection));
                 // only if parameters are given, substitute them
                 if (selectionArgs != null) {
                     for (int i = 0; i < selectionArgs.length; i++) {
@@ -437,6 +993,150 @@ public class DatabaseConnector {
         return stmt;
     }
 
+    /**
+     * Assembles the (cached) SQL text of a DELETE statement like shown in
+     * {@link #executeDeleteQuery(String, String, String[])}.
+     *
+     * @param table     the name of the table to delete from
+     * @param selection the condition; can be <code>null</code>
+     * @return the normalized SQL text
+     */
+    private String createDeleteSql(String table, String selection) {
+        SqlKey key = new SqlKey("DELETE", table, selection);
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("DELETE FROM ");
+            sb.append(table);
+
+            // only if selection is available, append it
+            if (selection != null) {
+                sb.append(" WHERE ");
+                sb.append(selection);
+            }
+            sql = cacheSql(key, sb);
+        }
+        return sql;
+    }
+
+    /**
+     * Puts the assembled SQL text into the SQL cache. The text is used as key for
+     * the prepared statement cache of each connection. It is not rewritten, since
+     * the conditions of the callers may contain string literals or
+     * <code>LIKE</code> patterns whose whitespace matters; equal parameters
+     * always produce the same text anyway.
+     *
+     * @param key the key identifying the combination of parameters
+     * @param sb  the assembled SQL text
+     * @return the SQL text
+     */
+    private String cacheSql(SqlKey key, StringBuilder sb) {
+        String sql = sb.toString();
+        // conditions are hard-coded in the callers, so the cache only grows this
+        // large if they are not; start over instead of growing without bound
+        if (sqlCache.size() >= SQL_CACHE_SIZE) {
+            sqlCache.clear();
+        }
+        sqlCache.put(key.copy(), sql);
+        return sql;
+    }
+
+    /**
+     * Executes the given unit of work within one transaction with the default
+     * isolation level of InnoDB (<code>REPEATABLE READ</code>), see
+     * {@link #executeInTransaction(int, TransactionCallback)}.
+     *
+     * @param callback the unit of work
+     * @param <T>      the type of the result of the unit of work
+     * @return the result of the unit of work; <code>null</code> if the
+     * transaction failed
+     */
+    public <T> T executeInTransaction(TransactionCallback<T> callback) {
+        return executeInTransaction(Connection.TRANSACTION_REPEATABLE_READ, callback);
+    }
+
+    /**
+     * Executes the given unit of work within one transaction. All statements of
+     * the unit of work run on the same connection and are committed together
+     * when the callback returns, unless the callback marked the transaction as
+     * rollback-only. If a statement fails, the whole transaction is rolled back.
+     * <br>
+     * <br>
+     * Rows read with {@link Transaction#executeSelectForUpdateQuery} stay locked
+     * until the end of the transaction, so for example checking the amount of
+     * free seats and inserting a reservation cannot be interleaved with another
+     * reservation for the same seats. If the transaction fails because of a
+     * deadlock or lock wait timeout, it is retried up to
+     * {@link #MAX_TRANSACTION_ATTEMPTS} times in total.
+     *
+     * @param isolationLevel the isolation level, one of the
+     *                       <code>Connection.TRANSACTION_*</code> constants
+     * @param callback       the unit of work
+     * @param <T>            the type of the result of the unit of work
+     * @return the result of the unit of work; <code>null</code> if the
+     * transaction failed
+     */
+    public <T> T executeInTransaction(int isolationLevel, TransactionCallback<T> callback) {
+        for (int attempt = 1; ; attempt++) {
+            PooledConnection conn = null;
+            Transaction tx = null;
+            try {
+                conn = borrow();
+                conn.beginTransaction(isolationLevel);
+                tx = new Transaction(this, conn);
+                T result = callback.execute(tx);
+                if (tx.isRollbackOnly()) {
+                    conn.getConnection().rollback();
+                } else {
+                    conn.getConnection().commit();
+                    tx.getChangedTables().forEach((table, changes) -> {
+                        for (TableChangeListener.Change change : changes) {
+                            tableChanged(table, change);
+                        }
+                    });
+                }
+                return result;
+            } catch (SQLException e) {
+                rollback(conn);
+                markIfBroken(conn, e);
+                if (attempt >= MAX_TRANSACTION_ATTEMPTS || !isRetryable(e)) {
+                    logger.log(Level.FINE, "SQL error when executing transaction");
+                    return null;
+                }
+                logger.log(Level.FINE, "Retrying transaction after lock conflict");
+            } catch (RuntimeException e) {
+                rollback(conn);
+                throw e;
+            } finally {
+                if (tx != null) {
+                    tx.complete();
+                }
+                release(conn);
+            }
+
+            // wait a random time, so that the conflicting transactions do not collide again
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Checks if the transaction failed because of a deadlock, a serialization
+     * failure or a lock wait timeout, in which case it can be retried.
+     *
+     * @param e the exception
+     * @return <code>true</code> if the transaction can be retried;
+     * <code>false</code> otherwise
+     */
+    private static boolean isRetryable(SQLException e) {
+        return "40001".equals(e.getSQLState()) || e.getErrorCode() == ER_LOCK_DEADLOCK
+                || e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT;
+    }
+
     /**
      * Maps the <code>ResultSet</code> to a list of maps. Each list item corresponds
      * to one line in the result. The keys of the map are the column names and the
@@ -471,25 +1171,138 @@ public class DatabaseConnector {
         return results;
     }
 
-    // define various close methods: for Connection, Statement and ResultSet
-
-    public void close() {
+    /**
+     * Maps the <code>ResultSet</code> to a {@link ResultTable}. Like
+     * {@link #map(ResultSet)}, each list item corresponds to one line in the
+     * result, but the column names are stored only once for the whole result
+     * instead of once per row.
+     *
+     * @param result the ResultSet that is converted
+     * @return the table; empty if the result could not be read
+     */
+    public ResultTable mapCompact(ResultSet result) {
         try {
-            if (connection != null) {
-                connection.close();
+            if (result != null) {
+                return ResultTable.from(result);
             }
         } catch (SQLException e) {
-            logger.log(Level.FINE, "SQL error when closing");
+            logger.log(Level.FINE, "SQL error when executing statement");
+        } finally {
+            close(result);
         }
+        return new ResultTable(new String[0]);
     }
 
-    private void close(Statement st) {
+    /**
+     * Marks the connection as broken if the exception was caused by the
+     * connection itself, so that the pool does not hand it out again.
+     *
+     * @param conn the connection the exception occurred on; can be
+     *             <code>null</code>
+     * @param e    the exception
+     */
+    private void markIfBroken(PooledConnection conn, SQLException e) {
+        if (conn != null && ConnectionPool.isConnectionError(e)) {
+            conn.markBroken();
+        }
+    }
+
+    /**
+     * Records the timing of a statement without result in the statistics.
+     *
+     * @param sql      the normalized SQL text; <code>null</code> if statistics
+     *                 are disabled
+     * @param start    the time before preparing the statement
+     * @param prepared the time after preparing the statement
+     * @param rows     the amount of changed rows
+     */
+    private void recordExecution(String sql, long start, long prepared, long rows) {
+        if (sql != null) {
+            statistics.record(sql, prepared - start, System.nanoTime() - prepared, 0, rows, 0);
+        }
+    }
+
+    /**
+     * Records a failed statement in the statistics.
+     *
+     * @param sql the normalized SQL text; <code>null</code> if statistics are
+     *            disabled or the statement could not be created
+     */
+    private void recordError(String sql) {
+        if (sql != null && statistics.isEnabled()) {
+            statistics.recordError(sql);
+        }
+    }
+
+    /**
+     * Called after the given table was changed successfully. Drops the cached
+     * results reading from the table and notifies the registered listeners.
+     *
+     * @param table  the name of the changed table
+     * @param change the kind of the change
+     */
+    /**
+     * Borrows a connection from the pool and reports the wait to the timing
+     * listeners.
+     */
+    private PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        PooledConnection conn = pool.borrow();
+        timed(DatabaseTimingListener.Phase.POOL, System.nanoTime() - start);
+        return conn;
+    }
+
+    /**
+     * Gives a connection back to the pool and reports the time it was used to
+     * the timing listeners. Connections owned by a cursor are reported by the
+     * cursor instead.
+     *
+     * @param conn the connection; can be <code>null</code>
+     */
+    private void release(PooledConnection conn) {
+        if (conn != null) {
+            timed(DatabaseTimingListener.Phase.DB, System.nanoTime() - conn.getBorrowedAtNanos());
+        }
+        pool.release(conn);
+    }
+
+    private void timed(DatabaseTimingListener.Phase phase, long nanos) {
+        for (DatabaseTimingListener listener : timingListeners) {
+            listener.timed(phase, nanos);
+        }
+    }
+
+    private void tableChanged(String table, TableChangeListener.Change change) {
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            cache.invalidate(table);
+        }
+        for (TableChangeListener listener : tableChangeListeners) {
+            listener.tableChanged(table, change);
+        }
+    }
+
+    /**
+     * Rolls back the open transaction of the connection, if there is one.
+     *
+     * @param conn the connection; can be <code>null</code>
+     */
+    private void rollback(PooledConnection conn) {
         try {
-            if (st != null) {
-                st.close();
+            if (conn != null && !conn.getConnection().getAutoCommit()) {
+                conn.getConnection().rollback();
             }
         } catch (SQLException e) {
-            logger.log(Level.FINE, "SQL error when closing");
+            logger.log(Level.FINE, "SQL error when rolling back");
+        }
+    }
+
+    // define various close methods: for the connection pool and ResultSet
+    // (statements are cached per connection and closed together with it)
+
+    public void close() {
+        if (pool != null) {
+            pool.close();
         }
     }
 
@@ -503,4 +1316,43 @@ public class DatabaseConnector {
         }
     }
 
+    /**
+     * Key of the SQL cache: the statement type together with all parameters that
+     * influence the SQL text (but not the parameter values).
+     */
+    private static final class SqlKey {
+
+        private final Object[] parts;
+        private final int hash;
+
+        SqlKey(Object... parts) {
+            this.parts = parts;
+            this.hash = Arrays.deepHashCode(parts);
+        }
+
+        /**
+         * @return a key with copies of all arrays, so that callers modifying their
+         * arrays afterwards do not change a key stored in the cache
+         */
+        SqlKey copy() {
+            Object[] copied = parts.clone();
+            for (int i = 0; i < copied.length; i++) {
+                if (copied[i] instanceof String[]) {
+                    copied[i] = ((String[]) copied[i]).clone();
+                }
+            }
+            return new SqlKey(copied);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof SqlKey && Arrays.deepEquals(parts, ((SqlKey) obj).parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
 }
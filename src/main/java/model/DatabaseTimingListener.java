@@ -0,0 +1,37 @@
+package model;
+
+/**
+ * Is notified how long the accesses to the database through a
+ * {@link DatabaseConnector} took, e.g. to break the response time of a request
+ * down into its phases, see
+ * {@link DatabaseConnector#addTimingListener(DatabaseTimingListener)}.
+ */
+public interface DatabaseTimingListener {
+
+    /**
+     * The part of a database access that was timed.
+     */
+    enum Phase {
+        /**
+         * waiting for a connection of the pool
+         */
+        POOL,
+        /**
+         * executing the statements and reading their results
+         */
+        DB
+    }
+
+    /**
+     * Is called once per phase of every access. Must return quickly, because it
+     * is called on the thread that accessed the database; the time of a
+     * {@link QueryCursor} is reported when it is closed and counts only
+     * executing the statement and reading the rows, not the time the caller
+     * spends between two rows.
+     *
+     * @param phase the timed phase
+     * @param nanos the duration of the phase in nanoseconds
+     */
+    void timed(Phase phase, long nanos);
+
+}
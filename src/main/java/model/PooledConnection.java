@@ -0,0 +1,165 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Wraps one physical JDBC <code>Connection</code> that is managed by the
+ * {@link ConnectionPool}. Keeps track of when the connection was last used and
+ * who borrowed it, so that the pool can validate, evict and report leaked
+ * connections.
+ */
+final class PooledConnection {
+
+    private final Connection connection;
+    private final StatementCache statementCache;
+    private final long createdAt;
+
+    private volatile long lastUsedAt;
+    private volatile long borrowedAt;
+    // System.nanoTime() of the borrow, for the request timing
+    private volatile long borrowedAtNanos;
+    private volatile Throwable borrowTrace;
+    private volatile boolean leakReported;
+    private volatile boolean broken;
+    // isolation level to restore after a transaction; -1 if it was not changed
+    private int previousIsolation = -1;
+
+    PooledConnection(Connection connection, StatementCache statementCache) {
+        this.connection = connection;
+        this.statementCache = statementCache;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Prepares the given SQL statement or reuses the cached statement for the same
+     * SQL text. The returned statement must not be closed.
+     *
+     * @param sql the normalized SQL text
+     * @return the prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepareCached(String sql) throws SQLException {
+        return statementCache.prepare(sql, false);
+    }
+
+    /**
+     * Like {@link #prepareCached(String)}, but the statement returns the keys
+     * generated by the database for inserted rows.
+     *
+     * @param sql the normalized SQL text of an INSERT statement
+     * @return the prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepareCachedReturningKeys(String sql) throws SQLException {
+        return statementCache.prepare(sql, true);
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    long getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    long getBorrowedAtNanos() {
+        return borrowedAtNanos;
+    }
+
+    Throwable getBorrowTrace() {
+        return borrowTrace;
+    }
+
+    boolean isLeakReported() {
+        return leakReported;
+    }
+
+    void setLeakReported(boolean leakReported) {
+        this.leakReported = leakReported;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * Marks the connection as broken, so that it is discarded instead of being
+     * returned to the pool.
+     */
+    void markBroken() {
+        this.broken = true;
+    }
+
+    /**
+     * Records the borrow time and, if leak detection is enabled, the stack trace
+     * of the caller.
+     *
+     * @param captureTrace <code>true</code> if the stack trace of the borrowing
+     *                     thread should be kept for leak reports
+     */
+    void onBorrow(boolean captureTrace) {
+        borrowedAt = System.currentTimeMillis();
+        borrowedAtNanos = System.nanoTime();
+        borrowTrace = captureTrace ? new Throwable("Connection borrowed here") : null;
+        leakReported = false;
+    }
+
+    /**
+     * Starts a transaction with the given isolation level. The previous isolation
+     * level and auto-commit mode are restored when the connection is released.
+     *
+     * @param isolationLevel one of the <code>Connection.TRANSACTION_*</code>
+     *                       constants
+     * @throws SQLException if the transaction cannot be started
+     */
+    void beginTransaction(int isolationLevel) throws SQLException {
+        int current = connection.getTransactionIsolation();
+        if (current != isolationLevel) {
+            connection.setTransactionIsolation(isolationLevel);
+            if (previousIsolation == -1) {
+                previousIsolation = current;
+            }
+        }
+        connection.setAutoCommit(false);
+    }
+
+    /**
+     * Resets the connection to its default state (auto-commit enabled, no open
+     * transaction, default isolation level) before it is handed out again.
+     *
+     * @throws SQLException if the connection cannot be reset
+     */
+    void onRelease() throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        if (previousIsolation != -1) {
+            connection.setTransactionIsolation(previousIsolation);
+            previousIsolation = -1;
+        }
+        borrowTrace = null;
+        lastUsedAt = System.currentTimeMillis();
+    }
+
+    void closeQuietly() {
+        statementCache.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // connection is discarded anyway
+        }
+    }
+
+}
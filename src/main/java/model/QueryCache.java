@@ -0,0 +1,238 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache for the results of SELECT queries. The key is the
+ * normalized SQL text together with the statement arguments. <br>
+ * <br>
+ * Entries are evicted when the cache is full (least recently used first) or
+ * when they are older than the time to live. Additionally, all entries reading
+ * from a table are dropped as soon as the table is changed through the same
+ * {@link DatabaseConnector}. Changes made directly in the database are only
+ * noticed after the time to live has expired. <br>
+ * <br>
+ * The cached results are read-only {@link ResultTable}s, so they can be shared
+ * between all callers.
+ */
+public class QueryCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<Key, CachedResult> entries;
+    // incremented on every invalidation, see stamp()
+    private long invalidationCount;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxEntries the maximum amount of cached results
+     * @param ttlMillis  how long a result is cached at most
+     */
+    public QueryCache(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1 || ttlMillis < 1) {
+            throw new IllegalArgumentException("Invalid cache configuration: maxEntries=" + maxEntries
+                    + ", ttlMillis=" + ttlMillis);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                if (size() > QueryCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up the cached result of the given query.
+     *
+     * @param sql  the normalized SQL text
+     * @param args the statement arguments; can be <code>null</code>
+     * @return the cached result; <code>null</code> if there is none or it has
+     * expired
+     */
+    public synchronized List<Map<String, Object>> get(String sql, String[] args) {
+        Key key = new Key(sql, args);
+        CachedResult entry = entries.get(key);
+        if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+            entries.remove(key);
+            evictions.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.result;
+    }
+
+    /**
+     * Returns the current invalidation stamp. It has to be taken before the query
+     * is executed and passed to {@link #put}, so that a result read before a
+     * concurrent change of one of its tables is not cached after the change.
+     *
+     * @return the stamp
+     */
+    public synchronized long stamp() {
+        return invalidationCount;
+    }
+
+    /**
+     * Caches the result of the given query, unless a table was changed since the
+     * stamp was taken.
+     *
+     * @param sql    the normalized SQL text
+     * @param args   the statement arguments; can be <code>null</code>
+     * @param tables the tables the query reads from
+     * @param result the read-only result
+     * @param stamp  the stamp taken before the query was executed
+     */
+    public synchronized void put(String sql, String[] args, String[] tables, List<Map<String, Object>> result,
+                                 long stamp) {
+        if (stamp != invalidationCount) {
+            return;
+        }
+        String[] normalized = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            normalized[i] = normalize(tables[i]);
+        }
+        entries.put(new Key(sql, args == null ? null : args.clone()),
+                new CachedResult(result, normalized, System.nanoTime() + ttlMillis * 1_000_000));
+    }
+
+    /**
+     * Drops all cached results reading from the given table.
+     *
+     * @param table the name of the changed table
+     */
+    public synchronized void invalidate(String table) {
+        invalidationCount++;
+        String normalized = normalize(table);
+        Iterator<CachedResult> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().readsFrom(normalized)) {
+                it.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public synchronized void clear() {
+        invalidationCount++;
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    private static String normalize(String table) {
+        return table.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // STATISTICS
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the amount of results removed because the cache was full or they
+     * had expired
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the amount of results removed because one of their tables was
+     * changed
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Key of a cached result: the SQL text and the statement arguments.
+     */
+    private static final class Key {
+
+        private final String sql;
+        private final String[] args;
+        private final int hash;
+
+        Key(String sql, String[] args) {
+            this.sql = sql;
+            this.args = args;
+            this.hash = 31 * sql.hashCode() + Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && sql.equals(other.sql) && Arrays.equals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CachedResult {
+
+        private final List<Map<String, Object>> result;
+        private final String[] tables;
+        private final long expiresAt;
+
+        CachedResult(List<Map<String, Object>> result, String[] tables, long expiresAt) {
+            this.result = result;
+            this.tables = tables;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean readsFrom(String table) {
+            for (String t : tables) {
+                if (t.equals(table)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
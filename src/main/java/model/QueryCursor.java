@@ -0,0 +1,213 @@
+package model;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Closeable iterator over the rows of a SELECT query. Rows are fetched from the
+ * database in chunks of the configured fetch size while iterating, so only the
+ * current chunk is kept in memory instead of the complete result. <br>
+ * <br>
+ * The cursor holds a pooled connection until it is closed, therefore it must
+ * always be closed, preferably with try-with-resources:
+ *
+ * <pre>
+ * try (QueryCursor cursor = dbConnector.openSelectCursor(...)) {
+ *     while (cursor.hasNext()) {
+ *         Map&lt;String, Object&gt; row = cursor.next();
+ *     }
+ * }
+ * </pre>
+ *
+ * If statistics are recorded, the time until the first chunk arrived is
+ * counted as execution and the rest, including the time the caller spends
+ * between two rows, as mapping when the cursor is closed. The time reported to
+ * the timing listeners counts only executing the statement and reading the
+ * rows, see {@link DatabaseTimingListener}.
+ */
+public class QueryCursor implements Iterator<Map<String, Object>>, AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(QueryCursor.class.getName());
+
+    private final ConnectionPool pool;
+    private final PooledConnection connection;
+    private final DatabaseTimingListener timing;
+    private final PreparedStatement stmt;
+    private final ResultSet result;
+    private final String[] columnLabels;
+    // null if the executions of the statement are not recorded
+    private final QueryStatistics statistics;
+    private final String sql;
+    private final long prepareNanos;
+    private final long executeNanos;
+    private final long executedAt;
+
+    private boolean advanced;
+    private boolean hasRow;
+    private boolean closed;
+    private boolean failed;
+    private int rowCount;
+    private long bytes;
+    // time spent executing the statement and reading rows, without the time of the caller
+    private long databaseNanos;
+
+    /**
+     * Executes the given statement with the given fetch size. The connection is
+     * given back to the pool and the execution is recorded in the statistics when
+     * the cursor is closed.
+     *
+     * @param pool       the pool the connection belongs to
+     * @param connection the borrowed connection the statement was prepared on
+     * @param timing     the listener for the time the cursor accessed the
+     *                   database, which is reported when it is closed
+     * @param stmt       the prepared and parameterized SELECT statement
+     * @param fetchSize  the amount of rows fetched from the database at once
+     * @param statistics the statistics to record the execution in; can be
+     *                   <code>null</code> to not record it
+     * @param sql        the normalized SQL text of the statement
+     * @param start      the time before preparing the statement
+     * @throws SQLException if the statement cannot be executed
+     */
+    QueryCursor(ConnectionPool pool, PooledConnection connection, DatabaseTimingListener timing,
+                PreparedStatement stmt, int fetchSize, QueryStatistics statistics, String sql, long start)
+            throws SQLException {
+        this.pool = pool;
+        this.connection = connection;
+        this.timing = timing;
+        this.stmt = stmt;
+        this.statistics = sql != null ? statistics : null;
+        this.sql = sql;
+        long prepared = System.nanoTime();
+        stmt.setFetchSize(fetchSize);
+        this.result = stmt.executeQuery();
+        this.executedAt = System.nanoTime();
+        this.prepareNanos = prepared - start;
+        this.executeNanos = executedAt - prepared;
+        this.databaseNanos = executedAt - start;
+
+        // read the column labels only once instead of once per row
+        ResultSetMetaData meta = result.getMetaData();
+        columnLabels = new String[meta.getColumnCount()];
+        for (int i = 0; i < columnLabels.length; i++) {
+            columnLabels[i] = meta.getColumnLabel(i + 1);
+        }
+    }
+
+    /**
+     * @return the column labels of the result in the order of the selection
+     */
+    public String[] getColumnLabels() {
+        return columnLabels.clone();
+    }
+
+    /**
+     * @return the amount of rows returned by {@link #next()} so far
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!advanced) {
+            long start = System.nanoTime();
+            try {
+                hasRow = result.next();
+                advanced = true;
+            } catch (SQLException e) {
+                failed = true;
+                close();
+                throw new IllegalStateException("SQL error when reading the next row", e);
+            } finally {
+                databaseNanos += System.nanoTime() - start;
+            }
+            if (!hasRow) {
+                // give the connection back as early as possible
+                close();
+            }
+        }
+        return hasRow;
+    }
+
+    /**
+     * Maps the current row to a map. The keys of the map are the column names and
+     * the values of the map are the specific cell entries from the table.
+     *
+     * @return the next row
+     */
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        advanced = false;
+        Map<String, Object> row = new HashMap<>(columnLabels.length * 2);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < columnLabels.length; i++) {
+                Object value = result.getObject(i + 1);
+                row.put(columnLabels[i], value);
+                if (statistics != null) {
+                    bytes += QueryStatistics.estimateBytes(value);
+                }
+            }
+        } catch (SQLException e) {
+            failed = true;
+            close();
+            throw new IllegalStateException("SQL error when reading a row", e);
+        } finally {
+            databaseNanos += System.nanoTime() - start;
+        }
+        rowCount++;
+        return row;
+    }
+
+    /**
+     * Closes the result, gives the connection back to the pool and records the
+     * execution. Calling this method more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            result.close();
+            // the statement is cached, reset it for the next (non-streaming) query
+            stmt.setFetchSize(0);
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "SQL error when closing");
+            if (ConnectionPool.isConnectionError(e)) {
+                connection.markBroken();
+            }
+        } finally {
+            pool.release(connection);
+            timing.timed(DatabaseTimingListener.Phase.DB, databaseNanos);
+            record();
+        }
+    }
+
+    private void record() {
+        if (statistics == null) {
+            return;
+        }
+        if (failed) {
+            statistics.recordError(sql);
+        } else {
+            statistics.record(sql, prepareNanos, executeNanos, System.nanoTime() - executedAt, rowCount, bytes);
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package model;
+
+import utils.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Timing statistics of the SQL statements executed by one
+ * {@link DatabaseConnector}, grouped by the normalized SQL text (with
+ * <code>?</code> placeholders instead of the arguments), so that every query
+ * shape is counted separately. <br>
+ * <br>
+ * Each execution is split into three phases: <br>
+ * <b>prepare</b>: assembling the SQL text, preparing the statement and binding
+ * the arguments <br>
+ * <b>execute</b>: the round trip to the database <br>
+ * <b>map</b>: converting the result into Java objects <br>
+ * <br>
+ * Executions taking longer than the slow query threshold are additionally
+ * logged with level <code>WARNING</code>.
+ */
+public class QueryStatistics {
+
+    public static final long DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS = 500;
+    // statements beyond this amount of different query shapes are counted together
+    static final int MAX_STATEMENTS = 1_000;
+    static final String OTHER_STATEMENTS = "<other>";
+
+    private static final Logger logger = Logger.getLogger(QueryStatistics.class.getName());
+
+    private final Map<String, StatementStatistics> statements = new ConcurrentHashMap<>();
+    private final LongAdder slowQueries = new LongAdder();
+    private volatile long slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(
+            DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS);
+    private volatile boolean enabled = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled <code>false</code> to stop recording statistics, e.g. to
+     *                avoid the (small) overhead of measuring
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    /**
+     * @param millis the duration after which an execution is logged as slow;
+     *               <code>0</code> logs every execution
+     */
+    public void setSlowQueryThresholdMillis(long millis) {
+        slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Records one successful execution of a statement.
+     *
+     * @param sql          the normalized SQL text
+     * @param prepareNanos the time spent preparing the statement
+     * @param executeNanos the time spent executing the statement
+     * @param mapNanos     the time spent mapping the result; <code>0</code> for
+     *                     statements without result
+     * @param rows         the amount of rows returned or changed
+     * @param bytes        the estimated size of the mapped result
+     */
+    void record(String sql, long prepareNanos, long executeNanos, long mapNanos, long rows, long bytes) {
+        StatementStatistics stats = statisticsOf(sql);
+        stats.prepare.record(prepareNanos);
+        stats.execute.record(executeNanos);
+        stats.map.record(mapNanos);
+        long total = prepareNanos + executeNanos + mapNanos;
+        stats.total.record(total);
+        stats.rows.add(rows);
+        stats.bytes.add(bytes);
+
+        if (total >= slowQueryThresholdNanos) {
+            slowQueries.increment();
+            logger.log(Level.WARNING, String.format("Slow query (%d ms: prepare %d ms, execute %d ms, map %d ms, "
+                            + "%d rows): %s", TimeUnit.NANOSECONDS.toMillis(total),
+                    TimeUnit.NANOSECONDS.toMillis(prepareNanos), TimeUnit.NANOSECONDS.toMillis(executeNanos),
+                    TimeUnit.NANOSECONDS.toMillis(mapNanos), rows, sql));
+        }
+    }
+
+    /**
+     * Records one failed execution of a statement.
+     *
+     * @param sql the normalized SQL text
+     */
+    void recordError(String sql) {
+        statisticsOf(sql).errors.increment();
+    }
+
+    private StatementStatistics statisticsOf(String sql) {
+        StatementStatistics stats = statements.get(sql);
+        if (stats == null) {
+            String key = statements.size() < MAX_STATEMENTS ? sql : OTHER_STATEMENTS;
+            stats = statements.computeIfAbsent(key, k -> new StatementStatistics());
+        }
+        return stats;
+    }
+
+    /**
+     * Estimates the memory used by the cell values of a result, counting two
+     * bytes per character of strings and eight bytes for any other value.
+     *
+     * @param result the mapped result
+     * @return the estimated size in bytes
+     */
+    static long estimateBytes(List<Map<String, Object>> result) {
+        long bytes = 0;
+        if (result instanceof ResultTable) {
+            ResultTable table = (ResultTable) result;
+            for (int row = 0; row < table.size(); row++) {
+                for (int column = 0; column < table.getColumnCount(); column++) {
+                    bytes += estimateBytes(table.getValue(row, column));
+                }
+            }
+        } else {
+            for (Map<String, Object> row : result) {
+                for (Object value : row.values()) {
+                    bytes += estimateBytes(value);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param value a cell value of a result
+     * @return the estimated size of the value in bytes, see
+     * {@link #estimateBytes(List)}
+     */
+    static long estimateBytes(Object value) {
+        if (value instanceof CharSequence) {
+            return 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return 8;
+    }
+
+    /**
+     * @return the statistics of every query shape by normalized SQL text; the map
+     * is a read-only live view
+     */
+    public Map<String, StatementStatistics> getStatements() {
+        return Collections.unmodifiableMap(statements);
+    }
+
+    /**
+     * @return the amount of executions logged as slow
+     */
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    /**
+     * Removes all recorded statistics.
+     */
+    public void reset() {
+        statements.clear();
+        slowQueries.reset();
+    }
+
+    /**
+     * Statistics of one query shape. All durations are in nanoseconds.
+     */
+    public static final class StatementStatistics {
+
+        private final LatencyHistogram prepare = new LatencyHistogram();
+        private final LatencyHistogram execute = new LatencyHistogram();
+        private final LatencyHistogram map = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        public LatencyHistogram getPrepare() {
+            return prepare;
+        }
+
+        public LatencyHistogram getExecute() {
+            return execute;
+        }
+
+        public LatencyHistogram getMap() {
+            return map;
+        }
+
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the amount of successful executions
+         */
+        public long getCount() {
+            return total.getCount();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return the total amount of rows returned or changed
+         */
+        public long getRows() {
+            return rows.sum();
+        }
+
+        /**
+         * @return the total estimated size of all mapped results
+         */
+        public long getBytes() {
+            return bytes.sum();
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+package model;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Compact, read-only representation of the result of a SELECT query. <br>
+ * <br>
+ * The column labels are stored only once for the whole result and the cells
+ * of all rows are kept in one flat array, instead of one <code>HashMap</code>
+ * (with its own copy of all column labels and one entry object per cell) for
+ * each row. <br>
+ * <br>
+ * Each row can still be accessed as a <code>Map</code> whose keys are the
+ * column names and whose values are the specific cell entries, so the table
+ * can be used everywhere a list of maps is expected.
+ */
+public class ResultTable extends AbstractList<Map<String, Object>> implements RandomAccess {
+
+    private static final int INITIAL_ROW_CAPACITY = 16;
+
+    private final String[] columns;
+    private final Map<String, Integer> columnIndex;
+    private Object[] cells;
+    private int rowCount;
+
+    /**
+     * Creates an empty table with the given columns.
+     *
+     * @param columns the column labels
+     */
+    public ResultTable(String[] columns) {
+        this.columns = columns.clone();
+        this.columnIndex = new HashMap<>(columns.length * 2);
+        for (int i = 0; i < columns.length; i++) {
+            // like in a map, a later column with the same label wins
+            columnIndex.put(columns[i], i);
+        }
+        this.cells = new Object[INITIAL_ROW_CAPACITY * columns.length];
+    }
+
+    /**
+     * Reads all rows of the given result into a new table. The result is not
+     * closed.
+     *
+     * @param result the result to read
+     * @return the table containing all rows of the result
+     * @throws SQLException if reading the result fails
+     */
+    public static ResultTable from(ResultSet result) throws SQLException {
+        ResultSetMetaData meta = result.getMetaData();
+        String[] labels = new String[meta.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = meta.getColumnLabel(i + 1);
+        }
+
+        ResultTable table = new ResultTable(labels);
+        while (result.next()) {
+            int offset = table.appendRow();
+            for (int i = 0; i < labels.length; i++) {
+                table.cells[offset + i] = result.getObject(i + 1);
+            }
+        }
+        table.trimToSize();
+        return table;
+    }
+
+    /**
+     * Adds one row with the given values. Only used while building the table.
+     *
+     * @param values the cell values in the order of the columns
+     */
+    void addRow(Object... values) {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values but got " + values.length);
+        }
+        System.arraycopy(values, 0, cells, appendRow(), values.length);
+    }
+
+    /**
+     * @return the column labels in the order of the selection
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param column the column label
+     * @return the index of the column; <code>-1</code> if there is no such column
+     */
+    public int getColumnIndex(String column) {
+        Integer index = columnIndex.get(column);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param row    the index of the row
+     * @param column the index of the column
+     * @return the value of the cell
+     */
+    public Object getValue(int row, int column) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + ", size " + rowCount);
+        }
+        if (column < 0 || column >= columns.length) {
+            throw new IndexOutOfBoundsException("Column " + column + ", columns " + columns.length);
+        }
+        return cells[row * columns.length + column];
+    }
+
+    /**
+     * @param row    the index of the row
+     * @param column the column label
+     * @return the value of the cell; <code>null</code> if there is no such column
+     */
+    public Object getValue(int row, String column) {
+        int index = getColumnIndex(column);
+        return index == -1 ? null : getValue(row, index);
+    }
+
+    /**
+     * Returns a read-only map view of the given row. The view does not copy any
+     * values.
+     *
+     * @param index the index of the row
+     * @return the row as a map from column name to cell value
+     */
+    @Override
+    public Map<String, Object> get(int index) {
+        if (index < 0 || index >= rowCount) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + rowCount);
+        }
+        return new Row(index * columns.length);
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * Makes room for one more row.
+     *
+     * @return the offset of the new row in the cell array
+     */
+    private int appendRow() {
+        int offset = rowCount * columns.length;
+        if (offset + columns.length > cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(cells.length * 2, offset + columns.length));
+        }
+        rowCount++;
+        modCount++;
+        return offset;
+    }
+
+    private void trimToSize() {
+        if (cells.length > rowCount * columns.length) {
+            cells = Arrays.copyOf(cells, rowCount * columns.length);
+        }
+    }
+
+    /**
+     * Read-only map view of one row.
+     */
+    private final class Row extends AbstractMap<String, Object> {
+
+        private final int offset;
+
+        Row(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer index = columnIndex.get(key);
+            return index == null ? null : cells[offset + index];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columnIndex.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return columnIndex.size();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int column = nextColumn(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return column < columns.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(columns[column],
+                                    cells[offset + column]);
+                            column = nextColumn(column + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return columnIndex.size();
+                }
+            };
+        }
+
+        /**
+         * Skips columns whose label is repeated by a later column, so that every
+         * key occurs only once, like in a map.
+         *
+         * @param from the first column to check
+         * @return the next column whose label is unique; the column count if there
+         * is none
+         */
+        private int nextColumn(int from) {
+            int column = from;
+            while (column < columns.length && columnIndex.get(columns[column]) != column) {
+                column++;
+            }
+            return column;
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package model;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Receives the rows of a streamed SELECT query one by one, see
+ * {@link DatabaseConnector#streamSelectQuery(String[], String[], String[], String, String[], int, RowCallback)}.
+ */
+public interface RowCallback {
+
+    /**
+     * Is called once for every row of the result.
+     *
+     * @param row the row; the keys of the map are the column names and the values
+     *            are the specific cell entries from the table
+     * @throws IOException if the row cannot be processed, e.g. because writing it
+     *                     to a response failed; stops the query
+     */
+    void onRow(Map<String, Object> row) throws IOException;
+
+}
@@ -0,0 +1,357 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Occupancy of the seats of one playtime, kept as a bitset with one bit per
+ * seat. The seats of the hall are numbered row by row starting at
+ * <code>0</code>, see <code>{@link #seatIndex(int, int)}</code>. <br>
+ * <br>
+ * Seats are claimed and released lock-free with compare-and-set on the 64-bit
+ * words of the bitset. A claim of several seats either gets all of them or
+ * none: if a seat is already taken, the words claimed so far are released
+ * again. In between, other claims may see those seats as taken and fail, but
+ * no seat is ever claimed twice. <br>
+ * <br>
+ * Checking, claiming and releasing a block of seats touches each word only
+ * once, so it costs <code>O(seats / 64)</code> instead of one operation per
+ * seat.
+ */
+public class SeatMap {
+
+    private static final int WORD_BITS = Long.SIZE;
+
+    private final int rows;
+    private final int seatsPerRow;
+    private final int capacity;
+    private final AtomicLongArray words;
+
+    /**
+     * Creates a seat map where all seats are free.
+     *
+     * @param rows        the amount of rows of the hall
+     * @param seatsPerRow the amount of seats per row
+     */
+    public SeatMap(int rows, int seatsPerRow) {
+        if (rows < 1 || seatsPerRow < 1 || (long) rows * seatsPerRow > Integer.MAX_VALUE - WORD_BITS) {
+            throw new IllegalArgumentException("Invalid hall layout: rows=" + rows + ", seatsPerRow="
+                    + seatsPerRow);
+        }
+        this.rows = rows;
+        this.seatsPerRow = seatsPerRow;
+        this.capacity = rows * seatsPerRow;
+        this.words = new AtomicLongArray((capacity + WORD_BITS - 1) / WORD_BITS);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    /**
+     * @return the amount of seats of the hall
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param row  the row, starting at <code>0</code>
+     * @param seat the seat within the row, starting at <code>0</code>
+     * @return the number of the seat in this seat map
+     * @throws IllegalArgumentException if the seat does not exist
+     */
+    public int seatIndex(int row, int seat) {
+        if (row < 0 || row >= rows || seat < 0 || seat >= seatsPerRow) {
+            throw new IllegalArgumentException("Seat " + seat + " in row " + row + " does not exist");
+        }
+        return row * seatsPerRow + seat;
+    }
+
+    /**
+     * @param seat the number of the seat
+     * @return <code>true</code> if the seat exists in this seat map
+     */
+    public boolean contains(int seat) {
+        return seat >= 0 && seat < capacity;
+    }
+
+    /**
+     * @param seat the number of the seat
+     * @return <code>true</code> if the seat is free
+     * @throws IllegalArgumentException if the seat does not exist
+     */
+    public boolean isFree(int seat) {
+        checkRange(seat, 1);
+        return (words.get(seat / WORD_BITS) & bit(seat)) == 0;
+    }
+
+    /**
+     * @param from  the number of the first seat of the block
+     * @param count the amount of seats of the block
+     * @return <code>true</code> if all seats of the block are free
+     * @throws IllegalArgumentException if a seat of the block does not exist
+     */
+    public boolean isBlockFree(int from, int count) {
+        checkRange(from, count);
+        int end = from + count;
+        for (int word = from / WORD_BITS; word * WORD_BITS < end; word++) {
+            if ((words.get(word) & mask(word, from, end)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the amount of free seats
+     */
+    public int countFree() {
+        int taken = 0;
+        for (int word = 0; word < words.length(); word++) {
+            taken += Long.bitCount(words.get(word));
+        }
+        return capacity - taken;
+    }
+
+    /**
+     * Claims a block of adjacent seats, e.g. for a group that wants to sit
+     * together.
+     *
+     * @param from  the number of the first seat of the block
+     * @param count the amount of seats of the block
+     * @return <code>true</code> if all seats were claimed; <code>false</code> if a
+     * seat was already taken, in which case none is claimed
+     * @throws IllegalArgumentException if a seat of the block does not exist
+     */
+    public boolean claimBlock(int from, int count) {
+        checkRange(from, count);
+        int end = from + count;
+        int first = from / WORD_BITS;
+        for (int word = first; word * WORD_BITS < end; word++) {
+            if (!claimWord(word, mask(word, from, end))) {
+                for (int claimed = first; claimed < word; claimed++) {
+                    releaseWord(claimed, mask(claimed, from, end));
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Claims the given seats, which do not have to be adjacent.
+     *
+     * @param seats the numbers of the seats
+     * @return <code>true</code> if all seats were claimed; <code>false</code> if a
+     * seat was already taken, in which case none is claimed
+     * @throws IllegalArgumentException if a seat does not exist
+     */
+    public boolean claim(int... seats) {
+        int[] sorted = sortedSeats(seats);
+        int start = 0;
+        while (start < sorted.length) {
+            int word = sorted[start] / WORD_BITS;
+            int end = endOfWord(sorted, start);
+            if (!claimWord(word, mask(sorted, start, end))) {
+                // release the words claimed before, which are the ones before start
+                int released = 0;
+                while (released < start) {
+                    int releasedEnd = endOfWord(sorted, released);
+                    releaseWord(sorted[released] / WORD_BITS, mask(sorted, released, releasedEnd));
+                    released = releasedEnd;
+                }
+                return false;
+            }
+            start = end;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a block of adjacent seats. Seats of the block that are free
+     * already stay free.
+     *
+     * @param from  the number of the first seat of the block
+     * @param count the amount of seats of the block
+     * @throws IllegalArgumentException if a seat of the block does not exist
+     */
+    public void releaseBlock(int from, int count) {
+        checkRange(from, count);
+        int end = from + count;
+        for (int word = from / WORD_BITS; word * WORD_BITS < end; word++) {
+            releaseWord(word, mask(word, from, end));
+        }
+    }
+
+    /**
+     * Releases the given seats. Seats that are free already stay free.
+     *
+     * @param seats the numbers of the seats
+     * @throws IllegalArgumentException if a seat does not exist
+     */
+    public void release(int... seats) {
+        int[] sorted = sortedSeats(seats);
+        int start = 0;
+        while (start < sorted.length) {
+            int end = endOfWord(sorted, start);
+            releaseWord(sorted[start] / WORD_BITS, mask(sorted, start, end));
+            start = end;
+        }
+    }
+
+    /**
+     * Searches the first block of adjacent free seats within one row.
+     *
+     * @param count the amount of seats of the block
+     * @return the number of the first seat of the block; <code>-1</code> if there
+     * is no such block
+     */
+    public int findFreeBlock(int count) {
+        if (count < 1 || count > seatsPerRow) {
+            return -1;
+        }
+        for (int row = 0; row < rows; row++) {
+            int rowStart = row * seatsPerRow;
+            int rowEnd = rowStart + seatsPerRow;
+            int free = nextFree(rowStart, rowEnd);
+            while (free + count <= rowEnd) {
+                int taken = nextTaken(free, free + count);
+                if (taken == free + count) {
+                    return free;
+                }
+                free = nextFree(taken, rowEnd);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a copy of the bitset; bit <code>i % 64</code> of word
+     * <code>i / 64</code> is set if seat <code>i</code> is taken
+     */
+    public long[] toLongArray() {
+        long[] copy = new long[words.length()];
+        for (int word = 0; word < copy.length; word++) {
+            copy[word] = words.get(word);
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "SeatMap [rows=" + rows + ", seatsPerRow=" + seatsPerRow + ", free=" + countFree() + "]";
+    }
+
+    private boolean claimWord(int word, long mask) {
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+        return true;
+    }
+
+    private void releaseWord(int word, long mask) {
+        long current;
+        do {
+            current = words.get(word);
+        } while (!words.compareAndSet(word, current, current & ~mask));
+    }
+
+    /**
+     * @return the first free seat in <code>[from, end)</code>; <code>end</code>
+     * if there is none
+     */
+    private int nextFree(int from, int end) {
+        for (int word = from / WORD_BITS; word * WORD_BITS < end; word++) {
+            long free = ~words.get(word) & mask(word, from, end);
+            if (free != 0) {
+                return word * WORD_BITS + Long.numberOfTrailingZeros(free);
+            }
+        }
+        return end;
+    }
+
+    /**
+     * @return the first taken seat in <code>[from, end)</code>; <code>end</code>
+     * if there is none
+     */
+    private int nextTaken(int from, int end) {
+        for (int word = from / WORD_BITS; word * WORD_BITS < end; word++) {
+            long taken = words.get(word) & mask(word, from, end);
+            if (taken != 0) {
+                return word * WORD_BITS + Long.numberOfTrailingZeros(taken);
+            }
+        }
+        return end;
+    }
+
+    private void checkRange(int from, int count) {
+        if (count < 1 || from < 0 || from > capacity - count) {
+            throw new IllegalArgumentException("Seats " + from + " to " + ((long) from + count - 1)
+                    + " do not exist");
+        }
+    }
+
+    private int[] sortedSeats(int[] seats) {
+        int[] sorted = seats.clone();
+        Arrays.sort(sorted);
+        for (int seat : sorted) {
+            checkRange(seat, 1);
+        }
+        return sorted;
+    }
+
+    private static long bit(int seat) {
+        return 1L << (seat % WORD_BITS);
+    }
+
+    /**
+     * @return the bits of the seats <code>[from, end)</code> within the given
+     * word
+     */
+    private static long mask(int word, int from, int end) {
+        int wordStart = word * WORD_BITS;
+        long mask = -1L;
+        if (from > wordStart) {
+            mask <<= from - wordStart;
+        }
+        if (end < wordStart + WORD_BITS) {
+            mask &= (1L << (end - wordStart)) - 1;
+        }
+        return mask;
+    }
+
+    /**
+     * @return the bits of the sorted seats <code>[start, end)</code>, which are
+     * all in the same word
+     */
+    private static long mask(int[] sorted, int start, int end) {
+        long mask = 0;
+        for (int i = start; i < end; i++) {
+            mask |= bit(sorted[i]);
+        }
+        return mask;
+    }
+
+    /**
+     * @return the index after the last of the sorted seats that is in the same
+     * word as the seat at <code>start</code>
+     */
+    private static int endOfWord(int[] sorted, int start) {
+        int word = sorted[start] / WORD_BITS;
+        int end = start + 1;
+        while (end < sorted.length && sorted[end] / WORD_BITS == word) {
+            end++;
+        }
+        return end;
+    }
+
+}
@@ -0,0 +1,224 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link SeatMap} of each playtime in memory and persists claimed
+ * seats in the table <code>{@value DatabaseConnector#SEAT_RESERVATIONS}</code>
+ * through a {@link DatabaseConnector}. <br>
+ * <br>
+ * A claim is first made in the seat map, so concurrent claims for the same seat
+ * are decided without a database round trip, and only the winner inserts its
+ * rows. If the insertion fails, e.g. because another server instance sold the
+ * seat in the meantime (the primary key of the table forbids selling a seat
+ * twice), the seats are released in the seat map again. <br>
+ * <br>
+ * If the table is changed through the connector by anyone else than this
+ * store, e.g. when reservations are deleted, all seat maps are evicted and read
+ * from the database again when they are needed. <br>
+ * <br>
+ * The server has no routes for reservations yet; they are meant to claim their
+ * seats with {@link #claim(int, int, int...)} when a reservation is created and
+ * to release them with {@link #release(int, int)} when it is cancelled.
+ */
+public class SeatMapStore {
+
+    public static final String DATE_PLAYTIME_ID = "datePlaytimeId";
+    public static final String SEAT = "seat";
+    public static final String RESERVATION_ID = "reservationId";
+
+    private static final String[] COLUMNS = {DATE_PLAYTIME_ID, SEAT, RESERVATION_ID};
+    private static final Logger logger = Logger.getLogger(SeatMapStore.class.getName());
+
+    private final DatabaseConnector dbConnector;
+    private final Map<Integer, SeatMap> seatMaps = new ConcurrentHashMap<>();
+    // set while this store writes on the current thread, whose changes are in the seat maps already
+    private final ThreadLocal<Boolean> writing = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private final TableChangeListener seatReservationsListener;
+
+    /**
+     * @param dbConnector the connector to persist the seats with
+     */
+    public SeatMapStore(DatabaseConnector dbConnector) {
+        this.dbConnector = dbConnector;
+        // the listener is called on the thread that executed the statement
+        this.seatReservationsListener = (table, change) -> {
+            if (DatabaseConnector.SEAT_RESERVATIONS.equalsIgnoreCase(table) && !writing.get()) {
+                seatMaps.clear();
+            }
+        };
+        dbConnector.addTableChangeListener(seatReservationsListener);
+    }
+
+    /**
+     * Stops listening for changes of the seat reservations, so that the
+     * connector does not keep this instance alive after it is not used anymore.
+     */
+    public void close() {
+        dbConnector.removeTableChangeListener(seatReservationsListener);
+    }
+
+    /**
+     * Returns the seat map of a playtime. If it is not in memory yet, the claimed
+     * seats are read from the database.
+     *
+     * @param datePlaytimeId the id of the playtime
+     * @param rows           the amount of rows of the hall
+     * @param seatsPerRow    the amount of seats per row
+     * @return the seat map; <code>null</code> if the seats could not be read
+     */
+    public SeatMap getSeatMap(int datePlaytimeId, int rows, int seatsPerRow) {
+        SeatMap seatMap = seatMaps.get(datePlaytimeId);
+        if (seatMap != null) {
+            return seatMap;
+        }
+        // loaded outside of the map, so that the query does not block other playtimes; if two threads load
+        // the same playtime, the first one wins
+        SeatMap loaded = load(datePlaytimeId, rows, seatsPerRow);
+        if (loaded == null) {
+            // not cached, so the next call tries again
+            return null;
+        }
+        seatMap = seatMaps.putIfAbsent(datePlaytimeId, loaded);
+        return seatMap != null ? seatMap : loaded;
+    }
+
+    /**
+     * @param datePlaytimeId the id of the playtime
+     * @return the seat map of the playtime; <code>null</code> if it is not in
+     * memory
+     */
+    public SeatMap getSeatMap(int datePlaytimeId) {
+        return seatMaps.get(datePlaytimeId);
+    }
+
+    /**
+     * Claims seats of a playtime for a reservation.
+     *
+     * @param datePlaytimeId the id of the playtime; its seat map must have been
+     *                       loaded with <code>{@link #getSeatMap(int, int, int)}</code>
+     * @param reservationId  the id of the reservation
+     * @param seats          the numbers of the seats
+     * @return <code>true</code> if all seats were claimed and persisted;
+     * <code>false</code> if a seat was taken or does not exist, or the seat map
+     * was not loaded, in which case none is claimed
+     */
+    public boolean claim(int datePlaytimeId, int reservationId, int... seats) {
+        SeatMap seatMap = seatMaps.get(datePlaytimeId);
+        if (seatMap == null || seats.length == 0) {
+            return false;
+        }
+        for (int seat : seats) {
+            if (!seatMap.contains(seat)) {
+                return false;
+            }
+        }
+        if (!seatMap.claim(seats)) {
+            return false;
+        }
+
+        List<String[]> rows = new ArrayList<>(seats.length);
+        for (int seat : seats) {
+            rows.add(new String[]{String.valueOf(datePlaytimeId), String.valueOf(seat),
+                    String.valueOf(reservationId)});
+        }
+        List<Integer> inserted;
+        writing.set(Boolean.TRUE);
+        try {
+            inserted = dbConnector.executeBatchInsertQuery(DatabaseConnector.SEAT_RESERVATIONS, COLUMNS, rows);
+        } finally {
+            writing.set(Boolean.FALSE);
+        }
+        if (inserted == null) {
+            seatMap.release(seats);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases all seats of a reservation, e.g. when it is cancelled.
+     *
+     * @param datePlaytimeId the id of the playtime
+     * @param reservationId  the id of the reservation
+     * @return the numbers of the released seats; <code>null</code> if they could
+     * not be released
+     */
+    public int[] release(int datePlaytimeId, int reservationId) {
+        String condition = DATE_PLAYTIME_ID + " = ? AND " + RESERVATION_ID + " = ?";
+        String[] conditionArgs = {String.valueOf(datePlaytimeId), String.valueOf(reservationId)};
+        int[] seats;
+        writing.set(Boolean.TRUE);
+        try {
+            seats = dbConnector.executeInTransaction(tx -> {
+                List<Map<String, Object>> result = tx.executeSelectForUpdateQuery(new String[]{SEAT},
+                        new String[]{DatabaseConnector.SEAT_RESERVATIONS}, null, condition, conditionArgs);
+                tx.executeDeleteQuery(DatabaseConnector.SEAT_RESERVATIONS, condition, conditionArgs);
+                return toSeats(result);
+            });
+        } finally {
+            writing.set(Boolean.FALSE);
+        }
+        SeatMap seatMap = seatMaps.get(datePlaytimeId);
+        if (seats != null && seatMap != null) {
+            seatMap.release(seatsOf(seatMap, datePlaytimeId, seats));
+        }
+        return seats;
+    }
+
+    /**
+     * Removes the seat map of a playtime from memory, e.g. after the playtime is
+     * over. It is read from the database again when it is needed.
+     *
+     * @param datePlaytimeId the id of the playtime
+     */
+    public void evict(int datePlaytimeId) {
+        seatMaps.remove(datePlaytimeId);
+    }
+
+    private SeatMap load(int datePlaytimeId, int rows, int seatsPerRow) {
+        List<Map<String, Object>> result = dbConnector.executeSelectQuery(new String[]{SEAT},
+                new String[]{DatabaseConnector.SEAT_RESERVATIONS}, null, DATE_PLAYTIME_ID + " = ?",
+                new String[]{String.valueOf(datePlaytimeId)});
+        if (result == null) {
+            return null;
+        }
+        SeatMap seatMap = new SeatMap(rows, seatsPerRow);
+        for (int seat : seatsOf(seatMap, datePlaytimeId, toSeats(result))) {
+            seatMap.claim(seat);
+        }
+        return seatMap;
+    }
+
+    /**
+     * @return the seats that exist in the seat map; the others are logged
+     */
+    private static int[] seatsOf(SeatMap seatMap, int datePlaytimeId, int[] seats) {
+        int[] existing = new int[seats.length];
+        int count = 0;
+        for (int seat : seats) {
+            if (seatMap.contains(seat)) {
+                existing[count++] = seat;
+            } else {
+                logger.log(Level.FINE, "Seat " + seat + " of playtime " + datePlaytimeId
+                        + " is outside of the hall");
+            }
+        }
+        return count == seats.length ? existing : Arrays.copyOf(existing, count);
+    }
+
+    private static int[] toSeats(List<Map<String, Object>> result) {
+        int[] seats = new int[result.size()];
+        for (int i = 0; i < seats.length; i++) {
+            seats[i] = ((Number) result.get(i).get(SEAT)).intValue();
+        }
+        return seats;
+    }
+
+}
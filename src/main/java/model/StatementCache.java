@@ -0,0 +1,101 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used cache of prepared statements for one connection. The key
+ * is the normalized SQL text, so identical queries are only parsed once per
+ * connection. <br>
+ * <br>
+ * A connection is only used by one thread at a time, therefore the cache itself
+ * is not synchronized. Statements returned by the cache must not be closed by
+ * the caller.
+ */
+final class StatementCache {
+
+    private static final String GENERATED_KEYS_PREFIX = "/* keys */ ";
+
+    private final Connection connection;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final Map<String, PreparedStatement> statements;
+
+    /**
+     * @param connection the connection to prepare the statements on
+     * @param capacity   the maximum amount of cached statements
+     * @param hits       the counter incremented for every cache hit
+     * @param misses     the counter incremented for every cache miss
+     */
+    StatementCache(Connection connection, int capacity, LongAdder hits, LongAdder misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > capacity) {
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached statement for the given SQL text or prepares and caches a
+     * new one. Parameters of a cached statement are cleared before it is
+     * returned.
+     *
+     * @param sql                 the normalized SQL text
+     * @param returnGeneratedKeys <code>true</code> if the statement should return
+     *                            the keys generated for inserted rows
+     * @return the prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement prepare(String sql, boolean returnGeneratedKeys) throws SQLException {
+        // statements returning keys are prepared differently, so they are cached separately
+        String key = returnGeneratedKeys ? GENERATED_KEYS_PREFIX + sql : sql;
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null && !stmt.isClosed()) {
+            hits.increment();
+            stmt.clearParameters();
+            stmt.clearBatch();
+            return stmt;
+        }
+        misses.increment();
+        stmt = returnGeneratedKeys ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(sql);
+        statements.put(key, stmt);
+        return stmt;
+    }
+
+    /**
+     * Closes and removes all cached statements.
+     */
+    void clear() {
+        for (PreparedStatement stmt : statements.values()) {
+            close(stmt);
+        }
+        statements.clear();
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    private static void close(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // statement is dropped anyway
+        }
+    }
+
+}
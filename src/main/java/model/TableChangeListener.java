@@ -0,0 +1,28 @@
+package model;
+
+/**
+ * Is notified whenever a table was changed through a {@link DatabaseConnector},
+ * e.g. to drop cached data read from the table, see
+ * {@link DatabaseConnector#addTableChangeListener(TableChangeListener)}.
+ */
+public interface TableChangeListener {
+
+    /**
+     * The kind of statement that changed a table.
+     */
+    enum Change {
+        INSERT, UPDATE, DELETE
+    }
+
+    /**
+     * Is called after a statement changing the table was executed successfully
+     * (or its transaction was committed). Must return quickly, because it is
+     * called on the thread that executed the statement. A transaction that
+     * changed a table in several ways reports each kind once.
+     *
+     * @param table  the name of the changed table as given to the connector
+     * @param change the kind of the change, e.g. to ignore new rows
+     */
+    void tableChanged(String table, Change change);
+
+}
@@ -0,0 +1,174 @@
+package model;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Executes SQL statements within one database transaction that was started by
+ * {@link DatabaseConnector#executeInTransaction(int, TransactionCallback)}. All
+ * statements run on the same connection and are committed together when the
+ * callback returns, or rolled back if it throws an exception. <br>
+ * <br>
+ * The parameters of all methods correspond to the parameters of the methods
+ * with the same name in {@link DatabaseConnector}. Unlike those, the methods of
+ * this class throw a <code>SQLException</code> if a statement fails, so that the
+ * transaction is rolled back.
+ */
+public class Transaction {
+
+    private final DatabaseConnector dbConnector;
+    private final PooledConnection connection;
+    private boolean rollbackOnly;
+    private boolean completed;
+    // tables written by this transaction with the kinds of changes, announced after the commit
+    private final Map<String, Set<TableChangeListener.Change>> changedTables = new LinkedHashMap<>();
+
+    Transaction(DatabaseConnector dbConnector, PooledConnection connection) {
+        this.dbConnector = dbConnector;
+        this.connection = connection;
+    }
+
+    /**
+     * Executes a SQL SELECT statement within the transaction, see
+     * {@link DatabaseConnector#executeSelectQuery(String[], String[], String[], String, String[])}.
+     *
+     * @return the list of maps representing the result
+     * @throws SQLException if the statement fails
+     */
+    public List<Map<String, Object>> executeSelectQuery(String[] selection, String[] tables, String[] tableAlias,
+                                                        String condition, String[] conditionArgs)
+            throws SQLException {
+        return select(selection, tables, tableAlias, condition, conditionArgs, false);
+    }
+
+    /**
+     * Executes a SQL SELECT ... FOR UPDATE statement within the transaction. The
+     * selected rows are locked until the transaction ends, so no other
+     * transaction can change them in between (e.g. between checking the amount of
+     * free seats and reserving them).
+     *
+     * @return the list of maps representing the result
+     * @throws SQLException if the statement fails
+     */
+    public List<Map<String, Object>> executeSelectForUpdateQuery(String[] selection, String[] tables,
+                                                                 String[] tableAlias, String condition,
+                                                                 String[] conditionArgs) throws SQLException {
+        return select(selection, tables, tableAlias, condition, conditionArgs, true);
+    }
+
+    /**
+     * Executes a SQL INSERT statement within the transaction, see
+     * {@link DatabaseConnector#executeInsertQuery(String, String[], String[])}.
+     *
+     * @return the id generated for the inserted row; <code>0</code> if no id was
+     * generated
+     * @throws SQLException if the statement fails
+     */
+    public int executeInsertQuery(String table, String[] columns, String[] values) throws SQLException {
+        ensureActive();
+        PreparedStatement stmt = check(dbConnector.createInsertStatement(connection, table, columns, values, true));
+        stmt.executeUpdate();
+        changed(table, TableChangeListener.Change.INSERT);
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            return keys.next() ? keys.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Executes a SQL UPDATE statement within the transaction, see
+     * {@link DatabaseConnector#executeUpdateQuery(String, String[], String[], String, String[])}.
+     *
+     * @return the amount of changed rows
+     * @throws SQLException if the statement fails
+     */
+    public int executeUpdateQuery(String table, String[] modification, String[] modificationArgs, String selection,
+                                  String[] selectionArgs) throws SQLException {
+        ensureActive();
+        int count = check(dbConnector.createUpdateStatement(connection, table, modification, modificationArgs,
+                selection, selectionArgs)).executeUpdate();
+        changed(table, TableChangeListener.Change.UPDATE);
+        return count;
+    }
+
+    /**
+     * Executes a SQL DELETE statement within the transaction, see
+     * {@link DatabaseConnector#executeDeleteQuery(String, String, String[])}.
+     *
+     * @return the amount of deleted rows
+     * @throws SQLException if the statement fails
+     */
+    public int executeDeleteQuery(String table, String selection, String[] selectionArgs) throws SQLException {
+        ensureActive();
+        int count = check(dbConnector.createDeleteStatement(connection, table, selection, selectionArgs))
+                .executeUpdate();
+        changed(table, TableChangeListener.Change.DELETE);
+        return count;
+    }
+
+    /**
+     * Marks the transaction to be rolled back instead of committed when the
+     * callback returns, e.g. if not enough seats are available.
+     */
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    void complete() {
+        completed = true;
+    }
+
+    Map<String, Set<TableChangeListener.Change>> getChangedTables() {
+        return changedTables;
+    }
+
+    private void changed(String table, TableChangeListener.Change change) {
+        changedTables.computeIfAbsent(table, key -> EnumSet.noneOf(TableChangeListener.Change.class)).add(change);
+    }
+
+    private List<Map<String, Object>> select(String[] selection, String[] tables, String[] tableAlias,
+                                             String condition, String[] conditionArgs, boolean forUpdate)
+            throws SQLException {
+        ensureActive();
+        PreparedStatement stmt = check(dbConnector.createSelectStatement(connection, selection, tables, tableAlias,
+                condition, conditionArgs, forUpdate));
+        try (ResultSet result = stmt.executeQuery()) {
+            return ResultTable.from(result);
+        }
+    }
+
+    /**
+     * Makes sure the transaction was not completed yet. Afterwards, the
+     * connection may already be used by another thread.
+     */
+    private void ensureActive() {
+        if (completed) {
+            throw new IllegalStateException("Transaction has already been completed");
+        }
+    }
+
+    /**
+     * Makes sure the statement could be created.
+     *
+     * @param stmt the created statement; <code>null</code> if the parameters were
+     *             invalid
+     * @return the statement
+     * @throws SQLException if the statement is <code>null</code>
+     */
+    private PreparedStatement check(PreparedStatement stmt) throws SQLException {
+        if (stmt == null) {
+            throw new SQLException("Statement could not be created");
+        }
+        return stmt;
+    }
+
+}
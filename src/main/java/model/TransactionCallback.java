@@ -0,0 +1,24 @@
+package model;
+
+import java.sql.SQLException;
+
+/**
+ * Unit of work that is executed within one database transaction, see
+ * {@link DatabaseConnector#executeInTransaction(int, TransactionCallback)}.
+ *
+ * @param <T> the type of the result of the unit of work
+ */
+public interface TransactionCallback<T> {
+
+    /**
+     * Performs all statements of the unit of work on the given transaction. The
+     * method may be called more than once if the transaction is retried after a
+     * deadlock, so it must not have side effects outside of the database.
+     *
+     * @param tx the transaction to execute the statements on
+     * @return the result of the unit of work
+     * @throws SQLException if a statement fails; the transaction is rolled back
+     */
+    T execute(Transaction tx) throws SQLException;
+
+}
@@ -0,0 +1,148 @@
+package rest_client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import utils.StringNames;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Flow;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the free seats of a playtime from the server as Server-Sent Events,
+ * whenever they change. Create it with
+ * <code>{@link RestClient#subscribeToAvailability(int, IntConsumer)}</code>. <br>
+ * <br>
+ * The listener is called on a background thread, so a JavaFX controller has to
+ * pass the value on with <code>Platform.runLater(...)</code>. The subscription
+ * has to be closed when the value is not needed anymore, e.g. when the scene is
+ * left. It is not reopened if the connection is lost.
+ */
+public class AvailabilitySubscription implements Closeable {
+
+    static final String PATH = "/availability";
+
+    private static final String AVAILABILITY_EVENT = "availability";
+    private static final Logger logger = Logger.getLogger(AvailabilitySubscription.class.getName());
+    private static final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    private final IntConsumer listener;
+    private final EventParser parser = new EventParser();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean closed;
+
+    /**
+     * Opens the event stream.
+     *
+     * @param baseUrl        the url of the server, e.g.
+     *                       <code>http://localhost:4568</code>
+     * @param datePlaytimeId the id of the playtime
+     * @param listener       receives the amount of free seats
+     */
+    AvailabilitySubscription(String baseUrl, int datePlaytimeId, IntConsumer listener) {
+        this.listener = listener;
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + PATH + "?"
+                        + StringNames.datePlaytimeId + "=" + datePlaytimeId))
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(parser))
+                .exceptionally(e -> {
+                    logger.log(Level.FINE, "Availability stream failed", e);
+                    return null;
+                });
+    }
+
+    /**
+     * @return <code>true</code> if the subscription was closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the event stream; the listener is not called anymore afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * Parses the lines of the stream into events: lines <code>event: name</code>
+     * and <code>data: value</code> make up an event, which ends with an empty
+     * line.
+     */
+    private final class EventParser implements Flow.Subscriber<String> {
+
+        private String event;
+        private final StringBuilder data = new StringBuilder();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            AvailabilitySubscription.this.subscription = subscription;
+            if (closed) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.isEmpty()) {
+                dispatch();
+            } else if (line.startsWith("event:")) {
+                event = line.substring("event:".length()).trim();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring("data:".length()).trim());
+            }
+            // comments (":") and other fields like "id:" are not needed
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            logger.log(Level.FINE, "Availability stream failed", throwable);
+            closed = true;
+        }
+
+        @Override
+        public void onComplete() {
+            closed = true;
+        }
+
+        private void dispatch() {
+            String name = event;
+            String value = data.toString();
+            event = null;
+            data.setLength(0);
+            if (closed || !AVAILABILITY_EVENT.equals(name)) {
+                return;
+            }
+            try {
+                JsonObject availability = new Gson().fromJson(value, JsonObject.class);
+                listener.accept(availability.get(StringNames.freeSeats).getAsInt());
+            } catch (JsonParseException | NullPointerException | IllegalStateException
+                    | UnsupportedOperationException e) {
+                logger.log(Level.FINE, "Availability event could not be read: " + value, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package rest_client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import kong.unirest.HttpRequestWithBody;
+import kong.unirest.HttpResponse;
+import kong.unirest.Unirest;
+import utils.StringNames;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects several GET requests and sends them to the server in a single HTTP
+ * round trip, where they are executed in parallel. Create it with
+ * <code>{@link RestClient#batch()}</code>:
+ *
+ * <pre>
+ * List&lt;JsonObject&gt; results = restClient.batch()
+ *         .get("/customers", Map.of(StringNames.email, email))
+ *         .get("/endpoint", Map.of(StringNames.query1, 1))
+ *         .send();
+ * </pre>
+ * <p>
+ * The authorization of the current user is sent with the batch and applies to
+ * all requests in it.
+ */
+public class BatchRequest {
+
+    public static final String STATUS = "status";
+    public static final String BODY = "body";
+
+    private final String authorization;
+    private final JsonArray requests = new JsonArray();
+
+    /**
+     * @param authorization the authorization header of the current user; can be
+     *                      <code>null</code>
+     */
+    BatchRequest(String authorization) {
+        this.authorization = authorization;
+    }
+
+    /**
+     * Adds a GET request without query parameters.
+     *
+     * @param path the path of the endpoint, e.g. <code>/customers</code>
+     * @return this batch
+     */
+    public BatchRequest get(String path) {
+        return get(path, Map.of());
+    }
+
+    /**
+     * Adds a GET request.
+     *
+     * @param path        the path of the endpoint, e.g. <code>/customers</code>
+     * @param queryParams the query parameters; <code>null</code> values are left
+     *                    out
+     * @return this batch
+     */
+    public BatchRequest get(String path, Map<String, ?> queryParams) {
+        JsonObject query = new JsonObject();
+        queryParams.forEach((name, value) -> {
+            if (value != null) {
+                query.addProperty(name, String.valueOf(value));
+            }
+        });
+        JsonObject request = new JsonObject();
+        request.addProperty("path", path);
+        request.add("query", query);
+        requests.add(request);
+        return this;
+    }
+
+    /**
+     * @return the amount of requests added so far
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * Makes a REST request to the server. Sends all requests of this batch at
+     * once.
+     *
+     * @return one <code>JsonObject</code> per request in the order they were
+     * added, containing the status of the response under <code>status</code> and
+     * its JSON content under <code>body</code>; <code>null</code> if the batch
+     * itself was rejected
+     */
+    public List<JsonObject> send() {
+        HttpRequestWithBody request = Unirest.post("/batch").header("Content-Type", "application/json");
+        if (authorization != null) {
+            request.header(StringNames.authorization, authorization);
+        }
+        HttpResponse<String> response = request.body(requests.toString()).asString();
+        if (response.getStatus() != 200) {
+            return null;
+        }
+        JsonArray results = new Gson().fromJson(response.getBody(), JsonArray.class);
+        List<JsonObject> resultList = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            resultList.add(results.get(i).getAsJsonObject());
+        }
+        return resultList;
+    }
+
+}
@@ -0,0 +1,124 @@
+package rest_client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import kong.unirest.GetRequest;
+import kong.unirest.HttpResponse;
+import kong.unirest.Unirest;
+import utils.StringNames;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the pages of a list endpoint of the server, which are only
+ * requested when they are needed. Create it with
+ * <code>{@link RestClient#requestEndpointPages(int, int)}</code>:
+ *
+ * <pre>
+ * PageIterator pages = restClient.requestEndpointPages(queryParam1, 50);
+ * while (pages.hasNext()) {
+ *     for (JsonObject row : pages.next()) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * Each page is requested with the cursor the server sent with the previous
+ * page, so pages do not overlap or skip rows even if rows are added in the
+ * meantime. The iteration ends after the last page or at the first failed
+ * request, which can be told apart with <code>{@link #getLastStatus()}</code>.
+ */
+public class PageIterator implements Iterator<List<JsonObject>> {
+
+    private final String path;
+    private final Map<String, ?> queryParams;
+    private final int limit;
+    private final String authorization;
+
+    private String cursor;
+    private boolean lastPageLoaded;
+    private List<JsonObject> nextPage;
+    private int lastStatus;
+
+    /**
+     * @param path          the path of the endpoint, e.g. <code>/endpoint</code>
+     * @param queryParams   the query parameters of the endpoint; <code>null</code>
+     *                      values are left out
+     * @param limit         the maximum amount of rows per page
+     * @param authorization the authorization header of the current user; can be
+     *                      <code>null</code>
+     */
+    PageIterator(String path, Map<String, ?> queryParams, int limit, String authorization) {
+        this.path = path;
+        this.queryParams = queryParams;
+        this.limit = limit;
+        this.authorization = authorization;
+    }
+
+    /**
+     * Makes a REST request to the server, if the next page was not requested
+     * yet.
+     */
+    @Override
+    public boolean hasNext() {
+        if (nextPage == null && !lastPageLoaded) {
+            nextPage = requestPage();
+        }
+        return nextPage != null;
+    }
+
+    @Override
+    public List<JsonObject> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<JsonObject> page = nextPage;
+        nextPage = null;
+        return page;
+    }
+
+    /**
+     * @return the status of the last response; <code>200</code> or
+     * <code>404</code> if the iteration ended regularly; <code>0</code> if no
+     * page was requested yet
+     */
+    public int getLastStatus() {
+        return lastStatus;
+    }
+
+    private List<JsonObject> requestPage() {
+        GetRequest request = Unirest.get(path).queryString(StringNames.limit, limit);
+        queryParams.forEach((name, value) -> {
+            if (value != null) {
+                request.queryString(name, value);
+            }
+        });
+        if (cursor != null) {
+            request.queryString(StringNames.after, cursor);
+        }
+        if (authorization != null) {
+            request.header(StringNames.authorization, authorization);
+        }
+        HttpResponse<String> response = request.asString();
+        lastStatus = response.getStatus();
+        cursor = response.getHeaders().getFirst(StringNames.nextCursor);
+        // without a cursor there is no further page; an empty header means the same
+        lastPageLoaded = cursor == null || cursor.isEmpty();
+        if (response.getStatus() != 200) {
+            lastPageLoaded = true;
+            return null;
+        }
+        JsonArray rows = new Gson().fromJson(response.getBody(), JsonArray.class);
+        List<JsonObject> page = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            page.add(rows.get(i).getAsJsonObject());
+        }
+        return page;
+    }
+
+}
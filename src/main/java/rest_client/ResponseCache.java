@@ -0,0 +1,76 @@
+package rest_client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the bodies of responses together with their ETags, so that a repeated
+ * request can be revalidated with the header <code>If-None-Match</code>. If the
+ * server answers with <code>304 Not Modified</code>, the kept body is used
+ * instead of transferring and parsing it again. <br>
+ * <br>
+ * The least recently used responses are dropped when the cache is full.
+ */
+final class ResponseCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final Map<String, CachedResponse> responses;
+
+    ResponseCache(int maxEntries) {
+        this.responses = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param url the complete url of the request including the query string
+     * @return the ETag of the cached response; <code>null</code> if there is none
+     */
+    synchronized String getEtag(String url) {
+        CachedResponse response = responses.get(url);
+        return response == null ? null : response.etag;
+    }
+
+    /**
+     * @param url  the complete url of the request including the query string
+     * @param etag the ETag the server confirmed with <code>304</code>
+     * @return the cached body; <code>null</code> if there is none or it has
+     * another ETag
+     */
+    synchronized String getBody(String url, String etag) {
+        CachedResponse response = responses.get(url);
+        return response != null && response.etag.equals(etag) ? response.body : null;
+    }
+
+    synchronized void put(String url, String etag, String body) {
+        responses.put(url, new CachedResponse(etag, body));
+    }
+
+    synchronized void remove(String url) {
+        responses.remove(url);
+    }
+
+    synchronized void clear() {
+        responses.clear();
+    }
+
+    synchronized int size() {
+        return responses.size();
+    }
+
+    private static final class CachedResponse {
+
+        private final String etag;
+        private final String body;
+
+        CachedResponse(String etag, String body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+}
@@ -3,6 +3,8 @@ package rest_client;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import kong.unirest.GetRequest;
+import kong.unirest.Header;
 import kong.unirest.HttpResponse;
 import kong.unirest.JsonNode;
 import kong.unirest.Unirest;
@@ -12,6 +14,8 @@ import utils.StringNames;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
 import java.util.logging.Logger;
 
 public class RestClient {
@@ -33,6 +37,10 @@ public class RestClient {
         // set base url
         String SERVER_URL = "http://localhost:4568";
         Unirest.config().defaultBaseUrl(SERVER_URL);
+        // send Accept-Encoding: gzip, deflate and decode compressed responses transparently
+        Unirest.config().requestCompression(true);
+        // collect the Server-Timing header of every response
+        Unirest.config().interceptor(serverTimingStats);
     }
 
     public static RestClient getRestClient() {
@@ -189,16 +197,164 @@ public class RestClient {
      * post, put, delete).
      */
 
-    public List<JsonObject> requestEndpoint(int queryParam1, String queryParam2) {
+    private final ResponseCache responseCache = new ResponseCache(ResponseCache.DEFAULT_MAX_ENTRIES);
+
+    private final ServerTimingStats serverTimingStats = new ServerTimingStats();
+
+    /**
+     * Makes a REST request to the server. Logs the current user in with his/her
+     * credentials and exchanges them for a session token, which is sent instead
+     * of the credentials in all further requests of the user.
+     *
+     * @return the information of the user as a <code>JsonObject</code>;
+     * <code>null</code> if the credentials are not valid
+     */
+    public JsonObject logIn() {
         HttpResponse<JsonNode> jsonResponse = Unirest
-                .get("/endpoint")
-                .queryString(StringNames.query1, queryParam1)
-                .queryString(StringNames.query2, queryParam2)
+                .post("/login")
+                .header(StringNames.authorization, user.getAuthorization())
                 .asJson();
         if (jsonResponse.getStatus() != 200) {
             return null;
         }
-        return mapStringToJsonObjectList(jsonResponse.getBody().toString());
+        JsonObject userInfo = new Gson().fromJson(jsonResponse.getBody().toString(), JsonObject.class);
+        user.setAuthorization(StringNames.bearer + " " + userInfo.get(StringNames.token).getAsString());
+        return userInfo;
+    }
+
+    /**
+     * Makes a REST request to the server. Ends the session of the current user.
+     * Afterwards, the user is reset to <code>null</code>.
+     */
+    public void logOut() {
+        if (user != null && user.getAuthorization().startsWith(StringNames.bearer + " ")) {
+            Unirest.post("/logout")
+                    .header(StringNames.authorization, user.getAuthorization())
+                    .asEmpty();
+        }
+        user = null;
+        responseCache.clear();
+    }
+
+    /**
+     * Starts a batch of GET requests, which are sent to the server in a single
+     * round trip, see <code>{@link BatchRequest}</code>.
+     *
+     * @return the empty batch, with the authorization of the current user
+     */
+    public BatchRequest batch() {
+        return new BatchRequest(user == null ? null : user.getAuthorization());
+    }
+
+    /**
+     * Subscribes to the free seats of a playtime, which the server pushes
+     * whenever they change, see <code>{@link AvailabilitySubscription}</code>.
+     * This replaces polling the server for the current value.
+     *
+     * @param datePlaytimeId the id of the playtime
+     * @param listener       receives the amount of free seats, right after
+     *                       subscribing and after every change; is called on a
+     *                       background thread
+     * @return the subscription, which must be closed when it is not needed
+     * anymore
+     */
+    public AvailabilitySubscription subscribeToAvailability(int datePlaytimeId, IntConsumer listener) {
+        return new AvailabilitySubscription(Unirest.config().getDefaultBaseUrl(), datePlaytimeId, listener);
+    }
+
+    /**
+     * @return the server side durations of all responses received so far, as
+     * sent by the server in the header <code>Server-Timing</code>
+     */
+    public ServerTimingStats getServerTimingStats() {
+        return serverTimingStats;
+    }
+
+    public List<JsonObject> requestEndpoint(int queryParam1, String queryParam2) {
+        return requestEndpoint(queryParam1, queryParam2, new String[0]);
+    }
+
+    /**
+     * Like {@link #requestEndpoint(int, String)}, but only the given fields of
+     * each row are read and sent by the server, e.g. only <code>id</code> and
+     * <code>name</code> for a list.
+     *
+     * @param queryParam1 the first query parameter
+     * @param queryParam2 the second query parameter
+     * @param fields      the names of the fields; none for all fields
+     * @return the list of rows; <code>null</code> if the request failed
+     */
+    public List<JsonObject> requestEndpoint(int queryParam1, String queryParam2, String... fields) {
+        GetRequest request = Unirest
+                .get("/endpoint")
+                .queryString(StringNames.query1, queryParam1)
+                .queryString(StringNames.query2, queryParam2);
+        if (fields.length > 0) {
+            request.queryString(StringNames.fields, String.join(",", fields));
+        }
+        // repeated requests are revalidated, so an unchanged result is not transferred again
+        String body = getRevalidated(request);
+        if (body == null) {
+            return null;
+        }
+        return mapStringToJsonObjectList(body);
+    }
+
+    /**
+     * Like {@link #requestEndpoint(int, String)}, but requests the result in
+     * pages of at most <code>limit</code> rows, each only when the iterator gets
+     * to it.
+     *
+     * @param queryParam1 the first query parameter
+     * @param limit       the maximum amount of rows per page, at most 1000
+     * @return the iterator over the pages
+     */
+    public PageIterator requestEndpointPages(int queryParam1, int limit) {
+        return new PageIterator("/endpoint", Map.of(StringNames.query1, queryParam1), limit,
+                user == null ? null : user.getAuthorization());
+    }
+
+    /**
+     * Sends the GET request and revalidates a cached response of the same url with
+     * its ETag. If the server answers with <code>304 Not Modified</code>, the
+     * cached body is returned without transferring it again.
+     *
+     * @param request the GET request
+     * @return the body of the response; <code>null</code> if the status is
+     * neither <code>200</code> nor <code>304</code>
+     */
+    private String getRevalidated(GetRequest request) {
+        String url = request.getUrl();
+        String cachedEtag = responseCache.getEtag(url);
+        if (cachedEtag != null) {
+            request.header(StringNames.ifNoneMatch, cachedEtag);
+        }
+        HttpResponse<String> response = request.asString();
+        if (response.getStatus() == 304 && cachedEtag != null) {
+            String body = responseCache.getBody(url, cachedEtag);
+            if (body != null) {
+                return body;
+            }
+            // the response was dropped from the cache in the meantime, so request it again in full
+            GetRequest retry = Unirest.get(url);
+            for (Header header : request.getHeaders().all()) {
+                if (!header.getName().equalsIgnoreCase(StringNames.ifNoneMatch)) {
+                    retry.header(header.getName(), header.getValue());
+                }
+            }
+            response = retry.asString();
+        }
+        if (response.getStatus() != 200) {
+            responseCache.remove(url);
+            return null;
+        }
+        String etag = response.getHeaders().getFirst(StringNames.etag);
+        if (etag == null || etag.isEmpty()) {
+            responseCache.remove(url);
+        } else {
+            responseCache.put(url, etag, response.getBody());
+        }
+        return response.getBody();
     }
 
 }
@@ -0,0 +1,64 @@
+package rest_client;
+
+import kong.unirest.Config;
+import kong.unirest.HttpRequestSummary;
+import kong.unirest.HttpResponse;
+import kong.unirest.Interceptor;
+import utils.LatencyHistogram;
+import utils.RequestTiming;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the header <code>Server-Timing</code> of all responses received by
+ * Unirest, so the client can tell how much of the latency it sees was spent in
+ * which phase on the server, e.g. <code>db</code> or <code>json</code>. <br>
+ * <br>
+ * The durations of every metric of the header are recorded in a
+ * <code>LatencyHistogram</code> of that metric, in nanoseconds like all other
+ * histograms.
+ */
+public class ServerTimingStats implements Interceptor {
+
+    private final Map<String, LatencyHistogram> metrics = new ConcurrentHashMap<>();
+
+    @Override
+    public void onResponse(HttpResponse<?> response, HttpRequestSummary request, Config config) {
+        for (String header : response.getHeaders().get(RequestTiming.HEADER)) {
+            record(header);
+        }
+    }
+
+    /**
+     * Records the durations of one header.
+     *
+     * @param headerValue the value of the header <code>Server-Timing</code>
+     */
+    public void record(String headerValue) {
+        RequestTiming.parseHeaderValue(headerValue).forEach((name, millis) ->
+                metrics.computeIfAbsent(name, key -> new LatencyHistogram()).record(Math.round(millis * 1e6)));
+    }
+
+    /**
+     * @param metric the name of the metric, e.g. <code>RequestTiming.DB</code>
+     * @return the durations of the metric; <code>null</code> if no response
+     * contained it
+     */
+    public LatencyHistogram get(String metric) {
+        return metrics.get(metric);
+    }
+
+    /**
+     * @return the durations of all metrics received so far by name
+     */
+    public Map<String, LatencyHistogram> getAll() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    public void reset() {
+        metrics.clear();
+    }
+
+}
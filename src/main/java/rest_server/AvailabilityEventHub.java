@@ -0,0 +1,291 @@
+package rest_server;
+
+import com.google.gson.JsonObject;
+import model.DatabaseConnector;
+import model.TableChangeListener;
+import utils.StringNames;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pushes the amount of free seats of playtimes to subscribed clients, e.g. over
+ * Server-Sent Events, whenever it changes. <br>
+ * <br>
+ * The hub listens for changes of the tables
+ * <code>{@value DatabaseConnector#RESERVATIONS}</code> and
+ * <code>{@value DatabaseConnector#DATE_PLAYTIMES}</code>. After a change, the
+ * free seats of all playtimes with subscribers are looked up again and
+ * published if they differ from the last published value. Values can also be
+ * published directly with <code>{@link #publish(int, int)}</code>. <br>
+ * <br>
+ * Every subscriber has its own backpressure: it holds at most one unsent event,
+ * and an event that arrives while the previous one is still being sent replaces
+ * it. So a slow client only skips intermediate values and always ends up with
+ * the latest one, and neither blocks other subscribers nor makes events pile up
+ * in memory. At most one task per subscriber runs on the executor at a time.
+ */
+final class AvailabilityEventHub implements TableChangeListener {
+
+    static final String EVENT = "availability";
+    static final String HEARTBEAT_EVENT = "heartbeat";
+
+    private static final Event HEARTBEAT = new Event(HEARTBEAT_EVENT, "");
+    private static final Logger logger = Logger.getLogger(AvailabilityEventHub.class.getName());
+
+    private final IntUnaryOperator freeSeatsLookup;
+    private final Executor executor;
+    private final Map<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> lastPublished = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param freeSeatsLookup looks up the free seats of a playtime in the
+     *                        database; returns a negative value if they are
+     *                        unknown
+     * @param executor        runs the lookups and sends the events
+     */
+    AvailabilityEventHub(IntUnaryOperator freeSeatsLookup, Executor executor) {
+        this.freeSeatsLookup = freeSeatsLookup;
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribes to the free seats of a playtime. The current value is looked up
+     * and sent right away, if it is known.
+     *
+     * @param playtimeId the id of the playtime
+     * @param sink       receives the events; is never called concurrently
+     * @return the subscription, needed to unsubscribe
+     */
+    Subscriber subscribe(int playtimeId, EventSink sink) {
+        Subscriber subscriber = new Subscriber(playtimeId, sink);
+        // added within compute, so that a concurrent unsubscribe cannot remove the set in between
+        subscribers.compute(playtimeId, (key, playtimeSubscribers) -> {
+            Set<Subscriber> result = playtimeSubscribers != null ? playtimeSubscribers : new CopyOnWriteArraySet<>();
+            result.add(subscriber);
+            return result;
+        });
+        executor.execute(() -> {
+            int freeSeats = lookUp(playtimeId);
+            if (freeSeats >= 0) {
+                publish(playtimeId, freeSeats, subscriber);
+            }
+        });
+        return subscriber;
+    }
+
+    /**
+     * Ends a subscription. Unsubscribing twice has no effect.
+     *
+     * @param subscriber the subscription
+     */
+    void unsubscribe(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.playtimeId, (playtimeId, playtimeSubscribers) -> {
+            playtimeSubscribers.remove(subscriber);
+            if (!playtimeSubscribers.isEmpty()) {
+                return playtimeSubscribers;
+            }
+            // the value is looked up again for the next subscriber, so it cannot get stale
+            lastPublished.remove(playtimeId);
+            return null;
+        });
+    }
+
+    /**
+     * Sends the free seats of a playtime to all its subscribers, unless they were
+     * published with the same value before.
+     *
+     * @param playtimeId the id of the playtime
+     * @param freeSeats  the amount of free seats
+     */
+    void publish(int playtimeId, int freeSeats) {
+        publish(playtimeId, freeSeats, null);
+    }
+
+    /**
+     * @param newSubscriber a subscriber that has not received any value yet and
+     *                      gets it even if it is unchanged; can be
+     *                      <code>null</code>
+     */
+    private void publish(int playtimeId, int freeSeats, Subscriber newSubscriber) {
+        Set<Subscriber> playtimeSubscribers = subscribers.get(playtimeId);
+        if (playtimeSubscribers == null) {
+            // nobody is interested; the value is looked up again on subscription
+            return;
+        }
+        Integer previous = lastPublished.put(playtimeId, freeSeats);
+        Event event = new Event(EVENT, toJson(playtimeId, freeSeats));
+        if (previous != null && previous == freeSeats) {
+            if (newSubscriber != null) {
+                newSubscriber.offer(event);
+            }
+            return;
+        }
+        published.increment();
+        for (Subscriber subscriber : playtimeSubscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    /**
+     * Sends a heartbeat to every subscriber without a pending event, so that
+     * closed connections are noticed even if no seats change.
+     */
+    void heartbeat() {
+        for (Set<Subscriber> playtimeSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : playtimeSubscribers) {
+                subscriber.offerIfIdle(HEARTBEAT);
+            }
+        }
+    }
+
+    @Override
+    public void tableChanged(String table, Change change) {
+        if (!table.equalsIgnoreCase(DatabaseConnector.RESERVATIONS)
+                && !table.equalsIgnoreCase(DatabaseConnector.DATE_PLAYTIMES)) {
+            return;
+        }
+        // called on the thread of the statement, so the lookups run on the executor;
+        // changes arriving before the refresh started are covered by it
+        if (refreshScheduled.compareAndSet(false, true)) {
+            executor.execute(this::refresh);
+        }
+    }
+
+    int getSubscribers() {
+        int count = 0;
+        for (Set<Subscriber> playtimeSubscribers : subscribers.values()) {
+            count += playtimeSubscribers.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the amount of changed values that were published
+     */
+    long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * @return the amount of events that were replaced by a newer one before they
+     * were sent
+     */
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    private void refresh() {
+        refreshScheduled.set(false);
+        for (Integer playtimeId : subscribers.keySet()) {
+            int freeSeats = lookUp(playtimeId);
+            if (freeSeats >= 0) {
+                publish(playtimeId, freeSeats);
+            }
+        }
+    }
+
+    private int lookUp(int playtimeId) {
+        try {
+            return freeSeatsLookup.applyAsInt(playtimeId);
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "Free seats of playtime could not be looked up", e);
+            return -1;
+        }
+    }
+
+    private static String toJson(int playtimeId, int freeSeats) {
+        JsonObject json = new JsonObject();
+        json.addProperty(StringNames.datePlaytimeId, playtimeId);
+        json.addProperty(StringNames.freeSeats, freeSeats);
+        return json.toString();
+    }
+
+    /**
+     * Receives the events of one subscriber, e.g. an SSE connection.
+     */
+    interface EventSink {
+
+        /**
+         * @param event the name of the event
+         * @param data  the data of the event, JSON for availability events
+         */
+        void send(String event, String data);
+
+    }
+
+    private static final class Event {
+
+        private final String name;
+        private final String data;
+
+        Event(String name, String data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    /**
+     * One subscription, which holds the latest unsent event.
+     */
+    final class Subscriber {
+
+        private final int playtimeId;
+        private final EventSink sink;
+        private final AtomicReference<Event> pending = new AtomicReference<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Subscriber(int playtimeId, EventSink sink) {
+            this.playtimeId = playtimeId;
+            this.sink = sink;
+        }
+
+        private void offer(Event event) {
+            Event replaced = pending.getAndSet(event);
+            if (replaced != null && replaced != HEARTBEAT) {
+                coalesced.increment();
+            }
+            scheduleDrain();
+        }
+
+        private void offerIfIdle(Event event) {
+            if (pending.compareAndSet(null, event)) {
+                scheduleDrain();
+            }
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                Event event;
+                while ((event = pending.getAndSet(null)) != null) {
+                    try {
+                        sink.send(event.name, event.data);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.FINE, "Event could not be sent to subscriber", e);
+                    }
+                }
+                draining.set(false);
+                // an event offered after the loop but before the flag was reset would be stuck otherwise
+            } while (pending.get() != null && draining.compareAndSet(false, true));
+        }
+    }
+
+}
@@ -0,0 +1,272 @@
+package rest_server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Handles <code>POST /batch</code>, which runs several GET requests of one
+ * client in a single HTTP round trip. <br>
+ * <br>
+ * The body is a JSON array of sub-requests like
+ * <code>{"path": "/customers", "query": {"email": "a@b.de"}}</code>. The
+ * sub-requests are independent of each other, so they are sent to this server
+ * in parallel over the loopback interface and handled by the normal routes,
+ * including validation and authorization; the header
+ * <code>Authorization</code> of the batch is passed on to every sub-request.
+ * The response is an array with one object
+ * <code>{"status": 200, "body": ...}</code> per sub-request, in the same order.
+ * <br>
+ * Only GET requests to the JSON routes given to the handler are accepted,
+ * because requests that change data could depend on each other and must not
+ * run in parallel, and neither batches nor event streams would ever give a
+ * single response. <br>
+ * <br>
+ * The batch does not block a thread of the server while its sub-requests run,
+ * but at most <code>MAX_CONCURRENT_BATCHES</code> batches run at the same time,
+ * so that their sub-requests cannot take all threads of the server. A deadline
+ * of the batch, see <code>{@link LoadShedder}</code>, is passed on to every
+ * sub-request as the time left until it.
+ */
+final class BatchHandler implements Handler {
+
+    static final String PATH = "/batch";
+    static final int MAX_SUB_REQUESTS = 20;
+    static final long SUB_REQUEST_TIMEOUT_MILLIS = 10_000;
+    // with at most MAX_SUB_REQUESTS each, the sub-requests of all batches leave threads for other requests
+    static final int MAX_CONCURRENT_BATCHES = 10;
+    // marks the sub-requests, which come over the loopback interface whatever client sent the batch
+    static final String SUB_REQUEST_HEADER = "X-Batch-Sub-Request";
+
+    private static final String AUTHORIZATION = "Authorization";
+    private static final Logger logger = Logger.getLogger(BatchHandler.class.getName());
+
+    private final Gson gson;
+    private final int port;
+    private final LoadShedder loadShedder;
+    private final Set<String> allowedPaths;
+    private final HttpClient httpClient;
+    private final Semaphore runningBatches = new Semaphore(MAX_CONCURRENT_BATCHES);
+
+    /**
+     * @param gson        the instance for writing the response
+     * @param port        the port this server listens on
+     * @param loadShedder  the load shedder that admitted the batch, which knows
+     *                     its deadline
+     * @param allowedPaths the paths of the GET routes that sub-requests may use,
+     *                     without trailing slash
+     */
+    BatchHandler(Gson gson, int port, LoadShedder loadShedder, Set<String> allowedPaths) {
+        this.gson = gson;
+        this.port = port;
+        this.loadShedder = loadShedder;
+        this.allowedPaths = allowedPaths;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(SUB_REQUEST_TIMEOUT_MILLIS))
+                .build();
+    }
+
+    @Override
+    public void handle(@NotNull Context context) {
+        JsonArray subRequests;
+        try {
+            JsonElement body = JsonParser.parseString(context.body());
+            subRequests = body.isJsonArray() ? body.getAsJsonArray() : null;
+        } catch (JsonParseException e) {
+            subRequests = null;
+        }
+        if (subRequests == null || subRequests.isEmpty()) {
+            context.status(400);
+            context.json(new String[]{"A JSON array of sub-requests is required."});
+            return;
+        }
+        if (subRequests.size() > MAX_SUB_REQUESTS) {
+            context.status(400);
+            context.json(new String[]{"At most " + MAX_SUB_REQUESTS + " sub-requests are allowed."});
+            return;
+        }
+
+        long remainingMillis = loadShedder.remainingMillis(context);
+        List<HttpRequest> requests = new ArrayList<>(subRequests.size());
+        for (int i = 0; i < subRequests.size(); i++) {
+            HttpRequest request = toHttpRequest(subRequests.get(i), context.header(AUTHORIZATION), remainingMillis);
+            if (request == null) {
+                context.status(400);
+                context.json(new String[]{"Sub-request " + i + " is not a valid GET request."});
+                return;
+            }
+            requests.add(request);
+        }
+
+        if (!runningBatches.tryAcquire()) {
+            throw new DatabaseBusyException("Too many batches are running.");
+        }
+        // all sub-requests are sent at once, and the response is written when the last one is answered
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>(requests.size());
+        try {
+            for (HttpRequest request : requests) {
+                responses.add(httpClient.sendAsync(request,
+                        HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)));
+            }
+        } catch (RuntimeException e) {
+            runningBatches.release();
+            throw e;
+        }
+        CompletableFuture<Void> batch = CompletableFuture
+                .allOf(responses.stream().map(response -> response.exceptionally(e -> null))
+                        .toArray(CompletableFuture[]::new))
+                .whenComplete((ignored, e) -> runningBatches.release());
+        context.future(() -> batch.thenAccept(ignored -> {
+            JsonArray results = new JsonArray();
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                results.add(toResult(response));
+            }
+            context.contentType("application/json");
+            context.result(gson.toJson(results));
+        }));
+    }
+
+    /**
+     * @param subRequest      the sub-request as given by the client
+     * @param authorization   the authorization header of the batch; can be
+     *                        <code>null</code>
+     * @param remainingMillis the time left until the deadline of the batch;
+     *                        <code>-1</code> if it has none
+     * @return the request to this server; <code>null</code> if the sub-request is
+     * not valid
+     */
+    private HttpRequest toHttpRequest(JsonElement subRequest, String authorization, long remainingMillis) {
+        if (!subRequest.isJsonObject()) {
+            return null;
+        }
+        JsonObject object = subRequest.getAsJsonObject();
+        String method = getString(object, "method");
+        String path = withoutTrailingSlash(getString(object, "path"));
+        // only the allowed routes of this server, so that e.g. a batch cannot contain another batch
+        if ((method != null && !method.equalsIgnoreCase("GET")) || path == null || !allowedPaths.contains(path)) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder();
+        JsonElement queryParams = object.get("query");
+        if (queryParams != null && !queryParams.isJsonNull()) {
+            if (!queryParams.isJsonObject()) {
+                return null;
+            }
+            for (Map.Entry<String, JsonElement> param : queryParams.getAsJsonObject().entrySet()) {
+                if (!param.getValue().isJsonPrimitive()) {
+                    return null;
+                }
+                query.append(query.length() == 0 ? '?' : '&')
+                        .append(URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8)).append('=')
+                        .append(URLEncoder.encode(param.getValue().getAsString(), StandardCharsets.UTF_8));
+            }
+        }
+
+        URI uri;
+        try {
+            // the path is encoded by the URI, the query is encoded above already
+            uri = new URI(new URI("http", null, "localhost", port, path, null, null) + query.toString());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(SUB_REQUEST_TIMEOUT_MILLIS))
+                .header(SUB_REQUEST_HEADER, "true")
+                .GET();
+        if (authorization != null) {
+            request.header(AUTHORIZATION, authorization);
+        }
+        if (remainingMillis >= 0) {
+            request.header(RestServer.REQUEST_TIMEOUT_HEADER, String.valueOf(remainingMillis));
+            // no need to wait for the answer once the client of the batch gave up
+            request.timeout(Duration.ofMillis(Math.max(1, Math.min(remainingMillis, SUB_REQUEST_TIMEOUT_MILLIS))));
+        }
+        return request.build();
+    }
+
+    private JsonObject toResult(CompletableFuture<HttpResponse<String>> future) {
+        JsonObject result = new JsonObject();
+        HttpResponse<String> response;
+        try {
+            response = future.join();
+        } catch (CompletionException e) {
+            boolean timedOut = e.getCause() instanceof HttpTimeoutException
+                    || e.getCause() instanceof TimeoutException;
+            logger.log(Level.FINE, "Sub-request of batch failed", e.getCause());
+            result.addProperty("status", timedOut ? 504 : 502);
+            JsonArray message = new JsonArray();
+            message.add(timedOut ? "Sub-request timed out." : "Sub-request failed.");
+            result.add("body", message);
+            return result;
+        }
+        result.addProperty("status", response.statusCode());
+        result.add("body", parseBody(response.body()));
+        return result;
+    }
+
+    /**
+     * @return the path as matched by the routes, which ignore trailing slashes;
+     * <code>null</code> if the path is <code>null</code>
+     */
+    private static String withoutTrailingSlash(String path) {
+        if (path == null) {
+            return null;
+        }
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(0, end);
+    }
+
+    /**
+     * @return the body as JSON, or as JSON string if it is no valid JSON, like
+     * the answer of the test endpoint
+     */
+    private static JsonElement parseBody(String body) {
+        if (body == null || body.isEmpty()) {
+            return JsonNull.INSTANCE;
+        }
+        try {
+            return JsonParser.parseString(body);
+        } catch (JsonParseException e) {
+            return new JsonPrimitive(body);
+        }
+    }
+
+    private static String getString(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+}
@@ -0,0 +1,662 @@
+package rest_server;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses responses with gzip or deflate, depending on the header
+ * <code>Accept-Encoding</code> of the request. <br>
+ * <br>
+ * The body is buffered until it reaches the minimum size; smaller responses are
+ * sent uncompressed, because compressing them saves hardly anything. Only
+ * textual content like JSON is compressed, and event streams are passed through
+ * unbuffered. Larger responses, like the streamed query results, are compressed
+ * while they are written. <br>
+ * <br>
+ * A <code>Deflater</code> holds native buffers of several hundred kilobytes, so
+ * the deflaters are not created per response but taken from a pool and reset
+ * after use.
+ */
+final class CompressionFilter implements Filter {
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String VARY = "Vary";
+    private static final String ETAG = "ETag";
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_COMPRESSORS = 64;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final int minSize;
+    private final int level;
+    private final Queue<Compressor> gzipCompressors = new ConcurrentLinkedQueue<>();
+    private final Queue<Compressor> deflateCompressors = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCompressors = new AtomicInteger();
+
+    /**
+     * @param minSize the minimum size of a response body in bytes to be
+     *                compressed
+     * @param level   the compression level from 1 (fastest) to 9 (smallest)
+     */
+    CompressionFilter(int minSize, int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9: " + level);
+        }
+        this.minSize = Math.max(0, minSize);
+        this.level = level;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String encoding = "HEAD".equals(httpRequest.getMethod()) ? null
+                : negotiate(httpRequest.getHeader(ACCEPT_ENCODING));
+        if (encoding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CompressingResponse compressingResponse = new CompressingResponse((HttpServletResponse) response, encoding);
+        try {
+            chain.doFilter(new CompressingRequest(httpRequest, compressingResponse), compressingResponse);
+            // asynchronous responses are finished when their async context is completed, see CompressingRequest
+            if (!request.isAsyncStarted()) {
+                compressingResponse.finish();
+            }
+        } finally {
+            if (!request.isAsyncStarted()) {
+                compressingResponse.releaseCompressor();
+            }
+        }
+    }
+
+    /**
+     * Chooses the content coding with the highest quality value the client
+     * accepts. If gzip and deflate are accepted equally, gzip is preferred.
+     *
+     * @param acceptEncoding the value of the header <code>Accept-Encoding</code>;
+     *                       can be <code>null</code>
+     * @return <code>gzip</code>, <code>deflate</code> or <code>null</code> if the
+     * response should not be compressed
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String best = null;
+        double bestQuality = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            if (!name.equals(GZIP) && !name.equals(DEFLATE)) {
+                continue;
+            }
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (quality > bestQuality || (quality == bestQuality && quality > 0 && name.equals(GZIP))) {
+                best = name;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param contentType the content type of the response; can be
+     *                    <code>null</code>
+     * @return <code>true</code> if responses of this type are worth compressing;
+     * <code>false</code> otherwise
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        if (type.startsWith("text/event-stream")) {
+            // events have to reach the client immediately
+            return false;
+        }
+        return type.startsWith("text/") || type.startsWith("application/json")
+                || type.startsWith("application/javascript") || type.startsWith("application/xml")
+                || type.contains("+json") || type.contains("+xml");
+    }
+
+    private Compressor borrowCompressor(String encoding) {
+        Compressor compressor = (encoding.equals(GZIP) ? gzipCompressors : deflateCompressors).poll();
+        if (compressor == null) {
+            return new Compressor(encoding.equals(GZIP), level);
+        }
+        pooledCompressors.decrementAndGet();
+        return compressor;
+    }
+
+    private void returnCompressor(Compressor compressor) {
+        compressor.reset();
+        if (pooledCompressors.incrementAndGet() > MAX_POOLED_COMPRESSORS) {
+            pooledCompressors.decrementAndGet();
+            compressor.end();
+            return;
+        }
+        (compressor.gzip ? gzipCompressors : deflateCompressors).offer(compressor);
+    }
+
+    /**
+     * A deflater together with the buffer for its output and, for gzip, the
+     * checksum of the uncompressed data.
+     */
+    private static final class Compressor {
+
+        private final boolean gzip;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        Compressor(boolean gzip, int level) {
+            this.gzip = gzip;
+            // gzip has its own header and trailer, deflate uses the zlib format
+            this.deflater = new Deflater(level, gzip);
+        }
+
+        void start(OutputStream out) throws IOException {
+            if (gzip) {
+                out.write(GZIP_HEADER);
+            }
+        }
+
+        void write(OutputStream out, byte[] bytes, int offset, int length) throws IOException {
+            if (gzip) {
+                crc.update(bytes, offset, length);
+            }
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                int count = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+                out.write(buffer, 0, count);
+            }
+        }
+
+        void flush(OutputStream out) throws IOException {
+            int count;
+            do {
+                count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.write(buffer, 0, count);
+            } while (count == buffer.length);
+        }
+
+        void finish(OutputStream out) throws IOException {
+            deflater.finish();
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            if (gzip) {
+                writeIntLittleEndian(out, (int) crc.getValue());
+                writeIntLittleEndian(out, (int) deflater.getBytesRead());
+            }
+        }
+
+        void reset() {
+            deflater.reset();
+            crc.reset();
+        }
+
+        void end() {
+            deflater.end();
+        }
+
+        private static void writeIntLittleEndian(OutputStream out, int value) throws IOException {
+            out.write(value);
+            out.write(value >>> 8);
+            out.write(value >>> 16);
+            out.write(value >>> 24);
+        }
+    }
+
+    /**
+     * Response whose body is compressed once it reaches the minimum size. Until
+     * then, the content length set by the handler is held back, because it does
+     * not apply to the compressed body.
+     */
+    private final class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final String encoding;
+        private CompressingOutputStream outputStream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+
+        CompressingResponse(HttpServletResponse response, String encoding) {
+            super(response);
+            this.encoding = encoding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (outputStream == null) {
+                outputStream = new CompressingOutputStream(this);
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                outputStream = new CompressingOutputStream(this);
+                writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            setContentLengthLong(length);
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            if (outputStream != null && outputStream.isDecided()) {
+                if (!outputStream.isCompressing()) {
+                    super.setContentLengthLong(length);
+                }
+                return;
+            }
+            contentLength = length;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value == null ? -1 : Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value == null ? -1 : Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (outputStream != null) {
+                outputStream.flush();
+            } else {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (outputStream != null) {
+                outputStream.resetBuffer();
+            }
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            if (outputStream != null) {
+                outputStream.resetBuffer();
+            }
+            contentLength = -1;
+            super.reset();
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (outputStream != null) {
+                outputStream.close();
+            }
+        }
+
+        void releaseCompressor() {
+            if (outputStream != null) {
+                outputStream.releaseCompressor();
+            }
+        }
+
+        ServletOutputStream getWrappedOutputStream() throws IOException {
+            return super.getOutputStream();
+        }
+    }
+
+    /**
+     * Finishes the compressed response of an asynchronous request before its
+     * async context is completed, because the filter has returned long before.
+     */
+    private static final class CompressingRequest extends HttpServletRequestWrapper {
+
+        private final CompressingResponse response;
+        private AsyncContext asyncContext;
+
+        CompressingRequest(HttpServletRequest request, CompressingResponse response) {
+            super(request);
+            this.response = response;
+        }
+
+        @Override
+        public AsyncContext startAsync() {
+            asyncContext = new FinishingAsyncContext(super.startAsync(), response);
+            return asyncContext;
+        }
+
+        @Override
+        public AsyncContext startAsync(ServletRequest request, ServletResponse response) {
+            asyncContext = new FinishingAsyncContext(super.startAsync(request, response), this.response);
+            return asyncContext;
+        }
+
+        @Override
+        public AsyncContext getAsyncContext() {
+            return asyncContext != null ? asyncContext : super.getAsyncContext();
+        }
+    }
+
+    private static final class FinishingAsyncContext implements AsyncContext {
+
+        private final AsyncContext asyncContext;
+        private final CompressingResponse response;
+
+        FinishingAsyncContext(AsyncContext asyncContext, CompressingResponse response) {
+            this.asyncContext = asyncContext;
+            this.response = response;
+        }
+
+        @Override
+        public void complete() {
+            try {
+                response.finish();
+            } catch (IOException e) {
+                // the client is gone, the request is completed anyway
+            } finally {
+                response.releaseCompressor();
+                asyncContext.complete();
+            }
+        }
+
+        @Override
+        public ServletRequest getRequest() {
+            return asyncContext.getRequest();
+        }
+
+        @Override
+        public ServletResponse getResponse() {
+            return asyncContext.getResponse();
+        }
+
+        @Override
+        public boolean hasOriginalRequestAndResponse() {
+            return asyncContext.hasOriginalRequestAndResponse();
+        }
+
+        @Override
+        public void dispatch() {
+            asyncContext.dispatch();
+        }
+
+        @Override
+        public void dispatch(String path) {
+            asyncContext.dispatch(path);
+        }
+
+        @Override
+        public void dispatch(ServletContext context, String path) {
+            asyncContext.dispatch(context, path);
+        }
+
+        @Override
+        public void start(Runnable run) {
+            asyncContext.start(run);
+        }
+
+        @Override
+        public void addListener(AsyncListener listener) {
+            asyncContext.addListener(listener);
+        }
+
+        @Override
+        public void addListener(AsyncListener listener, ServletRequest request, ServletResponse response) {
+            asyncContext.addListener(listener, request, response);
+        }
+
+        @Override
+        public <T extends AsyncListener> T createListener(Class<T> listenerClass) throws ServletException {
+            return asyncContext.createListener(listenerClass);
+        }
+
+        @Override
+        public void setTimeout(long timeout) {
+            asyncContext.setTimeout(timeout);
+        }
+
+        @Override
+        public long getTimeout() {
+            return asyncContext.getTimeout();
+        }
+    }
+
+    /**
+     * Buffers the first bytes of the body, until it is clear whether the body is
+     * large enough to be compressed.
+     */
+    private final class CompressingOutputStream extends ServletOutputStream {
+
+        private final CompressingResponse response;
+        private final byte[] singleByte = new byte[1];
+        private byte[] pending;
+        private int pendingCount;
+        private ServletOutputStream target;
+        private Compressor compressor;
+        private boolean closed;
+
+        CompressingOutputStream(CompressingResponse response) {
+            this.response = response;
+        }
+
+        boolean isDecided() {
+            return target != null;
+        }
+
+        boolean isCompressing() {
+            return compressor != null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            singleByte[0] = (byte) b;
+            write(singleByte, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (target == null) {
+                if (pendingCount + length <= minSize && isCompressible(response.getContentType())) {
+                    if (pending == null) {
+                        pending = new byte[Math.max(1, minSize)];
+                    }
+                    System.arraycopy(bytes, offset, pending, pendingCount, length);
+                    pendingCount += length;
+                    return;
+                }
+                decide(pendingCount + length > minSize);
+            }
+            if (compressor != null) {
+                compressor.write(target, bytes, offset, length);
+            } else {
+                target.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // an undecided body stays buffered, so that it can still be compressed
+            if (target == null) {
+                return;
+            }
+            if (compressor != null) {
+                compressor.flush(target);
+            }
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (target == null) {
+                decide(false);
+            }
+            closed = true;
+            if (compressor != null) {
+                compressor.finish(target);
+                releaseCompressor();
+            }
+            target.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            try {
+                return response.getWrappedOutputStream().isReady();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            try {
+                response.getWrappedOutputStream().setWriteListener(writeListener);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void resetBuffer() {
+            if (target == null) {
+                pendingCount = 0;
+            }
+        }
+
+        void releaseCompressor() {
+            if (compressor != null) {
+                Compressor released = compressor;
+                compressor = null;
+                returnCompressor(released);
+            }
+        }
+
+        /**
+         * Decides whether the body is compressed and writes the buffered bytes.
+         *
+         * @param largeEnough whether the body reached the minimum size
+         */
+        private void decide(boolean largeEnough) throws IOException {
+            boolean compressible = isCompressible(response.getContentType());
+            if (compressible) {
+                response.addHeader(VARY, ACCEPT_ENCODING);
+            }
+            int status = response.getStatus();
+            if (largeEnough && compressible && response.getHeader(CONTENT_ENCODING) == null
+                    && status != HttpServletResponse.SC_NO_CONTENT && status != HttpServletResponse.SC_NOT_MODIFIED) {
+                response.setHeader(CONTENT_ENCODING, response.encoding);
+                // a strong ETag identifies the exact bytes, which differ once compressed
+                String etag = response.getHeader(ETAG);
+                if (etag != null && !etag.startsWith("W/")) {
+                    response.setHeader(ETAG, "W/" + etag);
+                }
+                target = response.getWrappedOutputStream();
+                compressor = borrowCompressor(response.encoding);
+                compressor.start(target);
+                if (pendingCount > 0) {
+                    compressor.write(target, pending, 0, pendingCount);
+                }
+            } else {
+                target = response.getWrappedOutputStream();
+                // now that the body is sent as it is, the held back content length applies
+                if (response.contentLength >= 0) {
+                    response.setContentLengthLong(response.contentLength);
+                }
+                if (pendingCount > 0) {
+                    target.write(pending, 0, pendingCount);
+                }
+            }
+            pending = null;
+            pendingCount = 0;
+        }
+    }
+
+}
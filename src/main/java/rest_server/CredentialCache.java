@@ -0,0 +1,145 @@
+package rest_server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers for a limited time which authorization headers were verified
+ * successfully for which user id, so that repeated requests of the same user do
+ * not need a database round trip each. <br>
+ * <br>
+ * Only successful verifications are cached, so a user who just signed up or
+ * corrected a typo is never rejected because of the cache. The headers are not
+ * kept in memory; only their SHA-256 hash is used as key. The whole cache is
+ * dropped whenever customers are updated or deleted, see {@link #clear()}.
+ */
+final class CredentialCache {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<String, Long> expiryByKey;
+    // incremented on every clear, see generation()
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries the maximum amount of cached verifications
+     * @param ttlMillis  how long a verification is trusted
+     */
+    CredentialCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.expiryByKey = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > CredentialCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param authString the authorization header
+     * @param userId     the id the user should have
+     * @return the key of the combination
+     */
+    static String keyOf(String authString, String userId) {
+        MessageDigest digest = SHA_256.get();
+        digest.update(authString.getBytes(StandardCharsets.UTF_8));
+        // separator, so that different splits of header and id cannot collide
+        digest.update((byte) 0);
+        digest.update(String.valueOf(userId).getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * @param key the key of the header and user id
+     * @return <code>true</code> if the combination was verified successfully and
+     * the verification has not expired; <code>false</code> otherwise
+     */
+    synchronized boolean isVerified(String key) {
+        Long expiresAt = expiryByKey.get(key);
+        if (expiresAt != null && expiresAt - System.nanoTime() > 0) {
+            hits.increment();
+            return true;
+        }
+        if (expiresAt != null) {
+            expiryByKey.remove(key);
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Returns the current generation. It has to be taken before the credentials
+     * are checked in the database and passed to {@link #put}, so that a
+     * verification made before a concurrent change of the customers is not
+     * cached after the change.
+     *
+     * @return the generation
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a successful verification, unless the cache was cleared since the
+     * generation was taken.
+     *
+     * @param key        the key of the header and user id
+     * @param generation the generation taken before the verification
+     */
+    synchronized void put(String key, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (expiryByKey.size() >= maxEntries) {
+            // prefer dropping expired entries over the least recently used ones
+            Iterator<Long> it = expiryByKey.values().iterator();
+            while (it.hasNext()) {
+                if (it.next() - now <= 0) {
+                    it.remove();
+                }
+            }
+        }
+        expiryByKey.put(key, now + ttlNanos);
+    }
+
+    /**
+     * Drops all cached verifications.
+     */
+    synchronized void clear() {
+        generation++;
+        expiryByKey.clear();
+    }
+
+    synchronized int size() {
+        return expiryByKey.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+}
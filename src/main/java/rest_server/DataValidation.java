@@ -1,6 +1,8 @@
 package rest_server;
 
 import model.DatabaseConnector;
+import model.TableChangeListener;
+import utils.RequestTiming;
 
 import java.util.Base64;
 import java.util.List;
@@ -8,10 +10,46 @@ import java.util.Map;
 
 public class DataValidation {
 
+    public static final int DEFAULT_CREDENTIAL_CACHE_SIZE = 10_000;
+    public static final long DEFAULT_CREDENTIAL_CACHE_TTL_MILLIS = 60_000;
+
     private final DatabaseConnector dbConnector;
+    private final CredentialCache credentialCache;
+    private final SessionStore sessionStore = new SessionStore();
+    private final TableChangeListener customersListener;
 
     public DataValidation(DatabaseConnector dbConnector) {
+        this(dbConnector, DEFAULT_CREDENTIAL_CACHE_SIZE, DEFAULT_CREDENTIAL_CACHE_TTL_MILLIS);
+    }
+
+    /**
+     * @param dbConnector              the connector to the database
+     * @param credentialCacheSize      the maximum amount of successfully verified
+     *                                 credentials kept in memory
+     * @param credentialCacheTtlMillis how long verified credentials are trusted
+     *                                 without asking the database again
+     */
+    public DataValidation(DatabaseConnector dbConnector, int credentialCacheSize, long credentialCacheTtlMillis) {
         this.dbConnector = dbConnector;
+        this.credentialCache = new CredentialCache(credentialCacheSize, credentialCacheTtlMillis);
+        // changed e-mail addresses or passwords must not be accepted any longer; new customers, e.g. from a
+        // sign up, cannot make a cached verification wrong. The change does not tell which customers were
+        // affected, so the sessions of all customers end
+        this.customersListener = (table, change) -> {
+            if (DatabaseConnector.CUSTOMERS.equalsIgnoreCase(table) && change != TableChangeListener.Change.INSERT) {
+                credentialCache.clear();
+                sessionStore.invalidateAll();
+            }
+        };
+        dbConnector.addTableChangeListener(customersListener);
+    }
+
+    /**
+     * Stops listening for changes of the customers, so that the connector does
+     * not keep this instance alive after it was replaced.
+     */
+    public void close() {
+        dbConnector.removeTableChangeListener(customersListener);
     }
 
     /*
@@ -50,7 +88,7 @@ public class DataValidation {
      * @return <code>true</code> if id exists; <code>false</code> otherwise
      */
     public boolean isValidId(int id, String table) {
-        List<Map<String, Object>> result = dbConnector.executeSelectQuery(new String[]{"*"}, new String[]{table},
+        List<Map<String, Object>> result = dbConnector.executeSelectQuery(new String[]{"id"}, new String[]{table},
                 null, "id = ?", new String[]{String.valueOf(id)});
 
         return !result.isEmpty();
@@ -60,7 +98,12 @@ public class DataValidation {
      * Authenticates the user who makes a request with the given authorization
      * string. Decodes this string at first and then makes a database request which
      * checks if a user with the provided first and last name has the corresponding
-     * id.
+     * id. Successful checks are cached for a short time, so that repeated requests
+     * of the same user do not need a database request each. <br>
+     * <br>
+     * Instead of the credentials, the authorization string can also contain a
+     * session token (<code>Bearer token</code>) issued at log in, which is checked
+     * without any database request.
      *
      * @param authString the string containing the users authentication
      * @param userId     the id the user should have
@@ -68,32 +111,110 @@ public class DataValidation {
      * otherwise
      */
     public boolean isUserAuthorized(String authString, String userId) {
+        long start = System.nanoTime();
+        try {
+            return checkAuthorization(authString, userId);
+        } finally {
+            RequestTiming.record(RequestTiming.AUTH, start);
+        }
+    }
+
+    private boolean checkAuthorization(String authString, String userId) {
         if (authString == null || authString.isEmpty()) {
             return false;
         }
+        if (authString.startsWith(SessionStore.BEARER + " ")) {
+            String token = authString.substring(SessionStore.BEARER.length() + 1).trim();
+            int customerId = sessionStore.getCustomerId(token);
+            return customerId != -1 && String.valueOf(customerId).equals(userId);
+        }
+        String cacheKey = CredentialCache.keyOf(authString, userId);
+        if (credentialCache.isVerified(cacheKey)) {
+            return true;
+        }
+        long generation = credentialCache.generation();
+
+        String[] credentials = decodeCredentials(authString);
+        if (credentials == null) {
+            return false;
+        }
+        String email = credentials[0];
+        String password = credentials[1];
+
+        // check if entry in table exists with given email, password and id
+        // only the existence of the row matters, so no other column is read
+        List<Map<String, Object>> result = dbConnector.executeSelectQuery(new String[]{"id"},
+                new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "id = ? and email = ? and password = ?",
+                new String[]{userId, email, password});
+
+        // check if user exists with this credentials and id
+        if (result.size() == 1) {
+            credentialCache.put(cacheKey, generation);
+            return true;
+        }
+        return false;
+    }
 
+    /**
+     * Extracts e-mail and password from a Basic authorization string.
+     *
+     * @param authString the string in the format "Basic 5tyc0uiDat4"
+     * @return the array containing e-mail and password; <code>null</code> if the
+     * string is not in the expected format
+     */
+    public String[] decodeCredentials(String authString) {
+        if (authString == null) {
+            return null;
+        }
         // Header is in the format "Basic 5tyc0uiDat4"
         // extract data before decoding it back to original string
         String[] authParts = authString.split("\\s+");
+        if (authParts.length != 2) {
+            return null;
+        }
         String authInfo = authParts[1];
 
         // Decode the data back to original string
-        byte[] decodedBytes = Base64.getDecoder().decode(authInfo);
-        String decodedAuth = new String(decodedBytes);
+        String decodedAuth;
+        try {
+            decodedAuth = new String(Base64.getDecoder().decode(authInfo));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
 
         // extract username (email) and password
-        String[] credentials = decodedAuth.split(":");
-        String email = credentials[0];
-        String password = credentials[1];
+        String[] credentials = decodedAuth.split(":", 2);
+        return credentials.length == 2 ? credentials : null;
+    }
 
-        // check if entry in table exists with given email, password and id
-        List<Map<String, Object>> result = dbConnector.executeSelectQuery(new String[]{"*"},
-                new String[]{DatabaseConnector.CUSTOMERS}, null,
-                "id = ? and email = ? and password = ?",
-                new String[]{userId, email, password});
+    /**
+     * @return the store of the sessions created at log in
+     */
+    public SessionStore getSessionStore() {
+        return sessionStore;
+    }
 
-        // check if user exists with this credentials and id
-        return result.size() == 1;
+    /**
+     * @return the amount of authorizations answered from the credential cache
+     */
+    public long getCredentialCacheHits() {
+        return credentialCache.getHits();
+    }
+
+    /**
+     * @return the amount of authorizations that had to be checked in the database
+     */
+    public long getCredentialCacheMisses() {
+        return credentialCache.getMisses();
+    }
+
+    /**
+     * Forgets all verified credentials, e.g. after customers were changed
+     * directly in the database.
+     */
+    public void clearCredentialCache() {
+        credentialCache.clear();
     }
 
 }
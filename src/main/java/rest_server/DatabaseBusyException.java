@@ -0,0 +1,16 @@
+package rest_server;
+
+/**
+ * Thrown when a request could not get access to the database in time because
+ * too many requests are using it already. The server answers such requests
+ * with <code>503 Service Unavailable</code>.
+ */
+class DatabaseBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    DatabaseBusyException(String message) {
+        super(message);
+    }
+
+}
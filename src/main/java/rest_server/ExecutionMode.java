@@ -0,0 +1,46 @@
+package rest_server;
+
+import java.util.Locale;
+
+/**
+ * Defines on which kind of threads the <code>{@link RestServer}</code> runs its
+ * request handlers. <br>
+ * <br>
+ * The mode can be given to the constructor of the server or set with the
+ * system property <code>restserver.executionMode</code>, e.g.
+ * <code>-Drestserver.executionMode=virtual</code>.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Handlers run on the platform threads of Jetty's default thread pool, whose
+     * size limits the amount of requests handled at the same time.
+     */
+    PLATFORM,
+
+    /**
+     * Every request is handled on its own virtual thread, so requests waiting for
+     * the database do not block any platform thread. Needs Java 21 at runtime;
+     * on older versions the server falls back to <code>PLATFORM</code>.
+     */
+    VIRTUAL;
+
+    public static final String SYSTEM_PROPERTY = "restserver.executionMode";
+
+    /**
+     * @return the mode given in the system property; <code>PLATFORM</code> if the
+     * property is not set or has no valid value
+     */
+    public static ExecutionMode fromSystemProperty() {
+        String value = System.getProperty(SYSTEM_PROPERTY);
+        if (value == null) {
+            return PLATFORM;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return PLATFORM;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package rest_server;
+
+import model.DatabaseConnector;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The columns clients may select with the query parameter <code>fields</code>,
+ * per table. <br>
+ * <br>
+ * Only whitelisted columns are passed as projection to the SQL query, so a
+ * client can neither read secret columns like passwords nor inject SQL through
+ * the parameter. A client that needs only some columns, e.g.
+ * <code>fields=id,name</code> for a list, gets only those read, mapped and
+ * sent. Without the parameter all whitelisted columns of the table are
+ * selected.
+ */
+final class Fieldsets {
+
+    // columns in the order they are selected by default; secret columns are left out
+    private static final Map<String, Map<String, String>> WHITELISTS = Map.of(
+            DatabaseConnector.CUSTOMERS, whitelist("id", "firstName", "lastName", "email"));
+
+    private Fieldsets() {
+    }
+
+    /**
+     * @param table the name of the table
+     * @return all whitelisted columns of the table
+     * @throws IllegalArgumentException if the table has no whitelist
+     */
+    static String[] all(String table) {
+        return whitelistOf(table).values().toArray(new String[0]);
+    }
+
+    /**
+     * Parses the query parameter <code>fields</code>, a comma-separated list of
+     * column names. Names are matched case-insensitively and duplicates are left
+     * out.
+     *
+     * @param table  the name of the table
+     * @param fields the query parameter; <code>null</code> for all whitelisted
+     *               columns
+     * @return the columns to select in the given order; <code>null</code> if a
+     * column is not whitelisted or no column is given
+     * @throws IllegalArgumentException if the table has no whitelist
+     */
+    static String[] parse(String table, String fields) {
+        if (fields == null) {
+            return all(table);
+        }
+        Map<String, String> whitelist = whitelistOf(table);
+        Set<String> columns = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String column = whitelist.get(field.trim().toLowerCase(Locale.ROOT));
+            if (column == null) {
+                return null;
+            }
+            columns.add(column);
+        }
+        return columns.isEmpty() ? null : columns.toArray(new String[0]);
+    }
+
+    /**
+     * @param columns the columns to select
+     * @param column  the column that is needed, e.g. as key of a page
+     * @return the columns with the given column added at the end, if it is
+     * missing
+     */
+    static String[] including(String[] columns, String column) {
+        for (String selected : columns) {
+            if (selected.equals(column)) {
+                return columns;
+            }
+        }
+        String[] extended = new String[columns.length + 1];
+        System.arraycopy(columns, 0, extended, 0, columns.length);
+        extended[columns.length] = column;
+        return extended;
+    }
+
+    /**
+     * @return the whitelisted columns of the table by lower case name
+     */
+    private static Map<String, String> whitelistOf(String table) {
+        Map<String, String> whitelist = WHITELISTS.get(table);
+        if (whitelist == null) {
+            throw new IllegalArgumentException("No fields are whitelisted for table " + table);
+        }
+        return whitelist;
+    }
+
+    private static Map<String, String> whitelist(String... columns) {
+        Map<String, String> whitelist = new LinkedHashMap<>();
+        for (String column : columns) {
+            whitelist.put(column.toLowerCase(Locale.ROOT), column);
+        }
+        return Collections.unmodifiableMap(whitelist);
+    }
+
+}
@@ -0,0 +1,88 @@
+package rest_server;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import io.javalin.http.Context;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes rows as a JSON array directly to the response while they are read from
+ * the database, instead of building the complete list and its JSON string in
+ * memory first like <code>context.json(list)</code> does. The first bytes are
+ * sent as soon as the first rows are available and the memory needed does not
+ * grow with the size of the result. <br>
+ * <br>
+ * The output is the same as the one of the given <code>Gson</code> instance for
+ * a list of maps.
+ */
+final class JsonStreaming {
+
+    private JsonStreaming() {
+    }
+
+    /**
+     * Writes all remaining rows as JSON array to the response. Status and headers
+     * must be set before, because they are sent with the first bytes.
+     *
+     * @param context the context of the request
+     * @param gson    the instance used for values other than strings, numbers
+     *                and booleans, e.g. dates
+     * @param rows    the rows to write
+     * @throws IOException if writing the response fails
+     */
+    static void writeRows(Context context, Gson gson, Iterator<Map<String, Object>> rows) throws IOException {
+        context.contentType("application/json");
+        // the output stream itself is closed by Javalin
+        writeRows(context.outputStream(), gson, rows);
+    }
+
+    /**
+     * Writes all remaining rows as JSON array to the stream, e.g. to serialize a
+     * result only once for several responses.
+     *
+     * @param out  the stream to write to; it is flushed, but not closed
+     * @param gson the instance used for values other than strings, numbers and
+     *             booleans, e.g. dates
+     * @param rows the rows to write
+     * @throws IOException if writing to the stream fails
+     */
+    static void writeRows(OutputStream out, Gson gson, Iterator<Map<String, Object>> rows) throws IOException {
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.setSerializeNulls(gson.serializeNulls());
+        writer.setHtmlSafe(gson.htmlSafe());
+
+        writer.beginArray();
+        while (rows.hasNext()) {
+            writeRow(writer, gson, rows.next());
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
+    private static void writeRow(JsonWriter writer, Gson gson, Map<String, Object> row) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<String, Object> cell : row.entrySet()) {
+            writer.name(cell.getKey());
+            Object value = cell.getValue();
+            if (value == null) {
+                writer.nullValue();
+            } else if (value instanceof String) {
+                writer.value((String) value);
+            } else if (value instanceof Number) {
+                writer.value((Number) value);
+            } else if (value instanceof Boolean) {
+                writer.value((Boolean) value);
+            } else {
+                gson.toJson(value, value.getClass(), writer);
+            }
+        }
+        writer.endObject();
+    }
+
+}
@@ -0,0 +1,118 @@
+package rest_server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * One page of a list endpoint with keyset pagination. <br>
+ * <br>
+ * The page is read from a cursor that was opened with one row more than the
+ * limit, see <code>DatabaseConnector.openSelectPageCursor(...)</code>. It
+ * returns at most <code>limit</code> rows and uses the additional row only to
+ * tell whether there is a next page, so the client does not have to request an
+ * empty page at the end. The next page starts after the key of the last
+ * returned row, which is handed to the client as opaque cursor in the header
+ * <code>X-Next-Cursor</code> and sent back by it as query parameter
+ * <code>after</code>.
+ */
+final class KeysetPage implements Iterator<Map<String, Object>> {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private static final String CURSOR_PREFIX = "k1:";
+
+    private final Iterator<Map<String, Object>> rows;
+    private final String keyColumn;
+    private final int limit;
+    private int returned;
+    private Object lastKey;
+
+    /**
+     * @param rows      the rows of the page, including the additional row
+     * @param keyColumn the column the rows are ordered by
+     * @param limit     the maximum amount of rows to return
+     */
+    KeysetPage(Iterator<Map<String, Object>> rows, String keyColumn, int limit) {
+        this.rows = rows;
+        this.keyColumn = keyColumn;
+        this.limit = limit;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return returned < limit && rows.hasNext();
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map<String, Object> row = rows.next();
+        lastKey = row.get(keyColumn);
+        returned++;
+        return row;
+    }
+
+    /**
+     * Has to be called after all rows were read.
+     *
+     * @return the cursor of the next page; <code>null</code> if this is the last
+     * page
+     */
+    String getNextCursor() {
+        if (returned < limit || !rows.hasNext() || !(lastKey instanceof Number)) {
+            return null;
+        }
+        return encodeCursor(((Number) lastKey).longValue());
+    }
+
+    /**
+     * @param key the key of the last row of a page
+     * @return the opaque cursor of the page after it
+     */
+    static String encodeCursor(long key) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor the cursor as sent by the client
+     * @return the key of the last row of the previous page; <code>null</code> if
+     * the cursor is not valid
+     */
+    static Long decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(CURSOR_PREFIX)) {
+                return null;
+            }
+            return Long.parseLong(decoded.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            // also thrown for numbers that cannot be parsed
+            return null;
+        }
+    }
+
+    /**
+     * @param limit the limit as sent by the client; can be <code>null</code>
+     * @return the limit of the page; <code>-1</code> if it is not a number from
+     * 1 to <code>MAX_LIMIT</code>
+     */
+    static int parseLimit(String limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int value = Integer.parseInt(limit);
+            return value >= 1 && value <= MAX_LIMIT ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package rest_server;
+
+import io.javalin.http.Context;
+import org.eclipse.jetty.server.Request;
+import utils.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops requests to the database routes that are not worth handling anymore,
+ * before they access the database. <br>
+ * <br>
+ * A request is dropped if it waited in the queue of the server longer than the
+ * queue budget, or if the deadline of its client has passed. The queue time is
+ * measured from the moment Jetty accepted the request to the moment its
+ * handlers start, and checked again once the request got access to the
+ * database, so that the wait for a database permit counts as well. The client
+ * can send its deadline as timeout in milliseconds in the header
+ * <code>{@value RestServer#REQUEST_TIMEOUT_HEADER}</code>, counted from the
+ * moment the request was accepted, so that the clocks of client and server do
+ * not have to agree. Under overload this keeps the database busy with requests
+ * whose answer is still awaited, instead of with requests whose client gave up
+ * already.
+ */
+final class LoadShedder {
+
+    static final String QUEUE_TIME = "queue_time";
+    static final String DEADLINE = "deadline";
+
+    private static final String DEADLINE_ATTRIBUTE = "deadline";
+    private static final String SHED_MESSAGE = "Server is busy, please try again later.";
+
+    private final long maxQueueMillis;
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LongAdder shedByQueueTime = new LongAdder();
+    private final LongAdder shedByDeadline = new LongAdder();
+
+    /**
+     * @param maxQueueMillis the queue budget; requests that waited longer are
+     *                       dropped; negative to drop no request because of its
+     *                       queue time
+     */
+    LoadShedder(long maxQueueMillis) {
+        this.maxQueueMillis = maxQueueMillis;
+    }
+
+    /**
+     * Records the queue time of the request and drops it if it is over the
+     * queue budget or its deadline has passed. Has to be called before the
+     * request waits for the database.
+     *
+     * @param context       the context of the request
+     * @param maxWaitMillis the longest time the request would wait for the
+     *                      database without a deadline
+     * @return the longest time the request may wait for the database, which is
+     * shorter than <code>maxWaitMillis</code> if the deadline comes earlier
+     * @throws RequestShedException if the request is dropped
+     */
+    long admit(Context context, long maxWaitMillis) {
+        long now = System.currentTimeMillis();
+        long acceptedAt = acceptedAtOf(context, now);
+        long queueMillis = Math.max(0, now - acceptedAt);
+        queueTime.record(TimeUnit.MILLISECONDS.toNanos(queueMillis));
+        if (maxQueueMillis >= 0 && queueMillis > maxQueueMillis) {
+            shedByQueueTime.increment();
+            throw new RequestShedException(QUEUE_TIME, SHED_MESSAGE);
+        }
+
+        long timeoutMillis = timeoutOf(context);
+        if (timeoutMillis < 0) {
+            return maxWaitMillis;
+        }
+        long deadline = acceptedAt + timeoutMillis;
+        if (deadline <= now) {
+            throw deadlineExceeded();
+        }
+        context.attribute(DEADLINE_ATTRIBUTE, deadline);
+        return Math.min(maxWaitMillis, deadline - now);
+    }
+
+    /**
+     * Drops the request if it is over the queue budget after waiting for the
+     * database. Has to be called once the request got access to the database.
+     *
+     * @param context the context of the request
+     * @throws RequestShedException if the request is dropped
+     */
+    void checkQueueTime(Context context) {
+        long now = System.currentTimeMillis();
+        if (maxQueueMillis >= 0 && now - acceptedAtOf(context, now) > maxQueueMillis) {
+            shedByQueueTime.increment();
+            throw new RequestShedException(QUEUE_TIME, SHED_MESSAGE);
+        }
+    }
+
+    /**
+     * Drops the request if its deadline has passed, e.g. while it waited for the
+     * database.
+     *
+     * @param context the context of the request
+     * @throws RequestShedException if the request is dropped
+     */
+    void checkDeadline(Context context) {
+        Long deadline = context.attribute(DEADLINE_ATTRIBUTE);
+        if (deadline != null && deadline <= System.currentTimeMillis()) {
+            throw deadlineExceeded();
+        }
+    }
+
+    /**
+     * @param context the context of an admitted request
+     * @return the time left until the deadline of the request in milliseconds;
+     * <code>-1</code> if it has no deadline
+     */
+    long remainingMillis(Context context) {
+        Long deadline = context.attribute(DEADLINE_ATTRIBUTE);
+        return deadline == null ? -1 : Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * @return the queue times of all admitted and dropped requests in
+     * nanoseconds, with a resolution of milliseconds
+     */
+    LatencyHistogram getQueueTime() {
+        return queueTime;
+    }
+
+    long getShedByQueueTime() {
+        return shedByQueueTime.sum();
+    }
+
+    long getShedByDeadline() {
+        return shedByDeadline.sum();
+    }
+
+    private RequestShedException deadlineExceeded() {
+        shedByDeadline.increment();
+        return new RequestShedException(DEADLINE, "The deadline of the request has passed.");
+    }
+
+    /**
+     * @return the time Jetty accepted the request in milliseconds since the epoch;
+     * <code>now</code> if it is unknown
+     */
+    private static long acceptedAtOf(Context context, long now) {
+        Request request = Request.getBaseRequest(context.req());
+        long acceptedAt = request == null ? 0 : request.getTimeStamp();
+        return acceptedAt > 0 ? acceptedAt : now;
+    }
+
+    /**
+     * @return the timeout of the client in milliseconds; <code>-1</code> if the
+     * header is missing or not a number
+     */
+    private static long timeoutOf(Context context) {
+        String header = context.header(RestServer.REQUEST_TIMEOUT_HEADER);
+        if (header == null) {
+            return -1;
+        }
+        try {
+            long timeoutMillis = Long.parseLong(header.trim());
+            return timeoutMillis < 0 ? -1 : timeoutMillis;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
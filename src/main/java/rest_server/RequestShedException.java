@@ -0,0 +1,29 @@
+package rest_server;
+
+/**
+ * Thrown when a request is dropped before it accesses the database, because it
+ * waited too long in the queue of the server or its client deadline has passed,
+ * see <code>{@link LoadShedder}</code>. The server answers such requests with
+ * <code>503 Service Unavailable</code>.
+ */
+class RequestShedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+
+    /**
+     * @param reason  the reason as used in the metrics, e.g.
+     *                <code>LoadShedder.DEADLINE</code>
+     * @param message the message for the client
+     */
+    RequestShedException(String reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    String getReason() {
+        return reason;
+    }
+
+}
@@ -1,24 +1,107 @@
 package rest_server;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import io.javalin.Javalin;
+import jakarta.servlet.DispatcherType;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.json.JsonMapper;
+import model.ConnectionPool;
 import model.DatabaseConnector;
-import org.jetbrains.annotations.NotNull;
+import model.DatabaseTimingListener;
+import model.QueryCursor;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import utils.RequestTiming;
 import utils.StringNames;
 import utils.Utils;
 
-import java.lang.reflect.Type;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 public class RestServer {
 
     // reach server under: http://localhost:4568/ (simply type it in your web browser)
 
+    public static final long DATABASE_PERMIT_TIMEOUT_MILLIS = 2_000;
+    // clients may keep responses, but have to revalidate them with their ETag before every use
+    public static final String CATALOG_CACHE_CONTROL = "no-cache";
+    // responses are compressed with gzip or deflate, see CompressionFilter
+    public static final String COMPRESSION_MIN_SIZE_PROPERTY = "restserver.compressionMinSize";
+    public static final String COMPRESSION_LEVEL_PROPERTY = "restserver.compressionLevel";
+    public static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    // requests taking longer are logged with their timing as JSON; a negative value turns the log off
+    public static final String SLOW_REQUEST_MILLIS_PROPERTY = "restserver.slowRequestMillis";
+    public static final long DEFAULT_SLOW_REQUEST_MILLIS = 1_000;
+    // requests that waited longer for a thread are dropped, see LoadShedder; a negative value turns it off
+    public static final String MAX_QUEUE_MILLIS_PROPERTY = "restserver.maxQueueMillis";
+    public static final long DEFAULT_MAX_QUEUE_MILLIS = 1_000;
+    // the metrics contain SQL texts and session counts, so by default only clients on this host may read them
+    public static final String METRICS_REMOTE_ACCESS_PROPERTY = "restserver.metricsRemoteAccess";
+    // optional timeout of the client in milliseconds, after which the request is not worth handling anymore
+    public static final String REQUEST_TIMEOUT_HEADER = "X-Request-Timeout";
+
+    // same sizes as the default thread pool of Javalin
+    private static final int MAX_THREADS = 250;
+    private static final int MIN_THREADS = 8;
+    private static final int THREAD_IDLE_TIMEOUT_MILLIS = 60_000;
+    private static final String PERMIT_ATTRIBUTE = "databasePermit";
+    private static final String PERMIT_WAIT_ATTRIBUTE = "databasePermitWait";
+    private static final String METRICS_PATH = "/metrics";
+    private static final String AVAILABILITY_PATH = "/availability";
+    // requests to these paths do not access the database; event streams stay open for a long time and
+    // must not keep a permit
+    private static final Set<String> UNLIMITED_PATHS = Set.of("/test", METRICS_PATH, AVAILABILITY_PATH);
+    // identical requests to these paths share one query, so only the request executing it takes a permit
+    private static final Set<String> COALESCED_PATHS = Set.of("/endpoint");
+    // the JSON GET routes a batch may contain; event streams would never be answered
+    private static final Set<String> BATCH_PATHS = Set.of("/test", "/endpoint", "/customers");
+    // larger results are streamed to every client instead of being shared, see SharedBodyStream
+    static final int MAX_SHARED_BODY_BYTES = 256 * 1024;
+    private static final int MAX_AVAILABILITY_SUBSCRIBERS = 1_000;
+    private static final long HEARTBEAT_PERIOD_MILLIS = 15_000;
+
+    private static final Logger logger = Logger.getLogger(RestServer.class.getName());
+
     private static DataValidation dataVal;
     private final Javalin javalinApp;
+    private final Gson gson = new Gson();
+    private final ExecutionMode executionMode;
+    private final Semaphore databasePermits;
+    private final LoadShedder loadShedder;
+    private final TableVersions tableVersions = new TableVersions();
+    // the database accesses are reported on the thread of the request, see timeRequests
+    private final DatabaseTimingListener databaseTiming = RestServer::recordDatabaseTime;
+    // a request that is dropped or gets no permit does not make the identical ones fail as well
+    private final SingleFlight<SharedResponse> catalogFlights = new SingleFlight<>(
+            e -> e instanceof RequestShedException || e instanceof DatabaseBusyException);
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final ExecutorService eventExecutor;
+    private final ScheduledExecutorService heartbeats;
+    private final AvailabilityEventHub availabilityHub;
     private DatabaseConnector dbConnector;
 
 
@@ -26,23 +109,89 @@ public class RestServer {
         this(dbConnector, dataValidation, 4568);
     }
 
+    /**
+     * Creates a server with the execution mode of the system property
+     * <code>restserver.executionMode</code>, see
+     * <code>{@link ExecutionMode#fromSystemProperty()}</code>.
+     */
     public RestServer(DatabaseConnector dbConnector, DataValidation dataValidation, int port) {
+        this(dbConnector, dataValidation, port, ExecutionMode.fromSystemProperty());
+    }
+
+    /**
+     * Creates a server that lets as many requests access the database at the same
+     * time as the connection pool has connections.
+     */
+    public RestServer(DatabaseConnector dbConnector, DataValidation dataValidation, int port,
+                      ExecutionMode executionMode) {
+        this(dbConnector, dataValidation, port, executionMode, defaultDatabasePermits(dbConnector));
+    }
+
+    /**
+     * @param dbConnector           the connector for the database requests
+     * @param dataValidation        the validation of the request data
+     * @param port                  the port to listen on
+     * @param executionMode         the kind of threads the handlers run on
+     * @param maxDatabaseRequests   the maximum amount of requests accessing the
+     *                              database at the same time; further requests
+     *                              wait up to
+     *                              <code>DATABASE_PERMIT_TIMEOUT_MILLIS</code>
+     *                              and are answered with <code>503</code> after
+     *                              that
+     */
+    public RestServer(DatabaseConnector dbConnector, DataValidation dataValidation, int port,
+                      ExecutionMode executionMode, int maxDatabaseRequests) {
         this.dbConnector = dbConnector;
         dataVal = dataValidation;
+        // sending an event may block on a slow client, so every subscriber with a pending event may need a thread
+        AtomicInteger eventThreadCount = new AtomicInteger();
+        this.eventExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "availability-events-" + eventThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.availabilityHub = new AvailabilityEventHub(this::lookUpFreeSeats, eventExecutor);
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "availability-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(availabilityHub::heartbeat, HEARTBEAT_PERIOD_MILLIS,
+                HEARTBEAT_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        if (dbConnector != null) {
+            dbConnector.addTableChangeListener(tableVersions);
+            dbConnector.addTableChangeListener(availabilityHub);
+            dbConnector.addTimingListener(databaseTiming);
+        }
+        this.databasePermits = new Semaphore(maxDatabaseRequests, true);
+        this.loadShedder = new LoadShedder(Long.getLong(MAX_QUEUE_MILLIS_PROPERTY, DEFAULT_MAX_QUEUE_MILLIS));
 
-        Gson gson = new Gson();
-        JsonMapper gsonMapper = new JsonMapper() {
-            @Override
-            public @NotNull String toJsonString(@NotNull Object obj, @NotNull Type type) {
-                return gson.toJson(obj, type);
-            }
+        QueuedThreadPool threadPool = new QueuedThreadPool(MAX_THREADS, MIN_THREADS, THREAD_IDLE_TIMEOUT_MILLIS);
+        threadPool.setName("JettyServerThreadPool");
+        if (executionMode == ExecutionMode.VIRTUAL && !useVirtualThreads(threadPool)) {
+            logger.log(Level.INFO, "Virtual threads are not supported, using platform threads instead");
+            executionMode = ExecutionMode.PLATFORM;
+        }
+        this.executionMode = executionMode;
 
-            @Override
-            public <T> @NotNull T fromJsonString(@NotNull String json, @NotNull Type targetType) {
-                return gson.fromJson(json, targetType);
-            }
-        };
-        this.javalinApp = Javalin.create(config -> config.jsonMapper(gsonMapper)).start(port);
+        // query results and messages are serialized without reflection, see RowJsonMapper
+        JsonMapper gsonMapper = new RowJsonMapper(gson);
+        CompressionFilter compressionFilter = new CompressionFilter(
+                Integer.getInteger(COMPRESSION_MIN_SIZE_PROPERTY, DEFAULT_COMPRESSION_MIN_SIZE),
+                Integer.getInteger(COMPRESSION_LEVEL_PROPERTY, DEFAULT_COMPRESSION_LEVEL));
+        this.javalinApp = Javalin.create(config -> {
+            config.jsonMapper(gsonMapper);
+            config.jetty.server(() -> new Server(threadPool));
+            // compression is done by the filter, which also supports deflate and streamed responses
+            config.compression.none();
+            config.jetty.contextHandlerConfig(handler -> handler.addFilter(new FilterHolder(compressionFilter),
+                    "/*", EnumSet.of(DispatcherType.REQUEST)));
+        }).start(port);
+        // registered first, so that requests rejected by later handlers are measured as well
+        javalinApp.before(metrics::requestStarted);
+        javalinApp.after(metrics::requestFinished);
+        timeRequests(Long.getLong(SLOW_REQUEST_MILLIS_PROPERTY, DEFAULT_SLOW_REQUEST_MILLIS));
+        limitDatabaseAccess();
         defineRoutes();
     }
 
@@ -53,12 +202,422 @@ public class RestServer {
     }
 
     public void setDbConnectorAndDataValidator(DatabaseConnector dbConnector) {
+        if (this.dbConnector != null) {
+            this.dbConnector.removeTableChangeListener(tableVersions);
+            this.dbConnector.removeTableChangeListener(availabilityHub);
+            this.dbConnector.removeTimingListener(databaseTiming);
+        }
         this.dbConnector = dbConnector;
+        dbConnector.addTableChangeListener(tableVersions);
+        dbConnector.addTableChangeListener(availabilityHub);
+        dbConnector.addTimingListener(databaseTiming);
+        if (dataVal != null) {
+            dataVal.close();
+        }
         dataVal = new DataValidation(dbConnector);
     }
 
     public void stopServer() {
         javalinApp.stop();
+        heartbeats.shutdownNow();
+        eventExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the mode the handlers actually run in, which is
+     * <code>PLATFORM</code> if virtual threads were requested but are not
+     * supported
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * @return the amount of requests that could access the database right now
+     * without waiting
+     */
+    public int getAvailableDatabasePermits() {
+        return databasePermits.availablePermits();
+    }
+
+    /**
+     * @return the amount of catalog requests that got the result of an identical
+     * request running at the same time instead of querying the database
+     */
+    public long getCoalescedRequests() {
+        return catalogFlights.getCoalesced();
+    }
+
+    /**
+     * @return the amount of catalog requests that queried the database
+     */
+    public long getCatalogQueries() {
+        return catalogFlights.getExecutions();
+    }
+
+    private static int defaultDatabasePermits(DatabaseConnector dbConnector) {
+        ConnectionPool pool = dbConnector == null ? null : dbConnector.getConnectionPool();
+        return pool != null ? pool.getMaxSize() : ConnectionPool.DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * Lets Jetty run the handlers on virtual threads, if the Java runtime supports
+     * them. Reflection is used, so that the server still compiles and runs on Java
+     * versions without virtual threads.
+     *
+     * @param threadPool the thread pool of the server
+     * @return <code>true</code> if virtual threads are used; <code>false</code>
+     * otherwise
+     */
+    private static boolean useVirtualThreads(QueuedThreadPool threadPool) {
+        try {
+            Executor executor = (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            QueuedThreadPool.class.getMethod("setVirtualThreadsExecutor", Executor.class).invoke(threadPool, executor);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records the time each request spends in authorization, database access and
+     * JSON serialization, see <code>{@link RequestTiming}</code>, and sends it in
+     * the header <code>Server-Timing</code>. The database connector reports its
+     * accesses through <code>{@link #recordDatabaseTime(DatabaseTimingListener.Phase, long)}</code>. Requests that took at least
+     * <code>slowRequestMillis</code> are logged with their timing as one line of
+     * JSON.
+     *
+     * @param slowRequestMillis the threshold for the log; negative to log no
+     *                          requests
+     */
+    private void timeRequests(long slowRequestMillis) {
+        javalinApp.before(context -> RequestTiming.start());
+        javalinApp.after(context -> {
+            RequestTiming timing = RequestTiming.finish();
+            if (timing == null) {
+                return;
+            }
+            context.header(RequestTiming.HEADER, timing.toHeaderValue());
+            if (slowRequestMillis >= 0
+                    && timing.getTotalNanos() >= TimeUnit.MILLISECONDS.toNanos(slowRequestMillis)) {
+                logger.log(Level.WARNING, slowRequestJson(context, timing));
+            }
+        });
+    }
+
+    /**
+     * Adds a database access to the timing of the request handled by the current
+     * thread, if there is one.
+     *
+     * @param phase the timed phase of the access
+     * @param nanos the duration of the phase in nanoseconds
+     */
+    private static void recordDatabaseTime(DatabaseTimingListener.Phase phase, long nanos) {
+        RequestTiming timing = RequestTiming.current();
+        if (timing != null) {
+            timing.add(phase == DatabaseTimingListener.Phase.POOL ? RequestTiming.POOL : RequestTiming.DB, nanos);
+        }
+    }
+
+    private static String slowRequestJson(Context context, RequestTiming timing) {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("event", "slow_request");
+        entry.addProperty("method", context.method().name());
+        entry.addProperty("path", context.path());
+        entry.addProperty("status", context.statusCode());
+        entry.addProperty("totalMillis", timing.getTotalNanos() / 1e6);
+        JsonObject phases = new JsonObject();
+        for (String phase : new String[]{RequestTiming.AUTH, RequestTiming.POOL, RequestTiming.DB,
+                RequestTiming.JSON}) {
+            phases.addProperty(phase + "Millis", timing.getNanos(phase) / 1e6);
+        }
+        entry.add("phases", phases);
+        entry.addProperty("dbCalls", timing.getCalls(RequestTiming.DB));
+        return entry.toString();
+    }
+
+    /**
+     * Makes every request except the test, metrics and availability endpoints wait
+     * for a permit before its handler runs, so that no more requests access the database at the
+     * same time than it can serve. Without this limit, virtual threads would let an
+     * unbounded amount of requests pile up in the connection pool. <br>
+     * Requests that waited too long in the queue or whose client deadline has
+     * passed are dropped before they wait for a permit, see
+     * <code>{@link LoadShedder}</code>. <br>
+     * Requests to coalesced paths take their permit only if they execute the
+     * query themselves, see
+     * <code>{@link #withDatabasePermit(Context, Supplier)}</code>, so that any
+     * amount of identical requests can wait for one query. A batch is admitted
+     * like any other request but takes no permit, because its sub-requests do.
+     */
+    private void limitDatabaseAccess() {
+        javalinApp.before(context -> {
+            if (UNLIMITED_PATHS.contains(context.path())) {
+                return;
+            }
+            long maxWaitMillis = loadShedder.admit(context, DATABASE_PERMIT_TIMEOUT_MILLIS);
+            // a batch does not access the database itself, but waits for its sub-requests, which do
+            if (context.path().equals(BatchHandler.PATH)) {
+                return;
+            }
+            if (COALESCED_PATHS.contains(context.path())) {
+                context.attribute(PERMIT_WAIT_ATTRIBUTE, maxWaitMillis);
+                return;
+            }
+            acquireDatabasePermit(context, maxWaitMillis);
+        });
+        // after handlers also run when the handler failed, so the permit is never lost
+        javalinApp.after(this::releaseDatabasePermit);
+        javalinApp.exception(DatabaseBusyException.class, (e, context) -> {
+            context.status(503);
+            context.header("Retry-After", "1");
+            context.json(new String[]{"Server is busy, please try again later."});
+        });
+        javalinApp.exception(RequestShedException.class, (e, context) -> {
+            context.status(503);
+            context.header("Retry-After", "1");
+            context.json(new String[]{e.getMessage()});
+        });
+    }
+
+    /**
+     * Handles the conditional GET of a catalog response that is read from the
+     * given tables. If the client sent the current ETag in the header
+     * <code>If-None-Match</code>, the request is answered with <code>304 Not
+     * Modified</code> and the handler must return without querying the database.
+     *
+     * @param context the context of the request
+     * @param tables  the names of the tables the response is read from
+     * @return the current ETag, which has to be sent with the response;
+     * <code>null</code> if the request was answered with <code>304</code>
+     */
+    private String checkNotModified(Context context, String... tables) {
+        String etag = tableVersions.etagOf(tables);
+        if (TableVersions.matches(context.header(Header.IF_NONE_MATCH), etag)) {
+            context.status(304);
+            context.header(Header.ETAG, etag);
+            context.header(Header.CACHE_CONTROL, CATALOG_CACHE_CONTROL);
+            return null;
+        }
+        return etag;
+    }
+
+    /**
+     * Builds the key under which identical requests are coalesced: the path, the
+     * query parameters in a fixed order and the ETag, so that a request arriving
+     * after a table was changed does not get a result read before the change.
+     */
+    private static String flightKey(Context context, String etag) {
+        StringBuilder key = new StringBuilder(context.path()).append('?');
+        new TreeMap<>(context.queryParamMap()).forEach((name, values) -> {
+            for (String value : values) {
+                key.append(name).append('=').append(value).append('&');
+            }
+        });
+        return key.append(etag).toString();
+    }
+
+    /**
+     * Executes the SELECT query and serializes its rows, reading them one after
+     * another from a cursor. Results up to
+     * <code>MAX_SHARED_BODY_BYTES</code> are kept in memory, so that they can be
+     * sent to identical requests as well; larger ones are streamed to the client
+     * of this request while they are read.
+     *
+     * @param context the context of the request executing the query
+     * @param etag    the ETag sent with a streamed result; can be
+     *                <code>null</code>
+     * @return the response with the rows, or <code>{@link SharedResponse#streamed()}</code>
+     * if they were sent already; <code>404</code> if there are none;
+     * <code>500</code> if the query failed
+     */
+    private SharedResponse selectRows(Context context, String etag, String[] selection, String[] tables,
+                                      String condition, String[] conditionArgs) {
+        QueryCursor cursor = dbConnector.openSelectCursor(selection, tables, null, condition, conditionArgs,
+                DatabaseConnector.DEFAULT_FETCH_SIZE);
+        if (cursor == null) {
+            return SharedResponse.ofMessage(gson, 500, "Result could not be retrieved.");
+        }
+        try (QueryCursor rows = cursor) {
+            // check for empty result set
+            if (!rows.hasNext()) {
+                return SharedResponse.ofMessage(gson, 404, "Result was empty.");
+            }
+            SharedBodyStream body = new SharedBodyStream(MAX_SHARED_BODY_BYTES, () -> {
+                context.status(200);
+                context.contentType("application/json");
+                setCatalogHeaders(context, etag);
+                return context.outputStream();
+            });
+            JsonStreaming.writeRows(body, gson, rows);
+            return body.isStreamed() ? SharedResponse.streamed() : new SharedResponse(200, body.toByteArray());
+        } catch (IOException e) {
+            // only streaming writes to the network; identical requests read the result themselves then
+            logger.log(Level.FINE, "Client closed the connection while the result was streamed");
+            return SharedResponse.streamed();
+        }
+    }
+
+    /**
+     * Sets the headers of a successful catalog response, see
+     * <code>{@link #checkNotModified(Context, String...)}</code>.
+     *
+     * @param context the context of the request
+     * @param etag    the current ETag; can be <code>null</code> to set none
+     */
+    private static void setCatalogHeaders(Context context, String etag) {
+        if (etag != null) {
+            context.header(Header.ETAG, etag);
+            context.header(Header.CACHE_CONTROL, CATALOG_CACHE_CONTROL);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the client connected from this host; the
+     * sub-requests of a batch never count as local, see
+     * <code>{@link BatchHandler}</code>
+     */
+    private static boolean isLocalClient(Context context) {
+        if (context.header(BatchHandler.SUB_REQUEST_HEADER) != null) {
+            return false;
+        }
+        try {
+            // the remote address is an IP literal, so no name is looked up
+            return InetAddress.getByName(context.req().getRemoteAddr()).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Executes one page of the SELECT query like
+     * <code>{@link #selectRows(Context, String, String[], String[], String, String[])}</code>,
+     * see <code>{@link KeysetPage}</code>. The page is always kept in memory,
+     * because the cursor of the next page is sent as header, which is known only
+     * after the last row; its size is bounded by
+     * <code>{@link KeysetPage#MAX_LIMIT}</code> rows.
+     *
+     * @param keyColumn the unique integer column the rows are ordered by
+     * @param afterKey  the key of the last row of the previous page
+     * @param limit     the maximum amount of rows of the page
+     * @return the response with the rows and the cursor of the next page, if
+     * there is one; <code>404</code> if there are no rows; <code>500</code> if
+     * the query failed
+     */
+    private SharedResponse selectPage(String[] selection, String[] tables, String condition,
+                                      String[] conditionArgs, String keyColumn, long afterKey, int limit) {
+        // one row more than the limit tells whether there is a next page
+        QueryCursor cursor = dbConnector.openSelectPageCursor(selection, tables, null, condition, conditionArgs,
+                keyColumn, afterKey, limit + 1);
+        if (cursor == null) {
+            return SharedResponse.ofMessage(gson, 500, "Result could not be retrieved.");
+        }
+        try (QueryCursor rows = cursor) {
+            if (!rows.hasNext()) {
+                return SharedResponse.ofMessage(gson, 404, "Result was empty.");
+            }
+            KeysetPage page = new KeysetPage(rows, keyColumn, limit);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            JsonStreaming.writeRows(body, gson, page);
+            return new SharedResponse(200, body.toByteArray(), page.getNextCursor());
+        } catch (IOException e) {
+            // cannot happen when writing to memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * SELECT freeSeats
+     * FROM date_playtimes
+     * WHERE id = datePlaytimeId
+     *
+     * @return the amount of free seats; <code>-1</code> if the playtime does not
+     * exist, the query failed or no database permit became available in time
+     */
+    private int lookUpFreeSeats(int datePlaytimeId) {
+        // the lookups compete with the requests for the database, so they need a permit as well
+        try {
+            if (!databasePermits.tryAcquire(DATABASE_PERMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return -1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        List<Map<String, Object>> result;
+        try {
+            result = dbConnector.executeSelectQuery(new String[]{StringNames.freeSeats},
+                    new String[]{DatabaseConnector.DATE_PLAYTIMES}, null, "id = ?",
+                    new String[]{String.valueOf(datePlaytimeId)});
+        } finally {
+            databasePermits.release();
+        }
+        if (result == null || result.size() != 1 || !(result.get(0).get(StringNames.freeSeats) instanceof Number)) {
+            return -1;
+        }
+        return ((Number) result.get(0).get(StringNames.freeSeats)).intValue();
+    }
+
+    /**
+     * Waits for a database permit, which is released again after the request by
+     * <code>{@link #releaseDatabasePermit(Context)}</code>.
+     *
+     * @param context       the context of the request
+     * @param maxWaitMillis the longest time to wait for the permit
+     * @throws DatabaseBusyException if no permit became available in time
+     * @throws RequestShedException  if the deadline of the request passed while
+     *                               waiting, or the request is over the queue
+     *                               budget after getting the permit
+     */
+    private void acquireDatabasePermit(Context context, long maxWaitMillis) {
+        boolean acquired;
+        try {
+            acquired = databasePermits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            // the wait is cut short by the deadline, in which case the request is dropped as expired
+            loadShedder.checkDeadline(context);
+            throw new DatabaseBusyException("Too many requests are accessing the database.");
+        }
+        try {
+            loadShedder.checkQueueTime(context);
+        } catch (RequestShedException e) {
+            databasePermits.release();
+            throw e;
+        }
+        context.attribute(PERMIT_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    /**
+     * Executes the query of a request to a coalesced path with a database permit,
+     * which is held only while the query runs. It is called by the request that
+     * executes the query for all identical ones, see
+     * <code>{@link SingleFlight}</code>. If that request is dropped or gets no
+     * permit, each identical request executes the query by itself, with its own
+     * permit and deadline.
+     *
+     * @param context the context of the request executing the query
+     * @param query   the query
+     * @return the response of the query
+     */
+    private SharedResponse withDatabasePermit(Context context, Supplier<SharedResponse> query) {
+        Long maxWaitMillis = context.attribute(PERMIT_WAIT_ATTRIBUTE);
+        acquireDatabasePermit(context, maxWaitMillis != null ? maxWaitMillis : DATABASE_PERMIT_TIMEOUT_MILLIS);
+        try {
+            return query.get();
+        } finally {
+            releaseDatabasePermit(context);
+        }
+    }
+
+    private void releaseDatabasePermit(Context context) {
+        if (context.attribute(PERMIT_ATTRIBUTE) != null) {
+            context.attribute(PERMIT_ATTRIBUTE, null);
+            databasePermits.release();
+        }
     }
 
     public void defineRoutes() {
@@ -91,7 +650,18 @@ public class RestServer {
             // obtain query parameters
             String queryParam1 = context.queryParam(StringNames.query1);
             String queryParam2 = context.queryParam(StringNames.query2);
-            List<Map<String, Object>> queryResult = null;
+            // pagination is optional; without limit and cursor all rows are returned
+            String limitParam = context.queryParam(StringNames.limit);
+            String afterParam = context.queryParam(StringNames.after);
+            boolean paged = limitParam != null || afterParam != null;
+            // only the requested columns are read; the key is needed for the cursor of the next page
+            String[] fields = Fieldsets.parse(DatabaseConnector.CUSTOMERS, context.queryParam(StringNames.fields));
+            String[] selection = fields == null || !paged ? fields : Fieldsets.including(fields, "id");
+            int limit = KeysetPage.parseLimit(limitParam);
+            Long afterKey = afterParam == null ? Long.valueOf(DatabaseConnector.FIRST_PAGE)
+                    : KeysetPage.decodeCursor(afterParam);
+            SharedResponse response;
+            String etag;
 
             // data validation
             if (queryParam1 != null && !dataVal.isValidId(queryParam1)) {
@@ -104,6 +674,21 @@ public class RestServer {
                 context.json(new String[] { "Format of query parameter 2 not correct."});
                 return;
             }
+            if (selection == null) {
+                context.status(400);
+                context.json(new String[] { "Fields not correct."});
+                return;
+            }
+            if (limit == -1) {
+                context.status(400);
+                context.json(new String[] { "Limit must be between 1 and " + KeysetPage.MAX_LIMIT + "."});
+                return;
+            }
+            if (afterKey == null) {
+                context.status(400);
+                context.json(new String[] { "Cursor not valid."});
+                return;
+            }
 
             /**
              * Check which query parameters are given.
@@ -119,9 +704,33 @@ public class RestServer {
                 context.json(new String[] { "At least one parameter is required."});
                 return;
             } else if (queryParam1 != null && queryParam2 == null) {
-                // or make request to the database retrieving the requested information
-                queryResult = dbConnector.executeSelectQuery(new String[] { "*" },
-                        new String[] { DatabaseConnector.CUSTOMERS }, null, "email = ?", new String[] { queryParam1 });
+                // answer with 304 if the client has the current result already
+                etag = checkNotModified(context, DatabaseConnector.CUSTOMERS);
+                if (etag == null) {
+                    return;
+                }
+                // or make request to the database retrieving the requested information;
+                // identical requests at the same time share one query and its serialized result
+                boolean[] executed = {false};
+                Supplier<SharedResponse> query = () -> {
+                    executed[0] = true;
+                    return withDatabasePermit(context, () -> paged
+                            ? selectPage(selection, new String[] { DatabaseConnector.CUSTOMERS }, "email = ?",
+                                    new String[] { queryParam1 }, "id", afterKey, limit)
+                            : selectRows(context, etag, selection, new String[] { DatabaseConnector.CUSTOMERS },
+                                    "email = ?", new String[] { queryParam1 }));
+                };
+                response = catalogFlights.execute(flightKey(context, etag), query,
+                        loadShedder.remainingMillis(context));
+                if (response == null) {
+                    // the identical request did not finish before the deadline of this one
+                    loadShedder.checkDeadline(context);
+                    response = query.get();
+                }
+                if (response.isStreamed() && !executed[0]) {
+                    // the result was too large to be shared, so this request reads it itself
+                    response = query.get();
+                }
             } else if (queryParam1 == null && queryParam2 != null) {
                 context.status(400);
                 context.json(new String[] { "Other combination of query parameters needed."});
@@ -132,13 +741,149 @@ public class RestServer {
                 return;
             }
 
-            // check for empty result set
-            if (queryResult.isEmpty()) {
-                context.status(404);
-                context.json(new String[] { "Result was empty."});
+            if (response.isStreamed()) {
+                // the rows were sent to the client already
                 return;
             }
-            context.json(queryResult);
+            if (response.getStatus() == 200) {
+                setCatalogHeaders(context, etag);
+            }
+            response.writeTo(context);
+        });
+
+        /*
+         * logs a customer in with the credentials given in the authorization header
+         * (Basic auth) and returns the customer information together with a session
+         * token, which is sent instead of the credentials afterwards
+         * (Authorization: Bearer token), so that they do not have to be checked
+         * against the database on every request
+         *
+         * path: /login
+         */
+        javalinApp.post("/login", context -> {
+            String[] credentials = dataVal.decodeCredentials(context.header(StringNames.authorization));
+            if (credentials == null) {
+                context.status(400);
+                context.json(new String[]{"E-mail and password are required as Basic authorization."});
+                return;
+            }
+
+            /*
+             * SELECT id, firstName, lastName, email
+             * FROM customers
+             * WHERE email = email and password = password
+             */
+            List<Map<String, Object>> queryResult = dbConnector.executeSelectQuery(
+                    Fieldsets.all(DatabaseConnector.CUSTOMERS),
+                    new String[]{DatabaseConnector.CUSTOMERS}, null, "email = ? and password = ?",
+                    new String[]{credentials[0], credentials[1]});
+            if (queryResult == null || queryResult.size() != 1) {
+                context.status(401);
+                context.json(new String[]{"E-mail not found or no valid credentials given."});
+                return;
+            }
+
+            Map<String, Object> session = new LinkedHashMap<>(queryResult.get(0));
+            int customerId = ((Number) session.get("id")).intValue();
+            session.put(StringNames.token, dataVal.getSessionStore().createSession(customerId));
+            session.put("expiresIn", dataVal.getSessionStore().getIdleTimeoutMillis() / 1000);
+            context.json(session);
+        });
+
+        /*
+         * ends the session of the session token given in the authorization header
+         *
+         * path: /logout
+         */
+        javalinApp.post("/logout", context -> {
+            String authString = context.header(StringNames.authorization);
+            if (authString != null && authString.startsWith(SessionStore.BEARER + " ")) {
+                dataVal.getSessionStore().invalidate(authString.substring(SessionStore.BEARER.length() + 1).trim());
+            }
+            context.status(204);
+        });
+
+        /*
+         * runs several GET requests in parallel and returns all their responses at
+         * once, see BatchHandler
+         *
+         * path: /batch
+         */
+        javalinApp.post(BatchHandler.PATH, new BatchHandler(gson, javalinApp.port(), loadShedder, BATCH_PATHS));
+
+        /*
+         * streams the free seats of a playtime as Server-Sent Events: an event
+         * "availability" with data like {"datePlaytimeId": 1, "freeSeats": 5} right
+         * after connecting and whenever the value changes, see AvailabilityEventHub
+         *
+         * path: /availability?datePlaytimeId=1
+         */
+        javalinApp.sse(AVAILABILITY_PATH, client -> {
+            String datePlaytimeId = client.ctx().queryParam(StringNames.datePlaytimeId);
+            if (datePlaytimeId == null || !dataVal.isValidId(datePlaytimeId)) {
+                client.sendEvent("error", gson.toJson(new String[]{"Format of datePlaytimeId not correct."}));
+                client.close();
+                return;
+            }
+            if (availabilityHub.getSubscribers() >= MAX_AVAILABILITY_SUBSCRIBERS) {
+                client.sendEvent("error", gson.toJson(new String[]{"Server is busy, please try again later."}));
+                client.close();
+                return;
+            }
+            // the connection stays open after this handler returned, until the client closes it
+            client.keepAlive();
+            AvailabilityEventHub.Subscriber subscriber = availabilityHub.subscribe(
+                    Integer.parseInt(datePlaytimeId), (event, data) -> client.sendEvent(event, data));
+            client.onClose(() -> availabilityHub.unsubscribe(subscriber));
+        });
+
+        /*
+         * returns request, JVM and database metrics in the Prometheus text format,
+         * see ServerMetrics; only to clients on the server host, unless the system
+         * property restserver.metricsRemoteAccess is true
+         *
+         * path: /metrics
+         */
+        javalinApp.get(METRICS_PATH, context -> {
+            if (!Boolean.getBoolean(METRICS_REMOTE_ACCESS_PROPERTY) && !isLocalClient(context)) {
+                context.status(403);
+                context.json(new String[]{"Metrics are only available on the server host."});
+                return;
+            }
+            StringBuilder out = new StringBuilder(16 * 1024);
+            metrics.writeRequests(out);
+            ServerMetrics.counter(out, "restserver_coalesced_requests_total",
+                    "Catalog requests that got the result of an identical running request.",
+                    catalogFlights.getCoalesced());
+            ServerMetrics.counter(out, "restserver_catalog_queries_total",
+                    "Catalog requests that queried the database.", catalogFlights.getExecutions());
+            ServerMetrics.gauge(out, "restserver_database_permits_available",
+                    "Requests that could access the database right now without waiting.",
+                    databasePermits.availablePermits());
+            DataValidation validation = dataVal;
+            if (validation != null) {
+                ServerMetrics.gauge(out, "restserver_sessions", "Stored sessions of logged in customers.",
+                        validation.getSessionStore().size());
+                ServerMetrics.counter(out, "restserver_credential_cache_hits_total",
+                        "Authorizations answered from the credential cache.", validation.getCredentialCacheHits());
+                ServerMetrics.counter(out, "restserver_credential_cache_misses_total",
+                        "Authorizations checked in the database.", validation.getCredentialCacheMisses());
+            }
+            ServerMetrics.writeLoadShedding(out, loadShedder);
+            ServerMetrics.gauge(out, "restserver_availability_subscribers", "Open seat availability streams.",
+                    availabilityHub.getSubscribers());
+            ServerMetrics.counter(out, "restserver_availability_published_total",
+                    "Changed seat availabilities sent to subscribers.", availabilityHub.getPublished());
+            ServerMetrics.counter(out, "restserver_availability_coalesced_total",
+                    "Availability events replaced by a newer one before a slow subscriber got them.",
+                    availabilityHub.getCoalesced());
+            ServerMetrics.writeJvm(out);
+            DatabaseConnector connector = dbConnector;
+            if (connector != null) {
+                ServerMetrics.writeDatabase(out, connector);
+            }
+            context.contentType(ServerMetrics.CONTENT_TYPE);
+            context.result(out.toString());
         });
 
         /*
@@ -0,0 +1,231 @@
+package rest_server;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import io.javalin.json.JsonMapper;
+import org.jetbrains.annotations.NotNull;
+import utils.RequestTiming;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <code>JsonMapper</code> with a fast path for the payloads the REST server
+ * sends most: query results (lists of maps from column name to cell value) and
+ * the <code>String[]</code> messages. <br>
+ * <br>
+ * These payloads are written by hand into a <code>StringBuilder</code> that is
+ * reused per thread, instead of going through Gson's reflective type adapters
+ * for every row and cell. Strings, numbers and booleans are written directly;
+ * other cell values like dates are written with the Gson type adapter of their
+ * class, which is looked up only once per class. The output is exactly the same
+ * as the one of the given <code>Gson</code> instance. Everything else, as well
+ * as reading JSON, is passed to Gson unchanged.
+ */
+public class RowJsonMapper implements JsonMapper {
+
+    // builders that grew larger are not kept, so a single huge response does not pin memory
+    private static final int MAX_REUSED_CAPACITY = 64 * 1024;
+    private static final String[] REPLACEMENT_CHARS = new String[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            REPLACEMENT_CHARS[c] = String.format("\\u%04x", c);
+        }
+        REPLACEMENT_CHARS['"'] = "\\\"";
+        REPLACEMENT_CHARS['\\'] = "\\\\";
+        REPLACEMENT_CHARS['\t'] = "\\t";
+        REPLACEMENT_CHARS['\b'] = "\\b";
+        REPLACEMENT_CHARS['\n'] = "\\n";
+        REPLACEMENT_CHARS['\r'] = "\\r";
+        REPLACEMENT_CHARS['\f'] = "\\f";
+    }
+
+    private final Gson gson;
+    private final String[] replacementChars;
+    private final Map<Class<?>, TypeAdapter<Object>> adapters = new ConcurrentHashMap<>();
+    private final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    /**
+     * @param gson the instance whose output is reproduced and that handles all
+     *             other payloads
+     */
+    public RowJsonMapper(Gson gson) {
+        this.gson = gson;
+        this.replacementChars = REPLACEMENT_CHARS.clone();
+        if (gson.htmlSafe()) {
+            replacementChars['<'] = "\\u003c";
+            replacementChars['>'] = "\\u003e";
+            replacementChars['&'] = "\\u0026";
+            replacementChars['='] = "\\u003d";
+            replacementChars['\''] = "\\u0027";
+        }
+    }
+
+    @Override
+    public @NotNull String toJsonString(@NotNull Object obj, @NotNull Type type) {
+        long start = System.nanoTime();
+        try {
+            return toJson(obj, type);
+        } finally {
+            RequestTiming.record(RequestTiming.JSON, start);
+        }
+    }
+
+    private String toJson(Object obj, Type type) {
+        if (!isFastPathPayload(obj)) {
+            return gson.toJson(obj, type);
+        }
+        StringBuilder sb = builders.get();
+        sb.setLength(0);
+        if (obj instanceof String[]) {
+            writeStrings(sb, (String[]) obj);
+        } else {
+            writeRows(sb, (List<?>) obj);
+        }
+        String json = sb.toString();
+        if (sb.capacity() > MAX_REUSED_CAPACITY) {
+            builders.remove();
+        }
+        return json;
+    }
+
+    @Override
+    public <T> @NotNull T fromJsonString(@NotNull String json, @NotNull Type targetType) {
+        return gson.fromJson(json, targetType);
+    }
+
+    /**
+     * Checks if the payload is a <code>String[]</code> or a list containing only
+     * maps (or <code>null</code>) with string keys.
+     */
+    private static boolean isFastPathPayload(Object obj) {
+        if (obj instanceof String[]) {
+            return true;
+        }
+        if (!(obj instanceof List)) {
+            return false;
+        }
+        for (Object element : (List<?>) obj) {
+            if (element != null && !(element instanceof Map)) {
+                return false;
+            }
+            if (element != null) {
+                for (Object key : ((Map<?, ?>) element).keySet()) {
+                    if (!(key instanceof String)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void writeStrings(StringBuilder sb, String[] strings) {
+        sb.append('[');
+        for (int i = 0; i < strings.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            writeString(sb, strings[i]);
+        }
+        sb.append(']');
+    }
+
+    private void writeRows(StringBuilder sb, List<?> rows) {
+        sb.append('[');
+        boolean first = true;
+        for (Object row : rows) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            if (row == null) {
+                sb.append("null");
+            } else {
+                writeRow(sb, (Map<?, ?>) row);
+            }
+        }
+        sb.append(']');
+    }
+
+    private void writeRow(StringBuilder sb, Map<?, ?> row) {
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> cell : row.entrySet()) {
+            Object value = cell.getValue();
+            // like Gson, members with null values are left out unless configured otherwise
+            if (value == null && !gson.serializeNulls()) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            writeString(sb, (String) cell.getKey());
+            sb.append(':');
+            writeValue(sb, value);
+        }
+        sb.append('}');
+    }
+
+    private void writeValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            writeString(sb, (String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof BigDecimal || value instanceof BigInteger) {
+            sb.append(value);
+        } else if (value instanceof Boolean) {
+            sb.append(((Boolean) value).booleanValue());
+        } else {
+            // e.g. dates, whose format depends on the Gson configuration
+            sb.append(adapters.computeIfAbsent(value.getClass(), this::adapterOf).toJson(value));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypeAdapter<Object> adapterOf(Class<?> type) {
+        return (TypeAdapter<Object>) gson.getAdapter(type);
+    }
+
+    /**
+     * Writes the string as JSON string literal, escaped like by Gson.
+     */
+    private void writeString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c < 128) {
+                replacement = replacementChars[c];
+            } else if (c == '\u2028') {
+                replacement = "\\u2028";
+            } else if (c == '\u2029') {
+                replacement = "\\u2029";
+            } else {
+                continue;
+            }
+            if (replacement == null) {
+                continue;
+            }
+            sb.append(value, last, i);
+            sb.append(replacement);
+            last = i + 1;
+        }
+        sb.append(value, last, length);
+        sb.append('"');
+    }
+
+}
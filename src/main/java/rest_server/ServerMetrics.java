@@ -0,0 +1,318 @@
+package rest_server;
+
+import io.javalin.http.Context;
+import model.ConnectionPool;
+import model.DatabaseConnector;
+import model.QueryCache;
+import model.QueryStatistics;
+import utils.LatencyHistogram;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics of the <code>{@link RestServer}</code> per route, written
+ * together with JVM and database metrics in the Prometheus text format. <br>
+ * <br>
+ * A route is the HTTP method and the path of the matched endpoint, e.g.
+ * <code>GET /customers</code>; requests that matched no endpoint are counted
+ * under the route <code>unmatched</code>. For every route the requests per
+ * status code and a latency histogram are recorded, from which p50, p95, p99
+ * and the maximum are reported.
+ */
+final class ServerMetrics {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String START_ATTRIBUTE = "metricsStart";
+    private static final String UNMATCHED = "unmatched";
+    private static final String OTHER = "<other>";
+    // protects the memory if something generates many different routes
+    private static final int MAX_ROUTES = 200;
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Has to be called in a before handler that runs before all others.
+     *
+     * @param context the context of the request
+     */
+    void requestStarted(Context context) {
+        context.attribute(START_ATTRIBUTE, System.nanoTime());
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Has to be called in an after handler, which also runs when the request
+     * failed.
+     *
+     * @param context the context of the request
+     */
+    void requestFinished(Context context) {
+        Long start = context.attribute(START_ATTRIBUTE);
+        if (start == null) {
+            return;
+        }
+        context.attribute(START_ATTRIBUTE, null);
+        inFlight.decrementAndGet();
+        routeMetrics(context.method().name() + " " + endpointPathOf(context))
+                .record(context.statusCode(), System.nanoTime() - start);
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Writes the request metrics of all routes.
+     *
+     * @param out the builder to write to
+     */
+    void writeRequests(StringBuilder out) {
+        Map<String, RouteMetrics> sortedRoutes = new TreeMap<>(routes);
+
+        header(out, "restserver_requests_total", "counter", "Handled requests by route and status code.");
+        sortedRoutes.forEach((route, metrics) -> new TreeMap<>(metrics.statuses).forEach((status, count) ->
+                sample(out, "restserver_requests_total", "route", route, "status", String.valueOf(status),
+                        count.sum())));
+
+        header(out, "restserver_request_duration_seconds", "summary", "Duration of handled requests by route.");
+        sortedRoutes.forEach((route, metrics) -> {
+            LatencyHistogram latency = metrics.latency;
+            for (double quantile : QUANTILES) {
+                sample(out, "restserver_request_duration_seconds", "route", route, "quantile",
+                        String.valueOf(quantile), latency.getPercentile(quantile * 100) / NANOS_PER_SECOND);
+            }
+            sample(out, "restserver_request_duration_seconds_sum", "route", route,
+                    latency.getSum() / NANOS_PER_SECOND);
+            sample(out, "restserver_request_duration_seconds_count", "route", route, latency.getCount());
+        });
+
+        header(out, "restserver_request_duration_seconds_max", "gauge", "Longest handled request by route.");
+        sortedRoutes.forEach((route, metrics) -> sample(out, "restserver_request_duration_seconds_max",
+                "route", route, metrics.latency.getMax() / NANOS_PER_SECOND));
+
+        gauge(out, "restserver_requests_in_flight", "Requests being handled right now.", inFlight.get());
+    }
+
+    /**
+     * Writes heap usage, garbage collections and thread counts of the JVM.
+     *
+     * @param out the builder to write to
+     */
+    static void writeJvm(StringBuilder out) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        header(out, "jvm_memory_bytes_used", "gauge", "Used memory of the JVM by area.");
+        sample(out, "jvm_memory_bytes_used", "area", "heap", heap.getUsed());
+        sample(out, "jvm_memory_bytes_used", "area", "nonheap", nonHeap.getUsed());
+        header(out, "jvm_memory_bytes_committed", "gauge", "Committed memory of the JVM by area.");
+        sample(out, "jvm_memory_bytes_committed", "area", "heap", heap.getCommitted());
+        sample(out, "jvm_memory_bytes_committed", "area", "nonheap", nonHeap.getCommitted());
+        gauge(out, "jvm_memory_heap_bytes_max", "Maximum heap size; -1 if undefined.", heap.getMax());
+
+        header(out, "jvm_gc_collection_seconds", "summary", "Time spent in garbage collections by collector.");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collection_seconds_count", "gc", collector.getName(),
+                    Math.max(0, collector.getCollectionCount()));
+            sample(out, "jvm_gc_collection_seconds_sum", "gc", collector.getName(),
+                    Math.max(0, collector.getCollectionTime()) / 1e3);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        gauge(out, "jvm_threads_current", "Live platform threads.", threads.getThreadCount());
+        gauge(out, "jvm_threads_daemon", "Live daemon threads.", threads.getDaemonThreadCount());
+        gauge(out, "jvm_threads_peak", "Most live platform threads since the start.", threads.getPeakThreadCount());
+        gauge(out, "process_uptime_seconds", "Time since the start of the JVM.",
+                ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+    }
+
+    /**
+     * Writes the metrics of the connection pool, the query cache and the query
+     * statistics, as far as the connector has them.
+     *
+     * @param out         the builder to write to
+     * @param dbConnector the connector to the database
+     */
+    static void writeDatabase(StringBuilder out, DatabaseConnector dbConnector) {
+        ConnectionPool pool = dbConnector.getConnectionPool();
+        if (pool != null) {
+            gauge(out, "db_pool_connections_max", "Maximum size of the connection pool.", pool.getMaxSize());
+            gauge(out, "db_pool_connections_total", "Open connections.", pool.getTotalConnections());
+            gauge(out, "db_pool_connections_idle", "Idle connections.", pool.getIdleConnections());
+            gauge(out, "db_pool_connections_active", "Connections in use.", pool.getActiveConnections());
+            gauge(out, "db_pool_threads_waiting", "Threads waiting for a connection.", pool.getWaitingThreads());
+            counter(out, "db_pool_acquire_timeouts_total", "Failed attempts to get a connection in time.",
+                    pool.getAcquireTimeouts());
+            counter(out, "db_pool_leaks_total", "Connections held longer than the leak threshold.",
+                    pool.getDetectedLeaks());
+            counter(out, "db_statement_cache_hits_total", "Prepared statements reused from the cache.",
+                    pool.getStatementCacheHits());
+            counter(out, "db_statement_cache_misses_total", "Prepared statements created.",
+                    pool.getStatementCacheMisses());
+        }
+
+        QueryCache queryCache = dbConnector.getQueryCache();
+        if (queryCache != null) {
+            gauge(out, "db_query_cache_entries", "Cached query results.", queryCache.size());
+            counter(out, "db_query_cache_hits_total", "Queries answered from the cache.", queryCache.getHits());
+            counter(out, "db_query_cache_misses_total", "Queries not found in the cache.", queryCache.getMisses());
+            counter(out, "db_query_cache_evictions_total", "Results dropped because the cache was full.",
+                    queryCache.getEvictions());
+            counter(out, "db_query_cache_invalidations_total", "Results dropped because a table changed.",
+                    queryCache.getInvalidations());
+        }
+
+        QueryStatistics statistics = dbConnector.getQueryStatistics();
+        if (statistics != null && statistics.isEnabled()) {
+            Map<String, QueryStatistics.StatementStatistics> statements = new TreeMap<>(statistics.getStatements());
+            header(out, "db_statement_duration_seconds", "summary", "Duration of statements by SQL text.");
+            statements.forEach((sql, statement) -> {
+                LatencyHistogram total = statement.getTotal();
+                for (double quantile : QUANTILES) {
+                    sample(out, "db_statement_duration_seconds", "statement", sql, "quantile",
+                            String.valueOf(quantile), total.getPercentile(quantile * 100) / NANOS_PER_SECOND);
+                }
+                sample(out, "db_statement_duration_seconds_sum", "statement", sql,
+                        total.getSum() / NANOS_PER_SECOND);
+                sample(out, "db_statement_duration_seconds_count", "statement", sql, total.getCount());
+            });
+            header(out, "db_statement_errors_total", "counter", "Failed statements by SQL text.");
+            statements.forEach((sql, statement) ->
+                    sample(out, "db_statement_errors_total", "statement", sql, statement.getErrors()));
+            header(out, "db_statement_rows_total", "counter", "Rows read or changed by SQL text.");
+            statements.forEach((sql, statement) ->
+                    sample(out, "db_statement_rows_total", "statement", sql, statement.getRows()));
+            counter(out, "db_slow_queries_total", "Statements slower than the slow query threshold.",
+                    statistics.getSlowQueries());
+        }
+    }
+
+    /**
+     * Writes the dropped requests by reason and the queue times of the requests.
+     *
+     * @param out         the builder to write to
+     * @param loadShedder the shedder of the server
+     */
+    static void writeLoadShedding(StringBuilder out, LoadShedder loadShedder) {
+        header(out, "restserver_shed_requests_total", "counter", "Requests dropped before accessing the database.");
+        sample(out, "restserver_shed_requests_total", "reason", LoadShedder.QUEUE_TIME,
+                loadShedder.getShedByQueueTime());
+        sample(out, "restserver_shed_requests_total", "reason", LoadShedder.DEADLINE,
+                loadShedder.getShedByDeadline());
+
+        LatencyHistogram queueTime = loadShedder.getQueueTime();
+        header(out, "restserver_queue_time_seconds", "summary", "Time requests waited for a thread.");
+        for (double quantile : QUANTILES) {
+            sample(out, "restserver_queue_time_seconds", "quantile", String.valueOf(quantile),
+                    queueTime.getPercentile(quantile * 100) / NANOS_PER_SECOND);
+        }
+        sample(out, "restserver_queue_time_seconds_sum", queueTime.getSum() / NANOS_PER_SECOND);
+        sample(out, "restserver_queue_time_seconds_count", queueTime.getCount());
+        gauge(out, "restserver_queue_time_seconds_max", "Longest time a request waited for a thread.",
+                queueTime.getMax() / NANOS_PER_SECOND);
+    }
+
+    static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, "gauge", help);
+        sample(out, name, value);
+    }
+
+    static void counter(StringBuilder out, String name, String help, double value) {
+        header(out, name, "counter", help);
+        sample(out, name, value);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, double value) {
+        out.append(name).append(' ');
+        appendValue(out, value);
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String labelValue, double value) {
+        out.append(name).append('{');
+        appendLabel(out, label, labelValue);
+        out.append("} ");
+        appendValue(out, value);
+    }
+
+    private static void sample(StringBuilder out, String name, String label1, String labelValue1, String label2,
+                               String labelValue2, double value) {
+        out.append(name).append('{');
+        appendLabel(out, label1, labelValue1);
+        out.append(',');
+        appendLabel(out, label2, labelValue2);
+        out.append("} ");
+        appendValue(out, value);
+    }
+
+    private static void appendLabel(StringBuilder out, String label, String value) {
+        out.append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static void appendValue(StringBuilder out, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String endpointPathOf(Context context) {
+        try {
+            String path = context.endpointHandlerPath();
+            return path == null || path.isEmpty() ? UNMATCHED : path;
+        } catch (RuntimeException e) {
+            return UNMATCHED;
+        }
+    }
+
+    private RouteMetrics routeMetrics(String route) {
+        RouteMetrics metrics = routes.get(route);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (routes.size() >= MAX_ROUTES) {
+            route = OTHER;
+        }
+        return routes.computeIfAbsent(route, key -> new RouteMetrics());
+    }
+
+    private static final class RouteMetrics {
+
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(int status, long nanos) {
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+            latency.record(nanos);
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package rest_server;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-side store of the sessions of logged in customers. <br>
+ * <br>
+ * A session is created once when a customer logs in with e-mail and password.
+ * The returned token is sent in the header <code>Authorization: Bearer
+ * token</code> of all further requests instead of the credentials, so that they
+ * can be checked without any database request. <br>
+ * <br>
+ * A token consists of a random session id and an HMAC-SHA256 signature of that
+ * id with a secret key of the server, so forged tokens are rejected without even
+ * looking them up. Every use of a session extends it by the idle timeout
+ * (sliding expiry), but never beyond the maximum lifetime. <br>
+ * <br>
+ * The store holds at most a maximum amount of sessions; beyond that, the oldest
+ * ones are ended, so that repeated log ins cannot use up the memory. Sessions
+ * can also be ended all at once, e.g. when customers were changed or deleted.
+ */
+public class SessionStore {
+
+    public static final String BEARER = "Bearer";
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30 * 60 * 1_000;
+    public static final long DEFAULT_MAX_LIFETIME_MILLIS = 12 * 60 * 60 * 1_000;
+    public static final int DEFAULT_MAX_SESSIONS = 100_000;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int SESSION_ID_BYTES = 24;
+    // expired sessions are removed on every this many created sessions
+    private static final int CLEANUP_INTERVAL = 256;
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec key;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final int maxSessions;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // session ids from oldest to newest; may still contain ids of ended sessions until the next cleanup
+    private final Queue<String> creationOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger createdSinceCleanup = new AtomicInteger();
+
+    /**
+     * Creates a store with a new random secret key, so all tokens become invalid
+     * when the server is restarted.
+     */
+    public SessionStore() {
+        this(null, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAX_LIFETIME_MILLIS);
+    }
+
+    /**
+     * @param secret            the secret key for signing the tokens; can be
+     *                          <code>null</code> to use a random key
+     * @param idleTimeoutMillis how long a session stays valid without being used
+     * @param maxLifetimeMillis how long a session stays valid at most
+     */
+    public SessionStore(byte[] secret, long idleTimeoutMillis, long maxLifetimeMillis) {
+        this(secret, idleTimeoutMillis, maxLifetimeMillis, DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * @param secret            the secret key for signing the tokens; can be
+     *                          <code>null</code> to use a random key
+     * @param idleTimeoutMillis how long a session stays valid without being used
+     * @param maxLifetimeMillis how long a session stays valid at most
+     * @param maxSessions       the maximum amount of stored sessions
+     */
+    public SessionStore(byte[] secret, long idleTimeoutMillis, long maxLifetimeMillis, int maxSessions) {
+        byte[] keyBytes = secret;
+        if (keyBytes == null) {
+            keyBytes = new byte[32];
+            random.nextBytes(keyBytes);
+        }
+        this.key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Creates a new session for the given customer.
+     *
+     * @param customerId the id of the logged in customer
+     * @return the token identifying the session
+     */
+    public String createSession(int customerId) {
+        byte[] idBytes = new byte[SESSION_ID_BYTES];
+        random.nextBytes(idBytes);
+        String sessionId = Base64.getUrlEncoder().withoutPadding().encodeToString(idBytes);
+
+        long now = System.currentTimeMillis();
+        sessions.put(sessionId, new Session(customerId, now + maxLifetimeMillis, now + idleTimeoutMillis));
+        creationOrder.add(sessionId);
+        if (createdSinceCleanup.incrementAndGet() % CLEANUP_INTERVAL == 0) {
+            removeExpired();
+        }
+        while (sessions.size() > maxSessions) {
+            String oldest = creationOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            sessions.remove(oldest);
+        }
+        return sessionId + "." + sign(sessionId);
+    }
+
+    /**
+     * Looks up the customer of a session and extends the session.
+     *
+     * @param token the token of the session
+     * @return the id of the customer; <code>-1</code> if the token is invalid or
+     * the session has expired
+     */
+    public int getCustomerId(String token) {
+        String sessionId = verify(token);
+        if (sessionId == null) {
+            return -1;
+        }
+        Session session = sessions.get(sessionId);
+        long now = System.currentTimeMillis();
+        if (session == null || session.isExpired(now)) {
+            sessions.remove(sessionId);
+            return -1;
+        }
+        session.expiresAt = Math.min(now + idleTimeoutMillis, session.lifetimeEnd);
+        return session.customerId;
+    }
+
+    /**
+     * Ends the session of the given token, e.g. when the customer logs out.
+     *
+     * @param token the token of the session
+     */
+    public void invalidate(String token) {
+        String sessionId = verify(token);
+        if (sessionId != null) {
+            sessions.remove(sessionId);
+        }
+    }
+
+    /**
+     * Ends all sessions, e.g. after customers were changed or deleted in a way
+     * that does not tell which customer it was.
+     */
+    public void invalidateAll() {
+        sessions.clear();
+        creationOrder.clear();
+    }
+
+    /**
+     * @return the amount of stored sessions, including expired ones that were not
+     * removed yet
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Checks the signature of the token.
+     *
+     * @param token the token
+     * @return the session id of the token; <code>null</code> if the token is
+     * malformed or its signature is wrong
+     */
+    private String verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int separator = token.indexOf('.');
+        if (separator <= 0) {
+            return null;
+        }
+        String sessionId = token.substring(0, separator);
+        byte[] signature = token.substring(separator + 1).getBytes(StandardCharsets.US_ASCII);
+        // constant time comparison, so the signature cannot be guessed byte by byte
+        if (!MessageDigest.isEqual(signature, sign(sessionId).getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        return sessionId;
+    }
+
+    private String sign(String sessionId) {
+        try {
+            // Mac objects are not thread-safe, but cheap to create
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            byte[] signature = mac.doFinal(sessionId.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            // every Java platform has to support HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+            }
+        }
+        creationOrder.removeIf(sessionId -> !sessions.containsKey(sessionId));
+    }
+
+    private static final class Session {
+
+        private final int customerId;
+        private final long lifetimeEnd;
+        private volatile long expiresAt;
+
+        Session(int customerId, long lifetimeEnd, long expiresAt) {
+            this.customerId = customerId;
+            this.lifetimeEnd = lifetimeEnd;
+            this.expiresAt = Math.min(expiresAt, lifetimeEnd);
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+}
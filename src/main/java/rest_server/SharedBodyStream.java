@@ -0,0 +1,76 @@
+package rest_server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+
+/**
+ * Collects a response body in memory, so that it can be sent to several
+ * clients, see <code>{@link SharedResponse}</code>. <br>
+ * <br>
+ * Once the body grows beyond the limit, sharing it is not worth the memory: the
+ * bytes collected so far and all following ones are written through to the
+ * client of the request producing the body, so large results are still streamed
+ * while they are read from the database.
+ */
+final class SharedBodyStream extends OutputStream {
+
+    private final int limit;
+    private final Supplier<OutputStream> client;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    // null while the body is collected in memory
+    private OutputStream out;
+
+    /**
+     * @param limit  the maximum size of the body kept in memory in bytes
+     * @param client opens the stream to the client once the limit is exceeded;
+     *               it has to set the status and headers of the response before
+     */
+    SharedBodyStream(int limit, Supplier<OutputStream> client) {
+        this.limit = limit;
+        this.client = client;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (out == null && buffer.size() + len > limit) {
+            out = client.get();
+            buffer.writeTo(out);
+            buffer = null;
+        }
+        if (out != null) {
+            out.write(b, off, len);
+        } else {
+            buffer.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the body was written to the client instead of
+     * being collected
+     */
+    boolean isStreamed() {
+        return out != null;
+    }
+
+    /**
+     * @return the collected body; <code>null</code> if it was streamed
+     */
+    byte[] toByteArray() {
+        return buffer == null ? null : buffer.toByteArray();
+    }
+
+}
@@ -0,0 +1,80 @@
+package rest_server;
+
+import com.google.gson.Gson;
+import io.javalin.http.Context;
+import utils.StringNames;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A complete, already serialized JSON response, which can be sent to several
+ * clients, see <code>{@link SingleFlight}</code>. A response that was too large
+ * to be shared was streamed to the client of the request producing it instead,
+ * see <code>{@link #isStreamed()}</code>.
+ */
+final class SharedResponse {
+
+    private static final SharedResponse STREAMED = new SharedResponse(200, null);
+
+    private final int status;
+    private final byte[] body;
+    private final String nextCursor;
+
+    SharedResponse(int status, byte[] body) {
+        this(status, body, null);
+    }
+
+    /**
+     * @param status     the status of the response
+     * @param body       the serialized JSON
+     * @param nextCursor the cursor of the next page, see
+     *                   <code>{@link KeysetPage}</code>; <code>null</code> if
+     *                   there is none
+     */
+    SharedResponse(int status, byte[] body, String nextCursor) {
+        this.status = status;
+        this.body = body;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @param gson    the instance for serializing the message
+     * @param status  the status of the response
+     * @param message the message telling the error
+     * @return the response containing the message like
+     * <code>context.json(new String[]{message})</code>
+     */
+    static SharedResponse ofMessage(Gson gson, int status, String message) {
+        return new SharedResponse(status, gson.toJson(new String[]{message}).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the marker of a response that was streamed to the client of the
+     * request producing it instead of being shared
+     */
+    static SharedResponse streamed() {
+        return STREAMED;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return <code>true</code> if the response was sent to the client of the
+     * request producing it already and cannot be sent to others
+     */
+    boolean isStreamed() {
+        return this == STREAMED;
+    }
+
+    void writeTo(Context context) {
+        context.status(status);
+        if (nextCursor != null) {
+            context.header(StringNames.nextCursor, nextCursor);
+        }
+        context.contentType("application/json");
+        context.result(body);
+    }
+
+}
@@ -0,0 +1,139 @@
+package rest_server;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical calls that run at the same time (single-flight). <br>
+ * <br>
+ * The first call for a key is executed; every call for the same key that
+ * arrives while it is still running waits for it and gets the same result (or
+ * exception) instead of executing again. Results are not kept after the call
+ * finished, so this is no cache: a call arriving afterwards is executed again.
+ * <br>
+ * Exceptions that concern only the executed call, e.g. because its own
+ * deadline passed, are not passed to the waiting calls; these are executed by
+ * themselves instead.
+ *
+ * @param <T> the type of the results
+ */
+final class SingleFlight<T> {
+
+    private final Predicate<RuntimeException> ownFailure;
+    private final Map<String, CompletableFuture<T>> flights = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    SingleFlight() {
+        this(e -> false);
+    }
+
+    /**
+     * @param ownFailure tells which exceptions of an executed call concern only
+     *                   this call, so that the calls waiting for it are
+     *                   executed by themselves instead of getting the exception
+     */
+    SingleFlight(Predicate<RuntimeException> ownFailure) {
+        this.ownFailure = ownFailure;
+    }
+
+    /**
+     * Executes the call, unless a call for the same key is running already.
+     *
+     * @param key  identifies calls with the same result
+     * @param call the call to execute
+     * @return the result of this call or of the running call for the same key
+     */
+    T execute(String key, Supplier<T> call) {
+        return execute(key, call, -1);
+    }
+
+    /**
+     * Executes the call, unless a call for the same key is running already, in
+     * which case this call waits for it at most the given time.
+     *
+     * @param key           identifies calls with the same result
+     * @param call          the call to execute
+     * @param maxWaitMillis the longest time to wait for a running call;
+     *                      negative to wait until it finished
+     * @return the result of this call or of the running call for the same key;
+     * <code>null</code> if the running call did not finish in time
+     */
+    T execute(String key, Supplier<T> call, long maxWaitMillis) {
+        CompletableFuture<T> flight = new CompletableFuture<>();
+        CompletableFuture<T> running = flights.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            return await(running, call, maxWaitMillis);
+        }
+
+        executions.increment();
+        try {
+            T result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return the amount of calls that were executed
+     */
+    long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * @return the amount of calls that got the result of another call instead
+     * of being executed
+     */
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the amount of calls that are running right now
+     */
+    int getInFlight() {
+        return flights.size();
+    }
+
+    private T await(CompletableFuture<T> running, Supplier<T> call, long maxWaitMillis) {
+        Throwable cause;
+        try {
+            return maxWaitMillis < 0 ? running.get() : running.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            cause = e.getCause();
+        }
+        // rethrow the original exception of the executed call, unless it concerns only that call
+        if (cause instanceof RuntimeException) {
+            if (ownFailure.test((RuntimeException) cause)) {
+                executions.increment();
+                return call.get();
+            }
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new CompletionException(cause);
+    }
+
+}
@@ -0,0 +1,91 @@
+package rest_server;
+
+import model.TableChangeListener;
+
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the changes of every table made through the
+ * <code>DatabaseConnector</code>, to derive strong ETags for responses that
+ * are read from these tables. <br>
+ * <br>
+ * As long as none of the tables of a response changed, the response is the same
+ * and its ETag stays the same, so the server can answer a conditional request
+ * with <code>304 Not Modified</code> without querying the database at all. The
+ * ETag also contains an epoch that is new on every start of the server, because
+ * the counters start over at zero. <br>
+ * <br>
+ * Changes made to the database by other programs are not noticed.
+ */
+final class TableVersions implements TableChangeListener {
+
+    private final String epoch;
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    TableVersions() {
+        this.epoch = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    @Override
+    public void tableChanged(String table, Change change) {
+        versionOf(table).incrementAndGet();
+    }
+
+    /**
+     * @param table the name of the table
+     * @return the amount of changes of the table since the server was started
+     */
+    long getVersion(String table) {
+        return versionOf(table).get();
+    }
+
+    /**
+     * Builds the ETag of a response read from the given tables. It has to be taken
+     * before the tables are read, so that a change made while reading leads to a
+     * new ETag for the next request.
+     *
+     * @param tables the names of the tables the response is read from
+     * @return the ETag including the quotes
+     */
+    String etagOf(String... tables) {
+        StringBuilder etag = new StringBuilder().append('"').append(epoch);
+        for (String table : tables) {
+            etag.append('-').append(Long.toString(getVersion(table), 36));
+        }
+        return etag.append('"').toString();
+    }
+
+    /**
+     * @param ifNoneMatch the value of the header <code>If-None-Match</code>; can
+     *                    be <code>null</code>
+     * @param etag        the current ETag of the response
+     * @return <code>true</code> if the client has the current response already;
+     * <code>false</code> otherwise
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            // If-None-Match uses the weak comparison, so a weak validator matches as well
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AtomicLong versionOf(String table) {
+        // the connector passes the table names as given, so they are compared case-insensitively
+        return versions.computeIfAbsent(table.toLowerCase(Locale.ROOT), key -> new AtomicLong());
+    }
+
+}
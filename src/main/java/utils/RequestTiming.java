@@ -0,0 +1,188 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lightweight timing context of one request, which records how much time went
+ * to each phase, e.g. authorization, database access and JSON serialization.
+ * <br>
+ * <br>
+ * The context is bound to the thread handling the request: it is started with
+ * <code>{@link #start()}</code> and ended with <code>{@link #finish()}</code>.
+ * In between, the code of the phases calls
+ * <code>{@link #record(String, long)}</code>, which does nothing if the thread
+ * has no context, e.g. in tests or background tasks. Phases can be recorded
+ * several times; durations and calls are summed up. Phases may overlap, e.g.
+ * when reading the rows of a database cursor is part of writing the JSON.
+ * <br>
+ * <br>
+ * The recorded phases are rendered as value of the standard header
+ * <code>Server-Timing</code>, like
+ * <code>auth;dur=0.412, db;dur=3.105;desc="2 calls", total;dur=4.870</code>,
+ * with all durations in milliseconds.
+ */
+public final class RequestTiming {
+
+    public static final String HEADER = "Server-Timing";
+    public static final String AUTH = "auth";
+    public static final String POOL = "pool";
+    public static final String DB = "db";
+    public static final String JSON = "json";
+    public static final String TOTAL = "total";
+
+    private static final ThreadLocal<RequestTiming> current = new ThreadLocal<>();
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final long startNanos = System.nanoTime();
+    // only used by the thread owning the context, so no synchronization is needed
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private long endNanos;
+
+    private RequestTiming() {
+    }
+
+    /**
+     * Starts a new context for the current thread and replaces a context that
+     * was not finished.
+     *
+     * @return the new context
+     */
+    public static RequestTiming start() {
+        RequestTiming timing = new RequestTiming();
+        current.set(timing);
+        return timing;
+    }
+
+    /**
+     * @return the context of the current thread; <code>null</code> if there is
+     * none
+     */
+    public static RequestTiming current() {
+        return current.get();
+    }
+
+    /**
+     * Ends the context of the current thread and removes it from the thread.
+     *
+     * @return the finished context; <code>null</code> if there was none
+     */
+    public static RequestTiming finish() {
+        RequestTiming timing = current.get();
+        if (timing != null) {
+            current.remove();
+            timing.endNanos = System.nanoTime();
+        }
+        return timing;
+    }
+
+    /**
+     * Adds the time since <code>startNanos</code> to the phase of the context of
+     * the current thread, if there is one.
+     *
+     * @param phase      the name of the phase, e.g. <code>{@link #DB}</code>
+     * @param startNanos the start of the phase from <code>System.nanoTime()</code>
+     */
+    public static void record(String phase, long startNanos) {
+        RequestTiming timing = current.get();
+        if (timing != null) {
+            timing.add(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * @param phase the name of the phase
+     * @param nanos the duration to add
+     */
+    public void add(String phase, long nanos) {
+        Phase recorded = phases.computeIfAbsent(phase, key -> new Phase());
+        recorded.nanos += nanos;
+        recorded.calls++;
+    }
+
+    /**
+     * @param phase the name of the phase
+     * @return the summed up duration of the phase in nanoseconds; <code>0</code>
+     * if it was not recorded
+     */
+    public long getNanos(String phase) {
+        Phase recorded = phases.get(phase);
+        return recorded == null ? 0 : recorded.nanos;
+    }
+
+    /**
+     * @param phase the name of the phase
+     * @return how often the phase was recorded
+     */
+    public int getCalls(String phase) {
+        Phase recorded = phases.get(phase);
+        return recorded == null ? 0 : recorded.calls;
+    }
+
+    /**
+     * @return the duration from the start until the context was finished, or
+     * until now if it is still running, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    /**
+     * @return the phases and the total duration as value of the header
+     * <code>Server-Timing</code>
+     */
+    public String toHeaderValue() {
+        StringBuilder sb = new StringBuilder();
+        phases.forEach((name, phase) -> {
+            appendMetric(sb, name, phase.nanos);
+            if (phase.calls > 1) {
+                sb.append(";desc=\"").append(phase.calls).append(" calls\"");
+            }
+            sb.append(", ");
+        });
+        appendMetric(sb, TOTAL, getTotalNanos());
+        return sb.toString();
+    }
+
+    /**
+     * Parses the value of a header <code>Server-Timing</code>. Metrics without
+     * duration are left out.
+     *
+     * @param headerValue the value of the header; can be <code>null</code>
+     * @return the durations in milliseconds by metric name, in the order of the
+     * header
+     */
+    public static Map<String, Double> parseHeaderValue(String headerValue) {
+        Map<String, Double> durations = new LinkedHashMap<>();
+        if (headerValue == null) {
+            return durations;
+        }
+        for (String metric : headerValue.split(",")) {
+            String[] params = metric.split(";");
+            String name = params[0].trim();
+            for (int i = 1; i < params.length && !name.isEmpty(); i++) {
+                String param = params[i].trim();
+                if (param.regionMatches(true, 0, "dur=", 0, 4)) {
+                    try {
+                        durations.merge(name, Double.parseDouble(param.substring(4).trim()), Double::sum);
+                    } catch (NumberFormatException e) {
+                        // a malformed duration is ignored like an unknown parameter
+                    }
+                    break;
+                }
+            }
+        }
+        return durations;
+    }
+
+    private static void appendMetric(StringBuilder sb, String name, long nanos) {
+        sb.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI));
+    }
+
+    private static final class Phase {
+        private long nanos;
+        private int calls;
+    }
+
+}
@@ -7,6 +7,16 @@ public class StringNames {
     public static String lastname = "lastname";
     public static String password = "password";
     public static String authorization = "Authorization";
+    public static String bearer = "Bearer";
+    public static String token = "token";
+    public static String etag = "ETag";
+    public static String ifNoneMatch = "If-None-Match";
+    public static String fields = "fields";
+    public static String limit = "limit";
+    public static String after = "after";
+    public static String nextCursor = "X-Next-Cursor";
+    public static String datePlaytimeId = "datePlaytimeId";
+    public static String freeSeats = "freeSeats";
     public static String query1 = "query1";
     public static String query2 = "query2";
 }
@@ -0,0 +1,73 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AsyncDatabaseConnectorTest {
+
+    private static final String[] COLUMNS = {"firstname"};
+    private static final String[] VALUES = {"Karla"};
+
+    @Test
+    public void testResultIsPassedToFuture() throws Exception {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.executeInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS, VALUES)).thenReturn(true);
+
+        try (AsyncDatabaseConnector asyncConn = new AsyncDatabaseConnector(mockDbConn, 2, 10, false)) {
+            assertTrue(asyncConn.executeInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS, VALUES)
+                    .get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testErrorIsPassedToFuture() throws Exception {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.executeInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS, VALUES))
+                .thenThrow(new OutOfMemoryError("Java heap space"));
+
+        try (AsyncDatabaseConnector asyncConn = new AsyncDatabaseConnector(mockDbConn, 1, 10, false)) {
+            CompletableFuture<Boolean> future = asyncConn.executeInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS,
+                    VALUES);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof OutOfMemoryError);
+            assertEquals(0, asyncConn.getActiveQueries());
+        }
+    }
+
+    @Test
+    public void testQueriesBeyondQueueCapacityAreRejected() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.executeInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS, VALUES)).thenAnswer(invocation -> {
+            blocked.await();
+            return true;
+        });
+
+        try (AsyncDatabaseConnector asyncConn = new AsyncDatabaseConnector(mockDbConn, 1, 1, false)) {
+            CompletableFuture<Boolean> running = asyncConn.executeInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS,
+                    VALUES);
+            CompletableFuture<Boolean> queued = asyncConn.executeInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS,
+                    VALUES);
+            CompletableFuture<Boolean> rejected = asyncConn.executeInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS,
+                    VALUES);
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            assertEquals(1, asyncConn.getRejectedQueries());
+
+            blocked.countDown();
+            assertTrue(running.get(5, TimeUnit.SECONDS));
+            assertTrue(queued.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+}
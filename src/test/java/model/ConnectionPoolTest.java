@@ -0,0 +1,136 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class ConnectionPoolTest {
+
+    // every connection opened by the pool under test, in order
+    private final List<Connection> opened = new ArrayList<>();
+
+    private ConnectionPool createPool(int maxSize, long acquireTimeoutMillis) {
+        return new ConnectionPool(() -> {
+            Connection connection = mock(Connection.class);
+            when(connection.getAutoCommit()).thenReturn(true);
+            when(connection.isValid(anyInt())).thenReturn(true);
+            opened.add(connection);
+            return connection;
+        }, 0, maxSize, acquireTimeoutMillis, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 0);
+    }
+
+    @Test
+    public void testBorrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        ConnectionPool pool = createPool(2, 50);
+        try {
+            PooledConnection first = pool.borrow();
+            pool.borrow();
+            assertEquals(2, pool.getActiveConnections());
+
+            long start = System.nanoTime();
+            assertThrows(SQLTransientConnectionException.class, pool::borrow);
+            assertTrue(System.nanoTime() - start >= 50_000_000L);
+            assertEquals(1, pool.getAcquireTimeouts());
+            assertEquals(2, opened.size());
+
+            // a released connection is handed out again instead of opening a new one
+            pool.release(first);
+            assertSame(first, pool.borrow());
+            assertEquals(2, pool.getTotalConnections());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testWaitingBorrowGetsReleasedConnection() throws Exception {
+        ConnectionPool pool = createPool(1, 5_000);
+        try {
+            PooledConnection held = pool.borrow();
+            Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                pool.release(held);
+            });
+            releaser.start();
+
+            assertSame(held, pool.borrow());
+            releaser.join();
+            assertEquals(0, pool.getAcquireTimeouts());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testInvalidIdleConnectionIsReplacedOnBorrow() throws Exception {
+        ConnectionPool pool = createPool(2, 50);
+        try {
+            PooledConnection conn = pool.borrow();
+            pool.release(conn);
+            // recently used connections are handed out without validation
+            assertSame(conn, pool.borrow());
+            verify(opened.get(0), never()).isValid(anyInt());
+            pool.release(conn);
+
+            // the connection dies while it is idle for longer than the validation interval
+            when(opened.get(0).isValid(anyInt())).thenReturn(false);
+            Thread.sleep(600);
+            PooledConnection replacement = pool.borrow();
+
+            assertNotSame(conn, replacement);
+            verify(opened.get(0)).isValid(anyInt());
+            verify(opened.get(0)).close();
+            assertEquals(2, opened.size());
+            assertEquals(1, pool.getTotalConnections());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testBrokenConnectionIsDiscardedOnRelease() throws SQLException {
+        ConnectionPool pool = createPool(1, 50);
+        try {
+            PooledConnection conn = pool.borrow();
+            conn.markBroken();
+            pool.release(conn);
+            pool.release(conn);
+
+            verify(opened.get(0)).close();
+            assertEquals(0, pool.getTotalConnections());
+            assertEquals(0, pool.getIdleConnections());
+            assertNotSame(conn, pool.borrow());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testFailedOpenFreesThePermit() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(() -> {
+            throw new SQLNonTransientConnectionException("Connection refused", "08001");
+        }, 0, 1, 50, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 0);
+        try {
+            assertThrows(SQLNonTransientConnectionException.class, pool::borrow);
+            // the permit was given back, so the next borrow fails the same way instead of timing out
+            assertThrows(SQLNonTransientConnectionException.class, pool::borrow);
+            assertEquals(0, pool.getAcquireTimeouts());
+        } finally {
+            pool.close();
+        }
+    }
+
+}
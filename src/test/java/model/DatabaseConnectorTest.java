@@ -0,0 +1,270 @@
+package model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class DatabaseConnectorTest {
+
+    private static final String[] COLUMNS = {"id", "firstname"};
+
+    private final Connection connection = mock(Connection.class);
+    private final PreparedStatement stmt = mock(PreparedStatement.class);
+    private final ConnectionPool pool = new ConnectionPool(() -> connection, 0, 1, 1_000,
+            ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 0);
+    private final DatabaseConnector dbConnector = new DatabaseConnector(pool);
+    private final AtomicBoolean autoCommit = new AtomicBoolean(true);
+
+    public DatabaseConnectorTest() throws SQLException {
+        when(connection.getAutoCommit()).thenAnswer(invocation -> autoCommit.get());
+        doAnswer(invocation -> {
+            autoCommit.set(invocation.getArgument(0));
+            return null;
+        }).when(connection).setAutoCommit(anyBoolean());
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenReturn(stmt);
+        when(stmt.executeQuery()).thenAnswer(invocation -> FakeResultSet.create(COLUMNS,
+                new Object[][]{{1, "Karla"}, {2, "Ted"}}));
+    }
+
+    @AfterEach
+    public void closePool() {
+        pool.close();
+    }
+
+    @Test
+    public void testConditionIsNotRewritten() throws SQLException {
+        String condition = "firstname LIKE '%  a'\tAND id > ?";
+        List<Map<String, Object>> result = dbConnector.executeSelectQuery(COLUMNS,
+                new String[]{DatabaseConnector.CUSTOMERS}, null, condition, new String[]{"0"});
+
+        assertEquals(2, result.size());
+        verify(connection).prepareStatement("SELECT id, firstname FROM customers WHERE " + condition);
+        verify(stmt).setString(1, "0");
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    public void testCursorReleasesConnectionOnClose() throws SQLException {
+        try (QueryCursor cursor = openCursor()) {
+            assertEquals(1, pool.getActiveConnections());
+            assertEquals("Karla", cursor.next().get("firstname"));
+        }
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(1, pool.getIdleConnections());
+        verify(stmt).setFetchSize(DatabaseConnector.DEFAULT_FETCH_SIZE);
+        verify(stmt).setFetchSize(0);
+    }
+
+    @Test
+    public void testCursorReleasesConnectionAfterLastRow() {
+        QueryCursor cursor = openCursor();
+        assertEquals(2, iterate(cursor));
+        assertEquals(0, pool.getActiveConnections());
+        assertFalse(cursor.hasNext());
+        cursor.close();
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    public void testCursorReleasesConnectionOnError() throws SQLException {
+        ResultSet result = mock(ResultSet.class, RETURNS_DEEP_STUBS);
+        when(result.getMetaData().getColumnCount()).thenReturn(0);
+        when(result.next()).thenReturn(true).thenThrow(new SQLException("Connection reset", "08S01"));
+        when(stmt.executeQuery()).thenReturn(result);
+
+        QueryCursor cursor = openCursor();
+        assertTrue(cursor.hasNext());
+        cursor.next();
+        assertThrows(IllegalStateException.class, cursor::hasNext);
+        assertEquals(0, pool.getActiveConnections());
+        verify(result).close();
+        assertEquals(1, dbConnector.getQueryStatistics().getStatements().get("SELECT id, firstname FROM customers")
+                .getErrors());
+
+        cursor.close();
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    public void testTimingIsReportedOncePerAccess() {
+        List<DatabaseTimingListener.Phase> phases = new ArrayList<>();
+        DatabaseTimingListener listener = (phase, nanos) -> phases.add(phase);
+        dbConnector.addTimingListener(listener);
+
+        dbConnector.executeSelectQuery(COLUMNS, new String[]{DatabaseConnector.CUSTOMERS}, null, null, null);
+        assertEquals(List.of(DatabaseTimingListener.Phase.POOL, DatabaseTimingListener.Phase.DB), phases);
+
+        // the cursor reports its database time when it is closed
+        phases.clear();
+        QueryCursor cursor = openCursor();
+        assertEquals(List.of(DatabaseTimingListener.Phase.POOL), phases);
+        assertEquals(2, iterate(cursor));
+        cursor.close();
+        assertEquals(List.of(DatabaseTimingListener.Phase.POOL, DatabaseTimingListener.Phase.DB), phases);
+
+        dbConnector.removeTimingListener(listener);
+        phases.clear();
+        dbConnector.executeSelectQuery(COLUMNS, new String[]{DatabaseConnector.CUSTOMERS}, null, null, null);
+        assertTrue(phases.isEmpty());
+    }
+
+    @Test
+    public void testCursorIsRecordedInStatistics() {
+        QueryCursor cursor = openCursor();
+        assertTrue(dbConnector.getQueryStatistics().getStatements().isEmpty());
+        assertEquals(2, iterate(cursor));
+
+        QueryStatistics.StatementStatistics stats = dbConnector.getQueryStatistics().getStatements()
+                .get("SELECT id, firstname FROM customers");
+        assertEquals(1, stats.getCount());
+        assertEquals(2, stats.getRows());
+        // two numbers and the names "Karla" and "Ted"
+        assertEquals(2 * 8 + 2 * 8, stats.getBytes());
+        assertEquals(0, stats.getErrors());
+    }
+
+    @Test
+    public void testFailedPageCursorIsRecordedInStatistics() throws SQLException {
+        when(stmt.executeQuery()).thenThrow(new SQLException("Unknown column 'id'", "42S22"));
+
+        assertNull(dbConnector.openSelectPageCursor(COLUMNS, new String[]{DatabaseConnector.CUSTOMERS}, null, null,
+                null, "id", DatabaseConnector.FIRST_PAGE, 10));
+
+        QueryStatistics.StatementStatistics stats = dbConnector.getQueryStatistics().getStatements()
+                .get("SELECT id, firstname FROM customers WHERE id > ? ORDER BY id LIMIT ?");
+        assertEquals(0, stats.getCount());
+        assertEquals(1, stats.getErrors());
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    public void testConnectionIsReleasedIfCursorCannotBeOpened() throws SQLException {
+        when(stmt.executeQuery()).thenThrow(new SQLException("Connection reset", "08S01"));
+
+        assertNull(openCursor());
+        assertEquals(0, pool.getActiveConnections());
+        // the broken connection is not handed out again
+        assertEquals(0, pool.getTotalConnections());
+        verify(connection).close();
+    }
+
+    @Test
+    public void testFailedBatchInsertIsRolledBack() throws SQLException {
+        when(connection.prepareStatement(anyString(), eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(stmt);
+        when(stmt.getGeneratedKeys()).thenAnswer(invocation -> FakeResultSet.create(new String[]{"id"},
+                new Object[][]{{1}}));
+        // the second chunk of the batch violates the primary key
+        when(stmt.executeBatch()).thenReturn(new int[DatabaseConnector.INSERT_BATCH_SIZE])
+                .thenThrow(new BatchUpdateException("Duplicate entry", "23000", 1062, new int[0]));
+        List<String> changedTables = new ArrayList<>();
+        dbConnector.addTableChangeListener((table, change) -> changedTables.add(table));
+        // the pool rolls back open transactions on release as well, so check that the connector did it before
+        List<Integer> activeOnRollback = new ArrayList<>();
+        doAnswer(invocation -> activeOnRollback.add(pool.getActiveConnections())).when(connection).rollback();
+
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < DatabaseConnector.INSERT_BATCH_SIZE + 1; i++) {
+            rows.add(new String[]{String.valueOf(i), "Karla"});
+        }
+        assertNull(dbConnector.executeBatchInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS, rows));
+
+        verify(stmt, times(2)).executeBatch();
+        assertEquals(1, activeOnRollback.get(0));
+        verify(connection, never()).commit();
+        assertTrue(changedTables.isEmpty());
+        // the connection is reset and reused, since only the statement failed
+        assertTrue(autoCommit.get());
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    public void testBatchInsertIsCommitted() throws SQLException {
+        when(connection.prepareStatement(anyString(), eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(stmt);
+        when(stmt.getGeneratedKeys()).thenAnswer(invocation -> FakeResultSet.create(new String[]{"id"},
+                new Object[][]{{7}, {8}}));
+        List<String> changedTables = new ArrayList<>();
+        dbConnector.addTableChangeListener((table, change) -> changedTables.add(table));
+
+        List<Integer> ids = dbConnector.executeBatchInsertQuery(DatabaseConnector.CUSTOMERS, COLUMNS,
+                List.of(new String[]{"7", "Karla"}, new String[]{"8", "Ted"}));
+
+        assertEquals(List.of(7, 8), ids);
+        verify(stmt, times(2)).addBatch();
+        verify(connection).commit();
+        assertEquals(List.of(DatabaseConnector.CUSTOMERS), changedTables);
+        assertTrue(autoCommit.get());
+    }
+
+    @Test
+    public void testDeadlockedTransactionIsRetried() throws SQLException {
+        assertEquals("done", runFailingTransaction(new SQLException("Deadlock found", "HY000", 1213), 2));
+        verify(connection, times(1)).commit();
+        verify(connection, atLeastOnce()).rollback();
+    }
+
+    @Test
+    public void testTransactionIsRetriedAfterLockWaitTimeout() throws SQLException {
+        AtomicInteger attempts = new AtomicInteger();
+        assertNull(dbConnector.executeInTransaction(tx -> {
+            attempts.incrementAndGet();
+            throw new SQLException("Lock wait timeout exceeded", "HY000", 1205);
+        }));
+        assertEquals(DatabaseConnector.MAX_TRANSACTION_ATTEMPTS, attempts.get());
+        verify(connection, never()).commit();
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    public void testOtherErrorsAreNotRetried() throws SQLException {
+        assertNull(runFailingTransaction(new SQLException("Duplicate entry", "23000", 1062), 1));
+        verify(connection, never()).commit();
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    private String runFailingTransaction(SQLException failure, int expectedAttempts) {
+        AtomicInteger attempts = new AtomicInteger();
+        String result = dbConnector.executeInTransaction(tx -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw failure;
+            }
+            return "done";
+        });
+        assertEquals(expectedAttempts, attempts.get());
+        return result;
+    }
+
+    private QueryCursor openCursor() {
+        return dbConnector.openSelectCursor(COLUMNS, new String[]{DatabaseConnector.CUSTOMERS}, null, null, null,
+                DatabaseConnector.DEFAULT_FETCH_SIZE);
+    }
+
+    private static int iterate(QueryCursor cursor) {
+        int rows = 0;
+        while (cursor.hasNext()) {
+            cursor.next();
+            rows++;
+        }
+        return rows;
+    }
+
+}
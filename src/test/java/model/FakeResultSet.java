@@ -0,0 +1,55 @@
+package model;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+/**
+ * Creates in-memory <code>ResultSet</code> objects for tests and benchmarks, so
+ * that the mapping of query results can be checked without a database.
+ */
+public class FakeResultSet {
+
+    /**
+     * Creates a result with the given columns and rows. Only the methods used for
+     * mapping results are supported (next, getObject, getInt, getMetaData, close).
+     *
+     * @param columns the column labels
+     * @param rows    the rows; each row contains one value per column
+     * @return the result
+     */
+    public static ResultSet create(String[] columns, Object[][] rows) {
+        ResultSetMetaData meta = (ResultSetMetaData) Proxy.newProxyInstance(FakeResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return columns.length;
+                        case "getColumnLabel":
+                        case "getColumnName":
+                            return columns[(int) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        int[] cursor = {-1};
+        return (ResultSet) Proxy.newProxyInstance(FakeResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return ++cursor[0] < rows.length;
+                        case "getObject":
+                            return rows[cursor[0]][(int) args[0] - 1];
+                        case "getInt":
+                            return ((Number) rows[cursor[0]][(int) args[0] - 1]).intValue();
+                        case "getMetaData":
+                            return meta;
+                        case "close":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,94 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryCacheTest {
+
+    private static final String SQL = "SELECT * FROM movies WHERE id = ?";
+    private static final String[] TABLES = {"movies"};
+
+    private static List<Map<String, Object>> result(Object id) {
+        ResultTable table = new ResultTable(new String[]{"id"});
+        table.addRow(id);
+        return table;
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        QueryCache cache = new QueryCache(10, 60_000);
+        List<Map<String, Object>> result = result(1);
+
+        assertNull(cache.get(SQL, new String[]{"1"}));
+        cache.put(SQL, new String[]{"1"}, TABLES, result, cache.stamp());
+
+        assertSame(result, cache.get(SQL, new String[]{"1"}));
+        assertNull(cache.get(SQL, new String[]{"2"}));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidationByTable() {
+        QueryCache cache = new QueryCache(10, 60_000);
+        cache.put(SQL, new String[]{"1"}, TABLES, result(1), cache.stamp());
+        cache.put("SELECT * FROM cinemas", null, new String[]{"cinemas"}, result(2), cache.stamp());
+
+        cache.invalidate("MOVIES");
+
+        assertNull(cache.get(SQL, new String[]{"1"}));
+        assertNotNull(cache.get("SELECT * FROM cinemas", null));
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    public void testResultReadBeforeChangeIsNotCached() {
+        QueryCache cache = new QueryCache(10, 60_000);
+        long stamp = cache.stamp();
+        cache.invalidate("movies");
+
+        cache.put(SQL, new String[]{"1"}, TABLES, result(1), stamp);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSizeEviction() {
+        QueryCache cache = new QueryCache(2, 60_000);
+        cache.put(SQL, new String[]{"1"}, TABLES, result(1), cache.stamp());
+        cache.put(SQL, new String[]{"2"}, TABLES, result(2), cache.stamp());
+        // touch the first entry, so that the second one is the least recently used
+        cache.get(SQL, new String[]{"1"});
+        cache.put(SQL, new String[]{"3"}, TABLES, result(3), cache.stamp());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(SQL, new String[]{"1"}));
+        assertNull(cache.get(SQL, new String[]{"2"}));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testTtlEviction() throws InterruptedException {
+        QueryCache cache = new QueryCache(10, 1);
+        cache.put(SQL, new String[]{"1"}, TABLES, result(1), cache.stamp());
+        Thread.sleep(5);
+
+        assertNull(cache.get(SQL, new String[]{"1"}));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testArgumentsAreCopied() {
+        QueryCache cache = new QueryCache(10, 60_000);
+        String[] args = {"1"};
+        cache.put(SQL, args, TABLES, result(1), cache.stamp());
+        args[0] = "2";
+
+        assertNotNull(cache.get(SQL, new String[]{"1"}));
+    }
+
+}
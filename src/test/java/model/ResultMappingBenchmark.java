@@ -0,0 +1,90 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput and allocation rate of mapping query results to one
+ * <code>HashMap</code> per row ({@link DatabaseConnector#map}) with mapping them
+ * to a {@link ResultTable} ({@link DatabaseConnector#mapCompact}). The rows look
+ * like rows of the customers table. <br>
+ * <br>
+ * Run with <code>mvn test-compile</code> and then the main method of this class
+ * (test classpath); the GC profiler reports the allocation rate as
+ * <code>gc.alloc.rate.norm</code> (bytes per operation).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultMappingBenchmark {
+
+    private static final String[] COLUMNS = {"id", "firstName", "lastName", "email", "password", "created"};
+
+    @Param({"10", "1000"})
+    private int rowCount;
+
+    private Object[][] rows;
+    private DatabaseConnector dbConnector;
+
+    @Setup
+    public void setUp() {
+        rows = new Object[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = new Object[]{i + 1, "Firstname" + i, "Lastname" + i, "customer" + i + "@web.de",
+                    "password" + i, new Timestamp(1_600_000_000_000L + i)};
+        }
+        // no connection is opened for a minimum pool size of 0
+        dbConnector = new DatabaseConnector("reservation_system", 0, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dbConnector.close();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> mapToHashMaps() {
+        return dbConnector.map(FakeResultSet.create(COLUMNS, rows));
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> mapToResultTable() {
+        return dbConnector.mapCompact(FakeResultSet.create(COLUMNS, rows));
+    }
+
+    @Benchmark
+    public void mapToHashMapsAndRead(Blackhole blackhole) {
+        for (Map<String, Object> row : dbConnector.map(FakeResultSet.create(COLUMNS, rows))) {
+            blackhole.consume(row.get("email"));
+        }
+    }
+
+    @Benchmark
+    public void mapToResultTableAndRead(Blackhole blackhole) {
+        for (Map<String, Object> row : dbConnector.mapCompact(FakeResultSet.create(COLUMNS, rows))) {
+            blackhole.consume(row.get("email"));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ResultMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
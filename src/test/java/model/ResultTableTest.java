@@ -0,0 +1,75 @@
+package model;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultTableTest {
+
+    private static final String[] COLUMNS = {"id", "firstName", "price", "created"};
+    private static final Object[][] ROWS = {
+            {1, "Karla", new BigDecimal("12.50"), new Timestamp(0)},
+            {2, "Ted", null, new Timestamp(1000)}
+    };
+
+    @Test
+    public void testRowsBehaveLikeMaps() throws SQLException {
+        ResultTable table = ResultTable.from(FakeResultSet.create(COLUMNS, ROWS));
+
+        assertEquals(2, table.size());
+        assertEquals(1, table.get(0).get("id"));
+        assertEquals("Ted", table.get(1).get("firstName"));
+        assertNull(table.get(1).get("price"));
+        assertTrue(table.get(1).containsKey("price"));
+        assertNull(table.get(0).get("unknown"));
+        assertFalse(table.get(0).containsKey("unknown"));
+
+        Map<String, Object> expected = new HashMap<>();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            expected.put(COLUMNS[i], ROWS[0][i]);
+        }
+        assertEquals(expected, table.get(0));
+        assertEquals(expected.hashCode(), table.get(0).hashCode());
+    }
+
+    @Test
+    public void testSameJsonAsHashMaps() throws SQLException {
+        // no connection is opened for a minimum pool size of 0
+        DatabaseConnector dbConnector = new DatabaseConnector("reservation_system", 0, 1);
+        List<Map<String, Object>> maps = dbConnector.map(FakeResultSet.create(COLUMNS, ROWS));
+        dbConnector.close();
+        ResultTable table = ResultTable.from(FakeResultSet.create(COLUMNS, ROWS));
+
+        Gson gson = new Gson();
+        assertEquals(gson.toJsonTree(maps), gson.toJsonTree(table));
+    }
+
+    @Test
+    public void testDuplicateColumnLabels() {
+        ResultTable table = new ResultTable(new String[]{"id", "id"});
+        table.addRow(1, 2);
+
+        assertEquals(1, table.get(0).size());
+        assertEquals(2, table.get(0).get("id"));
+        assertEquals(1, table.get(0).entrySet().size());
+        assertEquals(2, table.getValue(0, 1));
+    }
+
+    @Test
+    public void testReadOnly() throws SQLException {
+        ResultTable table = ResultTable.from(FakeResultSet.create(COLUMNS, ROWS));
+
+        assertThrows(UnsupportedOperationException.class, () -> table.get(0).put("id", 3));
+        assertThrows(UnsupportedOperationException.class, () -> table.remove(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> table.get(2));
+    }
+
+}
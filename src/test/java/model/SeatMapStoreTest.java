@@ -0,0 +1,121 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class SeatMapStoreTest {
+
+    private static final int PLAYTIME = 7;
+
+    private DatabaseConnector dbConnector;
+    private TableChangeListener listener;
+    private SeatMapStore store;
+
+    @BeforeEach
+    public void setUp() {
+        dbConnector = mock(DatabaseConnector.class);
+        // seat 3 is sold already
+        when(dbConnector.executeSelectQuery(any(), any(), any(), anyString(), eq(new String[]{"7"})))
+                .thenReturn(List.of(Map.of(SeatMapStore.SEAT, 3)));
+        store = new SeatMapStore(dbConnector);
+        ArgumentCaptor<TableChangeListener> captor = ArgumentCaptor.forClass(TableChangeListener.class);
+        verify(dbConnector).addTableChangeListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    @Test
+    public void testClaimIsPersisted() {
+        SeatMap seatMap = store.getSeatMap(PLAYTIME, 2, 10);
+        assertFalse(seatMap.isFree(3));
+        when(dbConnector.executeBatchInsertQuery(eq(DatabaseConnector.SEAT_RESERVATIONS), any(), anyList()))
+                .thenReturn(List.of(1, 1));
+
+        assertTrue(store.claim(PLAYTIME, 42, 4, 5));
+        assertFalse(seatMap.isFree(4));
+        assertFalse(seatMap.isFree(5));
+        // the seat map of the playtime is read only once
+        assertSame(seatMap, store.getSeatMap(PLAYTIME, 2, 10));
+        verify(dbConnector, times(1)).executeSelectQuery(any(), any(), any(), anyString(), any());
+
+        // taken and non-existent seats are not claimed and not persisted
+        assertFalse(store.claim(PLAYTIME, 43, 3, 6));
+        assertFalse(store.claim(PLAYTIME, 43, 20));
+        assertTrue(seatMap.isFree(6));
+        verify(dbConnector, times(1)).executeBatchInsertQuery(any(), any(), anyList());
+    }
+
+    @Test
+    public void testFailedInsertReleasesClaim() {
+        SeatMap seatMap = store.getSeatMap(PLAYTIME, 2, 10);
+        when(dbConnector.executeBatchInsertQuery(eq(DatabaseConnector.SEAT_RESERVATIONS), any(), anyList()))
+                .thenReturn(null);
+
+        assertFalse(store.claim(PLAYTIME, 42, 4, 5));
+
+        assertTrue(seatMap.isFree(4));
+        assertTrue(seatMap.isFree(5));
+        assertEquals(19, seatMap.countFree());
+    }
+
+    @Test
+    public void testReleaseSkipsSeatsOutsideOfHall() throws Exception {
+        SeatMap seatMap = store.getSeatMap(PLAYTIME, 2, 10);
+        Transaction tx = mock(Transaction.class);
+        // seat 25 was sold before the hall got smaller
+        when(tx.executeSelectForUpdateQuery(any(), any(), any(), anyString(), any()))
+                .thenReturn(List.of(Map.of(SeatMapStore.SEAT, 3), Map.of(SeatMapStore.SEAT, 25)));
+        when(dbConnector.executeInTransaction(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).execute(tx));
+
+        assertArrayEquals(new int[]{3, 25}, store.release(PLAYTIME, 42));
+
+        assertEquals(20, seatMap.countFree());
+        verify(tx).executeDeleteQuery(eq(DatabaseConnector.SEAT_RESERVATIONS), anyString(),
+                eq(new String[]{"7", "42"}));
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+        when(dbConnector.executeSelectQuery(any(), any(), any(), anyString(), eq(new String[]{"8"})))
+                .thenReturn(null)
+                .thenReturn(List.of());
+
+        assertNull(store.getSeatMap(8, 2, 10));
+        assertNull(store.getSeatMap(8));
+        assertEquals(20, store.getSeatMap(8, 2, 10).countFree());
+    }
+
+    @Test
+    public void testOtherChangesEvictSeatMaps() {
+        store.getSeatMap(PLAYTIME, 2, 10);
+        // the connector notifies about the own insert on the same thread
+        when(dbConnector.executeBatchInsertQuery(eq(DatabaseConnector.SEAT_RESERVATIONS), any(), anyList()))
+                .thenAnswer(invocation -> {
+                    listener.tableChanged(DatabaseConnector.SEAT_RESERVATIONS, TableChangeListener.Change.INSERT);
+                    return List.of(1);
+                });
+
+        assertTrue(store.claim(PLAYTIME, 42, 4));
+        assertNotNull(store.getSeatMap(PLAYTIME));
+
+        listener.tableChanged(DatabaseConnector.RESERVATIONS, TableChangeListener.Change.DELETE);
+        assertNotNull(store.getSeatMap(PLAYTIME));
+        listener.tableChanged(DatabaseConnector.SEAT_RESERVATIONS, TableChangeListener.Change.DELETE);
+        assertNull(store.getSeatMap(PLAYTIME));
+
+        store.close();
+        verify(dbConnector).removeTableChangeListener(listener);
+    }
+
+}
@@ -0,0 +1,139 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SeatMapTest {
+
+    @Test
+    public void testClaimAndReleaseBlock() {
+        SeatMap seatMap = new SeatMap(20, 30);
+        assertEquals(600, seatMap.getCapacity());
+        assertEquals(600, seatMap.countFree());
+
+        // the block crosses the border between the first and second word
+        assertTrue(seatMap.claimBlock(60, 10));
+        assertFalse(seatMap.isFree(60));
+        assertFalse(seatMap.isFree(69));
+        assertTrue(seatMap.isFree(59));
+        assertTrue(seatMap.isFree(70));
+        assertFalse(seatMap.isBlockFree(50, 11));
+        assertTrue(seatMap.isBlockFree(0, 60));
+        assertEquals(590, seatMap.countFree());
+
+        seatMap.releaseBlock(60, 10);
+        assertEquals(600, seatMap.countFree());
+        assertTrue(seatMap.isBlockFree(0, 600));
+    }
+
+    @Test
+    public void testFailedClaimIsRolledBack() {
+        SeatMap seatMap = new SeatMap(10, 100);
+        assertTrue(seatMap.claim(300));
+
+        assertFalse(seatMap.claimBlock(100, 250));
+        assertEquals(999, seatMap.countFree());
+        assertTrue(seatMap.isBlockFree(100, 200));
+
+        assertFalse(seatMap.claim(5, 70, 300, 900));
+        assertEquals(999, seatMap.countFree());
+        assertTrue(seatMap.isFree(5));
+        assertTrue(seatMap.isFree(70));
+        assertTrue(seatMap.isFree(900));
+    }
+
+    @Test
+    public void testClaimSingleSeats() {
+        SeatMap seatMap = new SeatMap(3, 10);
+        int seat = seatMap.seatIndex(2, 4);
+        assertEquals(24, seat);
+
+        assertTrue(seatMap.claim(seat, 0, 29));
+        assertFalse(seatMap.claim(seat));
+        assertEquals(27, seatMap.countFree());
+        assertEquals(3, Long.bitCount(seatMap.toLongArray()[0]));
+
+        seatMap.release(seat, 0);
+        assertTrue(seatMap.isFree(seat));
+        assertFalse(seatMap.isFree(29));
+    }
+
+    @Test
+    public void testFindFreeBlock() {
+        SeatMap seatMap = new SeatMap(3, 10);
+        assertTrue(seatMap.claimBlock(3, 1));
+        assertTrue(seatMap.claimBlock(12, 7));
+
+        // the block does not fit before the taken seat, and blocks do not span rows
+        assertEquals(4, seatMap.findFreeBlock(4));
+        assertEquals(20, seatMap.findFreeBlock(7));
+        assertEquals(20, seatMap.findFreeBlock(10));
+        assertEquals(-1, seatMap.findFreeBlock(11));
+
+        assertTrue(seatMap.claimBlock(20, 10));
+        assertEquals(-1, seatMap.findFreeBlock(7));
+    }
+
+    @Test
+    public void testInvalidSeats() {
+        SeatMap seatMap = new SeatMap(2, 10);
+        assertThrows(IllegalArgumentException.class, () -> seatMap.claimBlock(15, 6));
+        assertThrows(IllegalArgumentException.class, () -> seatMap.claim(20));
+        assertThrows(IllegalArgumentException.class, () -> seatMap.seatIndex(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new SeatMap(0, 10));
+        assertFalse(seatMap.contains(-1));
+        assertEquals(20, seatMap.countFree());
+    }
+
+    @Test
+    public void testConcurrentClaimsNeverOverlap() throws InterruptedException {
+        SeatMap seatMap = new SeatMap(40, 50);
+        AtomicIntegerArray owners = new AtomicIntegerArray(seatMap.getCapacity());
+        AtomicBoolean claimedTwice = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 1; t <= 8; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // the blocks of the threads overlap and cross word borders
+                for (int from = thread; from + 7 <= seatMap.getCapacity(); from += 5) {
+                    if (seatMap.claimBlock(from, 7)) {
+                        for (int seat = from; seat < from + 7; seat++) {
+                            if (!owners.compareAndSet(seat, 0, thread)) {
+                                claimedTwice.set(true);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(claimedTwice.get());
+        int taken = 0;
+        for (int seat = 0; seat < owners.length(); seat++) {
+            assertEquals(owners.get(seat) == 0, seatMap.isFree(seat));
+            if (owners.get(seat) != 0) {
+                taken++;
+            }
+        }
+        assertEquals(seatMap.getCapacity() - taken, seatMap.countFree());
+    }
+
+}
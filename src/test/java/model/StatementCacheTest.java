@@ -0,0 +1,86 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class StatementCacheTest {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Connection connection = mock(Connection.class);
+
+    public StatementCacheTest() throws SQLException {
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> mock(PreparedStatement.class));
+        when(connection.prepareStatement(anyString(), eq(Statement.RETURN_GENERATED_KEYS)))
+                .thenAnswer(invocation -> mock(PreparedStatement.class));
+    }
+
+    @Test
+    public void testStatementIsReused() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 4, hits, misses);
+
+        PreparedStatement stmt = cache.prepare("SELECT * FROM customers", false);
+        assertSame(stmt, cache.prepare("SELECT * FROM customers", false));
+        verify(stmt).clearParameters();
+        verify(connection, times(1)).prepareStatement("SELECT * FROM customers");
+        assertEquals(1, hits.sum());
+        assertEquals(1, misses.sum());
+
+        // statements returning keys are prepared differently
+        assertNotSame(stmt, cache.prepare("SELECT * FROM customers", true));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedStatementIsEvictedAndClosed() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 2, hits, misses);
+        PreparedStatement first = cache.prepare("SELECT 1", false);
+        PreparedStatement second = cache.prepare("SELECT 2", false);
+        // makes the second statement the least recently used one
+        cache.prepare("SELECT 1", false);
+
+        cache.prepare("SELECT 3", false);
+
+        assertEquals(2, cache.size());
+        verify(second).close();
+        verify(first, never()).close();
+        assertSame(first, cache.prepare("SELECT 1", false));
+        assertNotSame(second, cache.prepare("SELECT 2", false));
+        assertEquals(4, misses.sum());
+    }
+
+    @Test
+    public void testClosedStatementIsPreparedAgain() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 2, hits, misses);
+        PreparedStatement stmt = cache.prepare("SELECT 1", false);
+        when(stmt.isClosed()).thenReturn(true);
+
+        assertNotSame(stmt, cache.prepare("SELECT 1", false));
+        assertEquals(2, misses.sum());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testClearClosesAllStatements() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 2, hits, misses);
+        PreparedStatement first = cache.prepare("SELECT 1", false);
+        PreparedStatement second = cache.prepare("SELECT 2", true);
+
+        cache.clear();
+
+        verify(first).close();
+        verify(second).close();
+        assertEquals(0, cache.size());
+    }
+
+}
@@ -0,0 +1,139 @@
+package rest_server;
+
+import model.DatabaseConnector;
+import model.TableChangeListener;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AvailabilityEventHubTest {
+
+    // runs the tasks of the hub only when the test says so, like a busy executor
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Map<Integer, Integer> freeSeats = new HashMap<>();
+    private final AvailabilityEventHub hub = new AvailabilityEventHub(
+            playtimeId -> freeSeats.getOrDefault(playtimeId, -1), tasks::add);
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void testCurrentValueIsSentOnSubscription() {
+        freeSeats.put(1, 5);
+        List<String> events = new ArrayList<>();
+
+        hub.subscribe(1, (event, data) -> events.add(event + " " + data));
+        runTasks();
+
+        assertEquals(List.of("availability {\"datePlaytimeId\":1,\"freeSeats\":5}"), events);
+        assertEquals(1, hub.getSubscribers());
+    }
+
+    @Test
+    public void testSlowSubscriberGetsOnlyLatestValue() {
+        freeSeats.put(1, 5);
+        List<String> events = new ArrayList<>();
+        hub.subscribe(1, (event, data) -> events.add(data));
+        runTasks();
+        events.clear();
+
+        // the subscriber is still busy while the seats change several times
+        hub.publish(1, 4);
+        hub.publish(1, 3);
+        hub.publish(1, 2);
+        runTasks();
+
+        assertEquals(List.of("{\"datePlaytimeId\":1,\"freeSeats\":2}"), events);
+        assertEquals(2, hub.getCoalesced());
+    }
+
+    @Test
+    public void testReservationChangeIsPublished() {
+        freeSeats.put(1, 5);
+        freeSeats.put(2, 8);
+        List<String> events = new ArrayList<>();
+        hub.subscribe(1, (event, data) -> events.add(data));
+        runTasks();
+        events.clear();
+
+        freeSeats.put(1, 3);
+        hub.tableChanged(DatabaseConnector.CUSTOMERS, TableChangeListener.Change.UPDATE);
+        assertTrue(tasks.isEmpty());
+        hub.tableChanged(DatabaseConnector.RESERVATIONS, TableChangeListener.Change.UPDATE);
+        hub.tableChanged(DatabaseConnector.RESERVATIONS, TableChangeListener.Change.UPDATE);
+        runTasks();
+        assertEquals(List.of("{\"datePlaytimeId\":1,\"freeSeats\":3}"), events);
+
+        // unchanged values are not sent again
+        hub.tableChanged(DatabaseConnector.DATE_PLAYTIMES, TableChangeListener.Change.UPDATE);
+        runTasks();
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testUnsubscribedSinkGetsNoEvents() {
+        freeSeats.put(1, 5);
+        List<String> events = new ArrayList<>();
+        AvailabilityEventHub.Subscriber subscriber = hub.subscribe(1, (event, data) -> events.add(data));
+        runTasks();
+        events.clear();
+
+        hub.unsubscribe(subscriber);
+        hub.unsubscribe(subscriber);
+        hub.publish(1, 4);
+        hub.heartbeat();
+        runTasks();
+
+        assertTrue(events.isEmpty());
+        assertEquals(0, hub.getSubscribers());
+    }
+
+    @Test
+    public void testHeartbeatDoesNotReplaceEvent() {
+        freeSeats.put(1, 5);
+        List<String> events = new ArrayList<>();
+        hub.subscribe(1, (event, data) -> events.add(event));
+        runTasks();
+        events.clear();
+
+        hub.heartbeat();
+        runTasks();
+        hub.publish(1, 4);
+        hub.heartbeat();
+        runTasks();
+
+        assertEquals(List.of(AvailabilityEventHub.HEARTBEAT_EVENT, AvailabilityEventHub.EVENT), events);
+        assertEquals(0, hub.getCoalesced());
+    }
+
+    @Test
+    public void testSubscriptionSurvivesConcurrentUnsubscribe() throws InterruptedException {
+        AvailabilityEventHub concurrentHub = new AvailabilityEventHub(playtimeId -> -1, task -> {
+        });
+        for (int i = 0; i < 1_000; i++) {
+            AvailabilityEventHub.Subscriber leaving = concurrentHub.subscribe(1, (event, data) -> {
+            });
+            // the last subscriber leaves, which removes the set of the playtime, while another one joins
+            Thread unsubscriber = new Thread(() -> concurrentHub.unsubscribe(leaving));
+            unsubscriber.start();
+            AvailabilityEventHub.Subscriber joining = concurrentHub.subscribe(1, (event, data) -> {
+            });
+            unsubscriber.join();
+
+            assertEquals(1, concurrentHub.getSubscribers());
+            concurrentHub.unsubscribe(joining);
+        }
+    }
+
+}
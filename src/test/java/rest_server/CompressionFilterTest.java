@@ -0,0 +1,171 @@
+package rest_server;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CompressionFilterTest {
+
+    @Test
+    public void testNegotiate() {
+        assertNull(CompressionFilter.negotiate(null));
+        assertNull(CompressionFilter.negotiate("br, identity"));
+        assertNull(CompressionFilter.negotiate("gzip;q=0"));
+        assertEquals("gzip", CompressionFilter.negotiate("gzip, deflate"));
+        assertEquals("gzip", CompressionFilter.negotiate("deflate, GZIP"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0, deflate;q=0.1"));
+    }
+
+    @Test
+    public void testLargeResponseIsCompressedWithGzip() throws Exception {
+        String body = createRows(200);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        HttpServletResponse response = mockResponse("application/json", sent);
+
+        new CompressionFilter(1024, 6).doFilter(mockRequest("gzip, deflate"), response, writing(body));
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        assertTrue(sent.size() < body.length() / 5, "compressed size " + sent.size());
+        assertEquals(body, decode(new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray()))));
+    }
+
+    @Test
+    public void testLargeResponseIsCompressedWithDeflate() throws Exception {
+        String body = createRows(200);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        HttpServletResponse response = mockResponse("application/json", sent);
+
+        new CompressionFilter(1024, 6).doFilter(mockRequest("deflate"), response, writing(body));
+
+        verify(response).setHeader("Content-Encoding", "deflate");
+        assertEquals(body, decode(new InflaterInputStream(new ByteArrayInputStream(sent.toByteArray()))));
+    }
+
+    @Test
+    public void testSmallResponseIsNotCompressed() throws Exception {
+        String body = createRows(1);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        HttpServletResponse response = mockResponse("application/json", sent);
+
+        new CompressionFilter(1024, 6).doFilter(mockRequest("gzip"), response, writing(body));
+
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        assertEquals(body, sent.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEventStreamIsNotCompressed() throws Exception {
+        String body = createRows(200);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        HttpServletResponse response = mockResponse("text/event-stream", sent);
+
+        new CompressionFilter(1024, 6).doFilter(mockRequest("gzip"), response, writing(body));
+
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        assertEquals(body, sent.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testAsyncResponseIsFinishedOnComplete() throws Exception {
+        String body = createRows(1);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        HttpServletResponse response = mockResponse("application/json", sent);
+        HttpServletRequest request = mockRequest("gzip");
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(request.isAsyncStarted()).thenReturn(true);
+        AsyncContext[] started = new AsyncContext[1];
+        ServletResponse[] wrapped = new ServletResponse[1];
+
+        // like a handler returning a future, the body is written after the filter returned
+        new CompressionFilter(1024, 6).doFilter(request, response, (req, res) -> {
+            started[0] = ((HttpServletRequest) req).startAsync();
+            wrapped[0] = res;
+        });
+        writing(body).doFilter(null, wrapped[0]);
+
+        assertEquals(0, sent.size());
+        started[0].complete();
+        assertEquals(body, sent.toString(StandardCharsets.UTF_8));
+        verify(asyncContext).complete();
+    }
+
+    private static HttpServletRequest mockRequest(String acceptEncoding) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        return request;
+    }
+
+    private static HttpServletResponse mockResponse(String contentType, ByteArrayOutputStream sent)
+            throws IOException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getContentType()).thenReturn(contentType);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                sent.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        return response;
+    }
+
+    /**
+     * @return a handler writing the body in small pieces, like a streamed result
+     */
+    private static FilterChain writing(String body) {
+        return (request, response) -> {
+            ServletOutputStream out = response.getOutputStream();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            for (int offset = 0; offset < bytes.length; offset += 100) {
+                out.write(bytes, offset, Math.min(100, bytes.length - offset));
+            }
+            out.flush();
+        };
+    }
+
+    private static String createRows(int count) {
+        StringBuilder rows = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                rows.append(',');
+            }
+            rows.append("{\"id\":").append(i).append(",\"firstName\":\"Firstname\",\"lastName\":\"Lastname\"}");
+        }
+        return rows.append(']').toString();
+    }
+
+    private static String decode(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -1,14 +1,15 @@
 package rest_server;
 
 import model.DatabaseConnector;
+import model.TableChangeListener;
 
 import java.util.*;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class DataValidationTest {
 
@@ -92,13 +93,13 @@ public class DataValidationTest {
 
     @Test
     public void testIsValidIdFromDatabase() {
-        createAndAssignMockObjectSelectQuery(new String[]{"*"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
+        createAndAssignMockObjectSelectQuery(new String[]{"id"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
                 "id = ?", new String[]{"1"}, true, "key", "value");
 
         assertTrue(dataVal.isValidId(1, DatabaseConnector.CUSTOMERS));
         assertFalse(dataVal.isValidId(10, DatabaseConnector.CUSTOMERS));
 
-        createAndAssignMockObjectSelectQuery(new String[]{"*"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
+        createAndAssignMockObjectSelectQuery(new String[]{"id"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
                 "id = ?", new String[]{"1"}, false, null, null);
 
         assertFalse(dataVal.isValidId(1, DatabaseConnector.CUSTOMERS));
@@ -108,7 +109,7 @@ public class DataValidationTest {
 
     @Test
     public void testIsUserAuthorized() {
-        createAndAssignMockObjectSelectQuery(new String[]{"*"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
+        createAndAssignMockObjectSelectQuery(new String[]{"id"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
                 "id = ? and email = ? and password = ?", new String[]{"1", "email@test.de", "testPassword"},
                 true,"key", "value");
         String authorization = "Basic " + Base64.getEncoder().encodeToString("email@test.de:testPassword".getBytes());
@@ -127,4 +128,65 @@ public class DataValidationTest {
         assertFalse(dataVal.isUserAuthorized(null, "1"));
     }
 
+    @Test
+    public void testIsUserAuthorizedIsCached() {
+        String[] args = new String[]{"1", "email@test.de", "testPassword"};
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.executeSelectQuery(new String[]{"id"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "id = ? and email = ? and password = ?", args))
+                .thenReturn(List.of(Map.of("key", "value")));
+        ArgumentCaptor<TableChangeListener> listener = ArgumentCaptor.forClass(TableChangeListener.class);
+        DataValidation cachingDataVal = new DataValidation(mockDbConn);
+        verify(mockDbConn).addTableChangeListener(listener.capture());
+        String authorization = "Basic " + Base64.getEncoder().encodeToString("email@test.de:testPassword".getBytes());
+
+        // second check is answered from the cache
+        assertTrue(cachingDataVal.isUserAuthorized(authorization, "1"));
+        assertTrue(cachingDataVal.isUserAuthorized(authorization, "1"));
+        verify(mockDbConn, times(1)).executeSelectQuery(any(), any(), any(), any(), eq(args));
+
+        // failed checks are not cached
+        assertFalse(cachingDataVal.isUserAuthorized(authorization, "2"));
+        assertFalse(cachingDataVal.isUserAuthorized(authorization, "2"));
+        verify(mockDbConn, times(2)).executeSelectQuery(any(), any(), any(), any(),
+                eq(new String[]{"2", "email@test.de", "testPassword"}));
+
+        // new customers do not affect verified credentials
+        listener.getValue().tableChanged(DatabaseConnector.CUSTOMERS, TableChangeListener.Change.INSERT);
+        assertTrue(cachingDataVal.isUserAuthorized(authorization, "1"));
+        verify(mockDbConn, times(1)).executeSelectQuery(any(), any(), any(), any(), eq(args));
+
+        // changing customers drops the cache
+        listener.getValue().tableChanged(DatabaseConnector.CUSTOMERS, TableChangeListener.Change.UPDATE);
+        assertTrue(cachingDataVal.isUserAuthorized(authorization, "1"));
+        verify(mockDbConn, times(2)).executeSelectQuery(any(), any(), any(), any(), eq(args));
+    }
+
+    @Test
+    public void testChangedCustomersEndSessions() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        ArgumentCaptor<TableChangeListener> listener = ArgumentCaptor.forClass(TableChangeListener.class);
+        DataValidation sessionDataVal = new DataValidation(mockDbConn);
+        verify(mockDbConn).addTableChangeListener(listener.capture());
+        String token = sessionDataVal.getSessionStore().createSession(1);
+
+        listener.getValue().tableChanged(DatabaseConnector.CUSTOMERS, TableChangeListener.Change.INSERT);
+        listener.getValue().tableChanged(DatabaseConnector.RESERVATIONS, TableChangeListener.Change.DELETE);
+        assertTrue(sessionDataVal.isUserAuthorized("Bearer " + token, "1"));
+
+        listener.getValue().tableChanged(DatabaseConnector.CUSTOMERS, TableChangeListener.Change.DELETE);
+        assertFalse(sessionDataVal.isUserAuthorized("Bearer " + token, "1"));
+    }
+
+    @Test
+    public void testCloseRemovesListener() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        ArgumentCaptor<TableChangeListener> listener = ArgumentCaptor.forClass(TableChangeListener.class);
+        DataValidation closedDataVal = new DataValidation(mockDbConn);
+        verify(mockDbConn).addTableChangeListener(listener.capture());
+
+        closedDataVal.close();
+        verify(mockDbConn).removeTableChangeListener(listener.getValue());
+    }
+
 }
@@ -0,0 +1,129 @@
+package rest_server;
+
+import model.DatabaseConnector;
+import utils.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the throughput and the latency of the {@link RestServer} in the
+ * execution modes <code>PLATFORM</code> and <code>VIRTUAL</code>. <br>
+ * <br>
+ * The database is simulated by a mock that blocks every query for a fixed
+ * time, like a request waiting for MariaDB. Many clients send requests at the
+ * same time, more than Jetty has platform threads, so that in platform mode
+ * requests queue up for a thread while in virtual mode they only wait for a
+ * database permit. <br>
+ * <br>
+ * This is not a unit test; run it with <code>mvn test-compile</code> and then
+ * the main method of this class (test classpath) on Java 21 or later. Optional
+ * arguments: clients, database latency in milliseconds, database permits and
+ * duration in seconds.
+ */
+public class ExecutionModeLoadComparison {
+
+    private static final int PORT = 4570;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        long dbLatencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int dbPermits = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        System.out.printf("%d clients, %d ms database latency, %d database permits, %d s per mode%n",
+                clients, dbLatencyMillis, dbPermits, seconds);
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            run(mode, clients, dbLatencyMillis, dbPermits, seconds);
+        }
+    }
+
+    private static void run(ExecutionMode mode, int clients, long dbLatencyMillis, int dbPermits, int seconds)
+            throws InterruptedException {
+        DatabaseConnector slowDbConnector = mockSlowDatabase(dbLatencyMillis);
+        RestServer restServer = new RestServer(slowDbConnector, new DataValidation(slowDbConnector), PORT, mode,
+                dbPermits);
+        try {
+            // warm up, so that the JIT compiler and the thread pools do not distort the measurement
+            load(clients, Math.max(1, seconds / 3), new LatencyHistogram(), new AtomicLong(), new AtomicLong());
+
+            LatencyHistogram latencies = new LatencyHistogram();
+            AtomicLong succeeded = new AtomicLong();
+            AtomicLong failed = new AtomicLong();
+            load(clients, seconds, latencies, succeeded, failed);
+
+            System.out.printf("%-8s (running %-8s): %8.1f requests/s, p50 %7.1f ms, p99 %7.1f ms, "
+                            + "max %7.1f ms, %d failed%n",
+                    mode, restServer.getExecutionMode(), succeeded.get() / (double) seconds,
+                    latencies.getPercentile(50) / 1e6, latencies.getPercentile(99) / 1e6,
+                    latencies.getMax() / 1e6, failed.get());
+        } finally {
+            restServer.stopServer();
+        }
+    }
+
+    /**
+     * Lets every client send requests one after another for the given time.
+     */
+    private static void load(int clients, int seconds, LatencyHistogram latencies, AtomicLong succeeded,
+                             AtomicLong failed) throws InterruptedException {
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + PORT
+                + "/customers?email=customer@web.de&password=password123")).GET().build();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients);
+        for (int i = 0; i < clients; i++) {
+            clientThreads.execute(() -> {
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 200) {
+                            latencies.record(System.nanoTime() - start);
+                            succeeded.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        clientThreads.shutdown();
+        clientThreads.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+    }
+
+    private static DatabaseConnector mockSlowDatabase(long latencyMillis) {
+        List<Map<String, Object>> customers = new ArrayList<>();
+        Map<String, Object> customer = new HashMap<>();
+        customer.put("id", 1);
+        customer.put("firstName", "Firstname");
+        customer.put("lastName", "Lastname");
+        customer.put("email", "customer@web.de");
+        customers.add(customer);
+
+        DatabaseConnector dbConnector = mock(DatabaseConnector.class);
+        when(dbConnector.executeSelectQuery(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(latencyMillis);
+            return customers;
+        });
+        return dbConnector;
+    }
+
+}
@@ -0,0 +1,113 @@
+package rest_server;
+
+import com.google.gson.Gson;
+import io.javalin.json.JsonMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput and allocation rate of serializing typical responses
+ * with plain Gson (the former <code>JsonMapper</code> of the
+ * {@link RestServer}) and with the {@link RowJsonMapper}. The payloads look like
+ * rows of the customers table, rows of a reservation history and an error
+ * message. <br>
+ * <br>
+ * Run with <code>mvn test-compile</code> and then the main method of this class
+ * (test classpath); the GC profiler reports the allocation rate as
+ * <code>gc.alloc.rate.norm</code> (bytes per operation).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMapperBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int rowCount;
+
+    private Gson gson;
+    private JsonMapper rowMapper;
+    private List<Map<String, Object>> customers;
+    private List<Map<String, Object>> reservations;
+    private String[] message;
+
+    @Setup
+    public void setUp() {
+        gson = new Gson();
+        rowMapper = new RowJsonMapper(gson);
+        customers = new ArrayList<>(rowCount);
+        reservations = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            Map<String, Object> customer = new HashMap<>();
+            customer.put("id", i + 1);
+            customer.put("firstName", "Firstname" + i);
+            customer.put("lastName", "Lastname" + i);
+            customer.put("email", "customer" + i + "@web.de");
+            customers.add(customer);
+
+            Map<String, Object> reservation = new HashMap<>();
+            reservation.put("id", i + 1);
+            reservation.put("customerId", 42);
+            reservation.put("movie", "The Movie Part " + i);
+            reservation.put("cinema", "Cinema Central");
+            reservation.put("playtime", new Timestamp(1_600_000_000_000L + i * 3_600_000L));
+            reservation.put("seats", 1 + i % 4);
+            reservation.put("price", new BigDecimal("9.50").multiply(BigDecimal.valueOf(1 + i % 4)));
+            reservations.add(reservation);
+        }
+        message = new String[]{"User is not authorized to perform this action."};
+    }
+
+    @Benchmark
+    public String customersGson() {
+        return gson.toJson(customers, customers.getClass());
+    }
+
+    @Benchmark
+    public String customersRowMapper() {
+        return rowMapper.toJsonString(customers, customers.getClass());
+    }
+
+    @Benchmark
+    public String reservationsGson() {
+        return gson.toJson(reservations, reservations.getClass());
+    }
+
+    @Benchmark
+    public String reservationsRowMapper() {
+        return rowMapper.toJsonString(reservations, reservations.getClass());
+    }
+
+    @Benchmark
+    public String messageGson() {
+        return gson.toJson(message, message.getClass());
+    }
+
+    @Benchmark
+    public String messageRowMapper() {
+        return rowMapper.toJsonString(message, message.getClass());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JsonMapperBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
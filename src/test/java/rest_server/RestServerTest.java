@@ -4,15 +4,25 @@ import kong.unirest.HttpResponse;
 import kong.unirest.JsonNode;
 import kong.unirest.Unirest;
 import model.DatabaseConnector;
+import model.QueryCursor;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import utils.RequestTiming;
 import utils.StringNames;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RestServerTest {
@@ -210,6 +220,25 @@ public class RestServerTest {
 
     // ---------------------------------- END ----------------------------------
 
+    // selection of the endpoint template without the parameter fields
+    private static final String[] CUSTOMER_FIELDS = {"id", "firstName", "lastName", "email"};
+
+    /**
+     * Creates a mock cursor over the given rows. Unlike fixed return values of
+     * <code>hasNext()</code>, it answers correctly however often the server asks
+     * before reading a row.
+     *
+     * @param rows the rows returned by the cursor
+     * @return the mock cursor
+     */
+    private static QueryCursor mockCursor(List<Map<String, Object>> rows) {
+        Iterator<Map<String, Object>> iterator = rows.iterator();
+        QueryCursor cursor = mock(QueryCursor.class);
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        return cursor;
+    }
+
     /**
      * The implemented endpoints of the class RestServer which should be tested in
      * this class are all highly dependent on the class DatabaseConnector. Therefore,
@@ -275,7 +304,7 @@ public class RestServerTest {
         // possibly add a second SELECT/INSERT/UPDATE/DELETE query to the same mock
         // object (again make sure you are using the correct parameters which are needed
         // in the RestServer)
-        addMockSelectQuery(mockDbConn, new String[]{"*"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
+        addMockSelectQuery(mockDbConn, new String[]{"id"}, new String[]{DatabaseConnector.CUSTOMERS}, null,
                 "id = ? and email = ? and password = ?", new String[]{"1", "email@test.de", "testPassword"},
                 new String[]{"key"}, new Object[]{"value"});
 
@@ -291,4 +320,347 @@ public class RestServerTest {
         // OR assert that the returned JSON contains the correct information
         assertEquals(1, response.getBody().getArray().getJSONObject(0).getInt("id"));
     }
+
+    @Test
+    public void testEndpointStreamsRows() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        QueryCursor mockCursor = mockCursor(List.of(Map.of("id", 1), Map.of("id", 2)));
+        when(mockDbConn.openSelectCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE)).thenReturn(mockCursor);
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+
+        HttpResponse<JsonNode> response = Unirest.get("/endpoint").queryString(StringNames.query1, "1").asJson();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(2, response.getBody().getArray().length());
+        assertEquals(2, response.getBody().getArray().getJSONObject(1).getInt("id"));
+        verify(mockCursor).close();
+    }
+
+    @Test
+    public void testIdenticalRequestsBeyondPermitsShareOneQuery() throws Exception {
+        int port = restServerTestPort + 1;
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.openSelectCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE)).thenAnswer(invocation -> {
+                    queryStarted.countDown();
+                    releaseQuery.await(5, TimeUnit.SECONDS);
+                    return mockCursor(List.of(Map.of("id", 1)));
+                });
+        // a single permit, which the identical requests must not need while they wait for the query
+        RestServer singlePermitServer = new RestServer(mockDbConn, new DataValidation(mockDbConn), port,
+                ExecutionMode.PLATFORM, 1);
+        try {
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            responses.add(Unirest.get("http://localhost:" + port + "/endpoint")
+                    .queryString(StringNames.query1, "1").asStringAsync());
+            assertTrue(queryStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                responses.add(Unirest.get("http://localhost:" + port + "/endpoint")
+                        .queryString(StringNames.query1, "1").asStringAsync());
+            }
+            long waitUntil = System.currentTimeMillis() + 5_000;
+            while (singlePermitServer.getCoalescedRequests() < 4 && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            releaseQuery.countDown();
+
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                assertEquals(200, response.get(5, TimeUnit.SECONDS).getStatus());
+                assertEquals("[{\"id\":1}]", response.get().getBody());
+            }
+            assertEquals(1, singlePermitServer.getCatalogQueries());
+            assertEquals(1, singlePermitServer.getAvailableDatabasePermits());
+            verify(mockDbConn, times(1)).openSelectCursor(any(), any(), any(), any(), any(), anyInt());
+        } finally {
+            releaseQuery.countDown();
+            singlePermitServer.stopServer();
+        }
+    }
+
+    @Test
+    public void testLargeResultIsStreamed() {
+        String name = "x".repeat(1_000);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int id = 1; rows.size() * name.length() <= RestServer.MAX_SHARED_BODY_BYTES; id++) {
+            rows.add(Map.of("id", id, "firstName", name));
+        }
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.openSelectCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE))
+                .thenAnswer(invocation -> mockCursor(rows));
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+
+        HttpResponse<JsonNode> response = Unirest.get("/endpoint").queryString(StringNames.query1, "1").asJson();
+
+        assertEquals(200, response.getStatus());
+        assertFalse(response.getHeaders().getFirst(StringNames.etag).isEmpty());
+        assertEquals(rows.size(), response.getBody().getArray().length());
+        assertEquals(rows.size(), response.getBody().getArray().getJSONObject(rows.size() - 1).getInt("id"));
+    }
+
+    @Test
+    public void testEndpointFields() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        QueryCursor mockCursor = mock(QueryCursor.class);
+        when(mockCursor.hasNext()).thenReturn(true, true, false);
+        when(mockCursor.next()).thenReturn(Map.of("id", 1, "firstName", "Karla"));
+        when(mockDbConn.openSelectCursor(new String[]{"id", "firstName"}, new String[]{DatabaseConnector.CUSTOMERS},
+                null, "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE)).thenReturn(mockCursor);
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+
+        HttpResponse<JsonNode> response = Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .queryString(StringNames.fields, "ID, firstname,id").asJson();
+        assertEquals(200, response.getStatus());
+        assertEquals("Karla", response.getBody().getArray().getJSONObject(0).getString("firstName"));
+
+        // columns that are not whitelisted are rejected, above all the password
+        assertEquals(400, Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .queryString(StringNames.fields, "id,password").asEmpty().getStatus());
+        assertEquals(400, Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .queryString(StringNames.fields, "id;drop table customers").asEmpty().getStatus());
+    }
+
+    @Test
+    public void testEndpointWithEmptyResult() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        QueryCursor mockCursor = mockCursor(List.of());
+        when(mockDbConn.openSelectCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE)).thenReturn(mockCursor);
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+
+        HttpResponse<JsonNode> response = Unirest.get("/endpoint").queryString(StringNames.query1, "1").asJson();
+
+        assertEquals(404, response.getStatus());
+        verify(mockCursor).close();
+    }
+
+    @Test
+    public void testEndpointNotModified() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        QueryCursor mockCursor = mock(QueryCursor.class);
+        when(mockCursor.hasNext()).thenReturn(true, false);
+        when(mockCursor.next()).thenReturn(Map.of("id", 1));
+        when(mockDbConn.openSelectCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE)).thenReturn(mockCursor);
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+
+        HttpResponse<String> response = Unirest.get("/endpoint").queryString(StringNames.query1, "1").asString();
+        String etag = response.getHeaders().getFirst(StringNames.etag);
+        assertEquals(200, response.getStatus());
+        assertFalse(etag.isEmpty());
+        assertTrue(response.getHeaders().getFirst(RequestTiming.HEADER).contains(RequestTiming.TOTAL + ";dur="));
+
+        // the client has the current result already, so the database is not queried again
+        response = Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .header(StringNames.ifNoneMatch, etag).asString();
+        assertEquals(304, response.getStatus());
+        assertEquals(etag, response.getHeaders().getFirst(StringNames.etag));
+        verify(mockDbConn, times(1)).openSelectCursor(any(), any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    public void testEndpointPaged() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        // a page cursor reads one row more than the limit, to know whether there is a next page
+        QueryCursor firstPage = mockCursor(List.of(Map.of("id", 1), Map.of("id", 2), Map.of("id", 3)));
+        QueryCursor lastPage = mockCursor(List.of(Map.of("id", 3)));
+        when(mockDbConn.openSelectPageCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, "id", DatabaseConnector.FIRST_PAGE, 3)).thenReturn(firstPage);
+        when(mockDbConn.openSelectPageCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, "id", 2L, 3)).thenReturn(lastPage);
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+
+        HttpResponse<JsonNode> response = Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .queryString(StringNames.limit, 2).asJson();
+        String cursor = response.getHeaders().getFirst(StringNames.nextCursor);
+        assertEquals(200, response.getStatus());
+        assertEquals(2, response.getBody().getArray().length());
+        assertFalse(cursor.isEmpty());
+
+        response = Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .queryString(StringNames.limit, 2).queryString(StringNames.after, cursor).asJson();
+        assertEquals(200, response.getStatus());
+        assertEquals(1, response.getBody().getArray().length());
+        assertEquals(3, response.getBody().getArray().getJSONObject(0).getInt("id"));
+        assertTrue(response.getHeaders().getFirst(StringNames.nextCursor).isEmpty());
+        verify(mockDbConn, never()).openSelectCursor(any(), any(), any(), any(), any(), anyInt());
+
+        assertEquals(400, Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .queryString(StringNames.limit, 0).asEmpty().getStatus());
+        assertEquals(400, Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .queryString(StringNames.after, "not a cursor").asEmpty().getStatus());
+    }
+
+    @Test
+    public void testBatch() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.openSelectCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE))
+                .thenAnswer(invocation -> mockCursor(List.of(Map.of("id", 1))));
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+
+        HttpResponse<JsonNode> response = Unirest.post("/batch")
+                .body("[{\"path\": \"/endpoint\", \"query\": {\"query1\": \"1\"}},"
+                        + " {\"path\": \"/endpoint\"}, {\"path\": \"/test\"}]")
+                .asJson();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(3, response.getBody().getArray().length());
+        assertEquals(200, response.getBody().getArray().getJSONObject(0).getInt("status"));
+        assertEquals(1, response.getBody().getArray().getJSONObject(0).getJSONArray("body")
+                .getJSONObject(0).getInt("id"));
+        assertEquals(400, response.getBody().getArray().getJSONObject(1).getInt("status"));
+        assertEquals(200, response.getBody().getArray().getJSONObject(2).getInt("status"));
+    }
+
+    @Test
+    public void testBatchPassesDeadlineToSubRequests() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.openSelectCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE))
+                .thenAnswer(invocation -> mockCursor(List.of(Map.of("id", 1))));
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+        String body = "[{\"path\": \"/endpoint\", \"query\": {\"query1\": \"1\"}}]";
+
+        // the batch itself is dropped once its deadline has passed
+        HttpResponse<String> expired = Unirest.post("/batch").body(body)
+                .header(RestServer.REQUEST_TIMEOUT_HEADER, "0").asString();
+        assertEquals(503, expired.getStatus());
+        verify(mockDbConn, never()).openSelectCursor(any(), any(), any(), any(), any(), anyInt());
+
+        HttpResponse<JsonNode> response = Unirest.post("/batch").body(body)
+                .header(RestServer.REQUEST_TIMEOUT_HEADER, "5000").asJson();
+        assertEquals(200, response.getStatus());
+        assertEquals(200, response.getBody().getArray().getJSONObject(0).getInt("status"));
+    }
+
+    @Test
+    public void testBatchRejectsOtherMethods() {
+        HttpResponse<JsonNode> response = Unirest.post("/batch")
+                .body("[{\"method\": \"POST\", \"path\": \"/customer/create\"}]")
+                .asJson();
+
+        assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    public void testBatchRejectsBatchesAndEventStreams() {
+        for (String path : new String[]{"/batch", "/batch/", "/availability"}) {
+            HttpResponse<JsonNode> response = Unirest.post("/batch")
+                    .body("[{\"path\": \"" + path + "\", \"query\": {\"datePlaytimeId\": \"1\"}}]")
+                    .asJson();
+
+            assertEquals(400, response.getStatus(), path);
+        }
+        // a trailing slash is ignored like by the routes
+        HttpResponse<JsonNode> response = Unirest.post("/batch").body("[{\"path\": \"/test/\"}]").asJson();
+        assertEquals(200, response.getStatus());
+        assertEquals(200, response.getBody().getArray().getJSONObject(0).getInt("status"));
+    }
+
+    @Test
+    public void testExpiredDeadlineIsShed() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        restServer.setDbConnectorAndDataValidator(mockDbConn);
+        int availablePermits = restServer.getAvailableDatabasePermits();
+
+        HttpResponse<String> response = Unirest.get("/endpoint").queryString(StringNames.query1, "1")
+                .header(RestServer.REQUEST_TIMEOUT_HEADER, "0").asString();
+
+        assertEquals(503, response.getStatus());
+        assertEquals("1", response.getHeaders().getFirst("Retry-After"));
+        assertEquals(availablePermits, restServer.getAvailableDatabasePermits());
+        verify(mockDbConn, never()).openSelectCursor(any(), any(), any(), any(), any(), anyInt());
+        assertTrue(Unirest.get("/metrics").asString().getBody()
+                .contains("restserver_shed_requests_total{reason=\"deadline\"} "));
+    }
+
+    @Test
+    public void testMetricsAreNotReachableByBatch() {
+        HttpResponse<JsonNode> response = Unirest.post("/batch").body("[{\"path\": \"/metrics\"}]").asJson();
+        assertEquals(400, response.getStatus());
+
+        // requests forwarded by a batch do not count as local, even though they come over the loopback interface
+        assertEquals(403, Unirest.get("/metrics").header(BatchHandler.SUB_REQUEST_HEADER, "true")
+                .asString().getStatus());
+    }
+
+    @Test
+    public void testMetrics() {
+        Unirest.get("/endpoint").asEmpty();
+
+        HttpResponse<String> response = Unirest.get("/metrics").asString();
+
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getHeaders().getFirst("Content-Type").startsWith("text/plain"));
+        assertTrue(response.getBody().contains("restserver_requests_total{route=\"GET /endpoint\",status=\"400\"}"),
+                response.getBody());
+        assertTrue(response.getBody().contains("restserver_request_duration_seconds{route=\"GET /endpoint\","
+                + "quantile=\"0.99\"}"));
+        assertTrue(response.getBody().contains("restserver_queue_time_seconds_count "));
+        assertTrue(response.getBody().contains("jvm_threads_current "));
+    }
+
+    @Test
+    public void testMetricsWithoutDatabase() {
+        int port = restServerTestPort + 2;
+        RestServer serverWithoutDatabase = new RestServer(null, new DataValidation(mock(DatabaseConnector.class)),
+                port, ExecutionMode.PLATFORM, 1);
+        try {
+            HttpResponse<String> response = Unirest.get("http://localhost:" + port + "/metrics").asString();
+
+            assertEquals(200, response.getStatus());
+            assertTrue(response.getBody().contains("restserver_database_permits_available 1"), response.getBody());
+            assertFalse(response.getBody().contains("db_pool_"));
+        } finally {
+            serverWithoutDatabase.stopServer();
+        }
+    }
+
+    @Test
+    public void testRequestOverQueueBudgetAfterPermitWaitIsShed() throws Exception {
+        int port = restServerTestPort + 3;
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        when(mockDbConn.openSelectCursor(CUSTOMER_FIELDS, new String[]{DatabaseConnector.CUSTOMERS}, null,
+                "email = ?", new String[]{"1"}, DatabaseConnector.DEFAULT_FETCH_SIZE)).thenAnswer(invocation -> {
+                    releaseQuery.await(5, TimeUnit.SECONDS);
+                    return mockCursor(List.of(Map.of("id", 1)));
+                });
+        System.setProperty(RestServer.MAX_QUEUE_MILLIS_PROPERTY, "100");
+        RestServer singlePermitServer;
+        try {
+            singlePermitServer = new RestServer(mockDbConn, new DataValidation(mockDbConn), port,
+                    ExecutionMode.PLATFORM, 1);
+        } finally {
+            System.clearProperty(RestServer.MAX_QUEUE_MILLIS_PROPERTY);
+        }
+        try {
+            CompletableFuture<HttpResponse<String>> first = Unirest.get("http://localhost:" + port + "/endpoint")
+                    .queryString(StringNames.query1, "1").asStringAsync();
+            long waitUntil = System.currentTimeMillis() + 5_000;
+            while (singlePermitServer.getAvailableDatabasePermits() > 0 && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            // the second request is admitted right away, but waits longer than the queue budget for the permit
+            CompletableFuture<HttpResponse<String>> second = Unirest.get("http://localhost:" + port + "/endpoint")
+                    .queryString(StringNames.query1, "2").asStringAsync();
+            Thread.sleep(300);
+            releaseQuery.countDown();
+
+            assertEquals(200, first.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(503, second.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(1, singlePermitServer.getAvailableDatabasePermits());
+            // only the first request queried the database
+            verify(mockDbConn, times(1)).openSelectCursor(any(), any(), any(), any(), any(), anyInt());
+            assertTrue(Unirest.get("http://localhost:" + port + "/metrics").asString().getBody()
+                    .contains("restserver_shed_requests_total{reason=\"queue_time\"} 1"));
+        } finally {
+            releaseQuery.countDown();
+            singlePermitServer.stopServer();
+        }
+    }
 }
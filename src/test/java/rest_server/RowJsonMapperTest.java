@@ -0,0 +1,65 @@
+package rest_server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RowJsonMapperTest {
+
+    private static List<Map<String, Object>> createRows() {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", 1);
+        row.put("firstName", "Karla \"K\" <Kolumna> & Co.\n\t\u0001\u2028");
+        row.put("price", new BigDecimal("12.50"));
+        row.put("rating", 4.5);
+        row.put("seats", 3L);
+        row.put("paid", true);
+        row.put("playtime", new Timestamp(1_600_000_000_000L));
+        row.put("note", null);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        rows.add(row);
+        rows.add(new HashMap<>());
+        return rows;
+    }
+
+    private static void assertSameJson(Gson gson, Object obj) {
+        assertEquals(gson.toJson(obj, obj.getClass()), new RowJsonMapper(gson).toJsonString(obj, obj.getClass()));
+    }
+
+    @Test
+    public void testSameOutputAsGson() {
+        Gson gson = new Gson();
+        assertSameJson(gson, createRows());
+        assertSameJson(gson, new ArrayList<>());
+        assertSameJson(gson, new String[]{"Result was empty."});
+        assertSameJson(gson, new String[]{"<script>", null});
+    }
+
+    @Test
+    public void testSameOutputAsConfiguredGson() {
+        Gson gson = new GsonBuilder().serializeNulls().disableHtmlEscaping().setDateFormat("yyyy-MM-dd").create();
+        assertSameJson(gson, createRows());
+        assertSameJson(gson, new String[]{"<script>", null});
+    }
+
+    @Test
+    public void testOtherPayloadsArePassedToGson() {
+        Gson gson = new Gson();
+        assertSameJson(gson, List.of("a", "b"));
+        assertSameJson(gson, Map.of("id", 1));
+        assertSameJson(gson, List.of(Map.of(1, "a")));
+
+        List<Integer> list = new RowJsonMapper(gson).fromJsonString("[1,2]",
+                new TypeToken<List<Integer>>() {}.getType());
+        assertEquals(List.of(1, 2), list);
+    }
+
+}
@@ -0,0 +1,91 @@
+package rest_server;
+
+import model.DatabaseConnector;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SessionStoreTest {
+
+    @Test
+    public void testValidToken() {
+        SessionStore sessionStore = new SessionStore();
+        String token = sessionStore.createSession(42);
+
+        assertEquals(42, sessionStore.getCustomerId(token));
+        assertEquals(1, sessionStore.size());
+    }
+
+    @Test
+    public void testForgedTokens() {
+        SessionStore sessionStore = new SessionStore();
+        String token = sessionStore.createSession(42);
+        String sessionId = token.substring(0, token.indexOf('.'));
+
+        assertEquals(-1, sessionStore.getCustomerId(null));
+        assertEquals(-1, sessionStore.getCustomerId(""));
+        assertEquals(-1, sessionStore.getCustomerId(sessionId));
+        assertEquals(-1, sessionStore.getCustomerId(sessionId + ".invalidSignature"));
+        // token signed with another key
+        assertEquals(-1, new SessionStore().getCustomerId(token));
+    }
+
+    @Test
+    public void testInvalidate() {
+        SessionStore sessionStore = new SessionStore();
+        String token = sessionStore.createSession(42);
+        String otherToken = sessionStore.createSession(43);
+
+        sessionStore.invalidate(token);
+        assertEquals(-1, sessionStore.getCustomerId(token));
+        assertEquals(43, sessionStore.getCustomerId(otherToken));
+    }
+
+    @Test
+    public void testOldestSessionsAreEvicted() {
+        SessionStore sessionStore = new SessionStore(null, 60_000, 60_000, 2);
+        String oldest = sessionStore.createSession(41);
+        String older = sessionStore.createSession(42);
+        sessionStore.invalidate(older);
+        String newer = sessionStore.createSession(43);
+        String newest = sessionStore.createSession(44);
+
+        assertEquals(2, sessionStore.size());
+        assertEquals(-1, sessionStore.getCustomerId(oldest));
+        assertEquals(43, sessionStore.getCustomerId(newer));
+        assertEquals(44, sessionStore.getCustomerId(newest));
+
+        sessionStore.invalidateAll();
+        assertEquals(0, sessionStore.size());
+        assertEquals(-1, sessionStore.getCustomerId(newest));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        SessionStore sessionStore = new SessionStore(null, 50, 60_000);
+        String token = sessionStore.createSession(42);
+
+        // every use extends the session
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(20);
+            assertEquals(42, sessionStore.getCustomerId(token));
+        }
+        Thread.sleep(100);
+        assertEquals(-1, sessionStore.getCustomerId(token));
+    }
+
+    @Test
+    public void testBearerAuthorizationNeedsNoDatabase() {
+        DatabaseConnector mockDbConn = mock(DatabaseConnector.class);
+        DataValidation dataVal = new DataValidation(mockDbConn);
+        String token = dataVal.getSessionStore().createSession(1);
+
+        assertTrue(dataVal.isUserAuthorized("Bearer " + token, "1"));
+        assertFalse(dataVal.isUserAuthorized("Bearer " + token, "2"));
+        assertFalse(dataVal.isUserAuthorized("Bearer invalid.token", "1"));
+        verify(mockDbConn, never()).executeSelectQuery(any(), any(), any(), any(), any());
+    }
+
+}
@@ -0,0 +1,130 @@
+package rest_server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsAreCoalesced() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        }), executor);
+        while (singleFlight.getInFlight() == 0) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            return "other result";
+        }), executor);
+        while (singleFlight.getCoalesced() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.getExecutions());
+        assertEquals(0, singleFlight.getInFlight());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFinishedCallsAreNotCached() {
+        SingleFlight<Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(1, singleFlight.execute("key", calls::incrementAndGet));
+        assertEquals(2, singleFlight.execute("key", calls::incrementAndGet));
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+    @Test
+    public void testExceptionIsPassedToAllCallers() {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("key", () -> {
+            throw new IllegalStateException("query failed");
+        }));
+        // the failed call does not block later calls
+        assertEquals("result", singleFlight.execute("key", () -> "result"));
+    }
+
+    @Test
+    public void testOwnFailureIsNotPassedToWaitingCalls() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>(e -> e instanceof RequestShedException);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RequestShedException(LoadShedder.DEADLINE, "deadline passed");
+        }), executor);
+        while (singleFlight.getInFlight() == 0) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("key", () -> "own result"), executor);
+        while (singleFlight.getCoalesced() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RequestShedException.class, e.getCause());
+        // the waiting call executed by itself
+        assertEquals("own result", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(2, singleFlight.getExecutions());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWaitIsBounded() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        }), executor);
+        while (singleFlight.getInFlight() == 0) {
+            Thread.sleep(1);
+        }
+
+        assertNull(singleFlight.execute("key", () -> "other result", 20));
+        release.countDown();
+        assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,47 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverAllValues() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) >= value);
+            // the relative error of a bucket is at most 12.5%
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) - value <= value / 8, "value " + value);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100_000_000L, histogram.getMax());
+        assertEquals(50_500_000.0, histogram.getMean(), 0.001);
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 50_000_000L && median <= 50_000_000L * 9 / 8, "median " + median);
+        assertEquals(100_000_000L, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+}
@@ -0,0 +1,52 @@
+package utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestTimingTest {
+
+    @AfterEach
+    public void tearDown() {
+        RequestTiming.finish();
+    }
+
+    @Test
+    public void testRecordWithoutContextIsIgnored() {
+        RequestTiming.record(RequestTiming.DB, System.nanoTime());
+        assertNull(RequestTiming.current());
+        assertNull(RequestTiming.finish());
+    }
+
+    @Test
+    public void testPhasesAreSummedUp() {
+        RequestTiming timing = RequestTiming.start();
+        assertSame(timing, RequestTiming.current());
+        timing.add(RequestTiming.DB, 2_000_000);
+        timing.add(RequestTiming.DB, 1_500_000);
+        timing.add(RequestTiming.JSON, 250_000);
+
+        assertSame(timing, RequestTiming.finish());
+        assertNull(RequestTiming.current());
+        assertEquals(3_500_000, timing.getNanos(RequestTiming.DB));
+        assertEquals(2, timing.getCalls(RequestTiming.DB));
+        assertEquals(0, timing.getNanos(RequestTiming.AUTH));
+        assertTrue(timing.getTotalNanos() > 0);
+
+        String header = timing.toHeaderValue();
+        assertTrue(header.startsWith("db;dur=3.500;desc=\"2 calls\", json;dur=0.250, total;dur="), header);
+    }
+
+    @Test
+    public void testParseHeaderValue() {
+        Map<String, Double> durations = RequestTiming.parseHeaderValue(
+                "auth;dur=0.5, cache;desc=\"hit\", db;desc=\"2 calls\";dur=3.25, json;dur=x, total;DUR=4");
+
+        assertEquals(Map.of("auth", 0.5, "db", 3.25, "total", 4.0), durations);
+        assertTrue(RequestTiming.parseHeaderValue(null).isEmpty());
+    }
+
+}